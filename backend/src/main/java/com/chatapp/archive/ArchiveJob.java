@@ -0,0 +1,82 @@
+package com.chatapp.archive;
+
+import com.chatapp.database.MessageRepository;
+import com.chatapp.server.ServerMetrics;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Moves messages older than the configured age from the messages table into archive segments.
+ *
+ * Messages are read in id order with a keyset cursor, one batch per segment. A segment is
+ * written and synced before its rows are deleted, and the delete only matches rows inside the
+ * segment's id range that are no newer than its newest timestamp, i.e. exactly the archived
+ * rows. If the process dies between the two steps, the next run repeats the delete for the
+ * newest segment before archiving anything else, so no row ends up in both tiers.
+ */
+public class ArchiveJob implements Runnable {
+    private final MessageRepository messageRepository;
+    private final MessageArchive archive;
+    private final long maxAgeMs;
+    private final int batchSize;
+    private final AtomicBoolean running = new AtomicBoolean(false);
+    private final ServerMetrics metrics = ServerMetrics.getInstance();
+
+    public ArchiveJob(MessageRepository messageRepository, MessageArchive archive, long maxAgeMs, int batchSize) {
+        this.messageRepository = messageRepository;
+        this.archive = archive;
+        this.maxAgeMs = maxAgeMs;
+        this.batchSize = batchSize;
+    }
+
+    @Override
+    public void run() {
+        if (!running.compareAndSet(false, true)) {
+            return; // the previous run is still going
+        }
+        long start = System.currentTimeMillis();
+        long cutoff = start - maxAgeMs;
+        int archived = 0;
+        int segments = 0;
+        try {
+            SegmentInfo newest = archive.newestSegment();
+            int lastId = 0;
+            if (newest != null) {
+                messageRepository.deleteArchived(newest.getMinId(), newest.getMaxId(), newest.getMaxTimestamp());
+                lastId = newest.getMaxId();
+            }
+
+            while (true) {
+                List<ArchivedMessage> batch = messageRepository.getArchiveBatch(lastId, cutoff, batchSize);
+                if (batch.isEmpty()) {
+                    break;
+                }
+                SegmentInfo segment = archive.write(batch);
+                int deleted = messageRepository.deleteArchived(segment.getMinId(), segment.getMaxId(), segment.getMaxTimestamp());
+                if (deleted != segment.getRowCount()) {
+                    System.err.println("⚠️ Archive: segment has " + segment.getRowCount() + " rows but " + deleted + " were deleted");
+                }
+                lastId = segment.getMaxId();
+                archived += segment.getRowCount();
+                segments++;
+                if (batch.size() < batchSize) {
+                    break;
+                }
+            }
+        } catch (SQLException | IOException e) {
+            metrics.increment("archive.failures");
+            System.err.println("❌ Archive run failed:");
+            e.printStackTrace();
+        } finally {
+            running.set(false);
+        }
+
+        if (archived > 0) {
+            System.out.println("🗄️ Archived " + archived + " messages into " + segments + " segments ("
+                    + (System.currentTimeMillis() - start) + " ms)");
+        }
+    }
+}
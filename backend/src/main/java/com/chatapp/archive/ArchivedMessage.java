@@ -0,0 +1,31 @@
+package com.chatapp.archive;
+
+import com.chatapp.model.Attachment;
+
+/**
+ * A message row as stored in the archive: users are kept as ids, exactly like the messages table
+ */
+public class ArchivedMessage {
+    public final int id;
+    public final int senderId;
+    public final int receiverId; // 0 for public messages
+    public final String conversation;
+    public final long seq;
+    public final long timestamp;
+    public final boolean read;
+    public final String content;
+    public final Attachment attachment; // null if none
+
+    public ArchivedMessage(int id, int senderId, int receiverId, String conversation, long seq,
+                           long timestamp, boolean read, String content, Attachment attachment) {
+        this.id = id;
+        this.senderId = senderId;
+        this.receiverId = receiverId;
+        this.conversation = conversation;
+        this.seq = seq;
+        this.timestamp = timestamp;
+        this.read = read;
+        this.content = content;
+        this.attachment = attachment;
+    }
+}
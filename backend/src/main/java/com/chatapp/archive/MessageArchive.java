@@ -0,0 +1,244 @@
+package com.chatapp.archive;
+
+import com.chatapp.server.ServerConfig;
+import com.chatapp.server.ServerMetrics;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * Cold tier of the message history: immutable segment files written by {@link ArchiveJob}.
+ *
+ * The footers of all segments are loaded at startup and kept in memory, ordered by message id.
+ * Queries use them to pick the few segments that can contain the requested conversation, seq
+ * range or ids; those are decoded whole and kept in a small LRU cache, since paging back through
+ * history usually reads the same segment several times in a row.
+ */
+public class MessageArchive {
+    private static final String SUFFIX = ".seg";
+    private static MessageArchive instance;
+
+    private final Path directory;
+    private final List<SegmentInfo> segments = new CopyOnWriteArrayList<>();
+    private final Map<Path, ArchivedMessage[]> cache;
+    private final ServerMetrics metrics = ServerMetrics.getInstance();
+
+    private MessageArchive(Path directory, int cacheSegments) {
+        this.directory = directory;
+        this.cache = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Path, ArchivedMessage[]> eldest) {
+                return size() > cacheSegments;
+            }
+        };
+        loadSegments();
+        metrics.gauge("archive.segments", segments::size);
+    }
+
+    public static synchronized MessageArchive getInstance() {
+        if (instance == null) {
+            ServerConfig config = ServerConfig.getInstance();
+            instance = new MessageArchive(Paths.get(config.getString("archive.dir", "archive")),
+                    config.getInt("archive.cacheSegments", 8));
+        }
+        return instance;
+    }
+
+    private void loadSegments() {
+        if (!Files.isDirectory(directory)) {
+            return;
+        }
+        List<SegmentInfo> loaded = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + SUFFIX)) {
+            for (Path file : files) {
+                try {
+                    loaded.add(SegmentFile.readInfo(file));
+                } catch (IOException e) {
+                    System.err.println("❌ Skipping unreadable archive segment " + file + ": " + e.getMessage());
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("❌ Could not list archive directory " + directory);
+            e.printStackTrace();
+        }
+        loaded.sort(Comparator.comparingInt(s -> s.minId));
+        segments.addAll(loaded);
+        if (!loaded.isEmpty()) {
+            System.out.println("🗄️ Archive: " + loaded.size() + " segments in " + directory);
+        }
+    }
+
+    /**
+     * Write a batch of messages to a new segment
+     */
+    public SegmentInfo write(List<ArchivedMessage> batch) throws IOException {
+        Files.createDirectories(directory);
+        int minId = batch.stream().mapToInt(m -> m.id).min().orElse(0);
+        int maxId = batch.stream().mapToInt(m -> m.id).max().orElse(0);
+        Path path = directory.resolve(String.format("%010d-%010d%s", minId, maxId, SUFFIX));
+        SegmentInfo info = SegmentFile.write(path, batch);
+        synchronized (segments) {
+            List<SegmentInfo> sorted = new ArrayList<>(segments);
+            sorted.add(info);
+            sorted.sort(Comparator.comparingInt(s -> s.minId));
+            segments.clear();
+            segments.addAll(sorted);
+        }
+        metrics.add("archive.rows", info.rowCount);
+        return info;
+    }
+
+    /**
+     * Get the segment with the highest ids, or null if nothing is archived
+     */
+    public SegmentInfo newestSegment() {
+        List<SegmentInfo> snapshot = new ArrayList<>(segments);
+        return snapshot.isEmpty() ? null : snapshot.get(snapshot.size() - 1);
+    }
+
+    /**
+     * Get the highest archived sequence number of a conversation, 0 if none is archived
+     */
+    public long maxSeq(String conversation) {
+        long max = 0;
+        for (SegmentInfo segment : segments) {
+            SegmentInfo.ConversationRange range = segment.conversations.get(conversation);
+            if (range != null) {
+                max = Math.max(max, range.maxSeq);
+            }
+        }
+        return max;
+    }
+
+    /**
+     * Get up to limit archived messages of a conversation with seq &lt; beforeSeq, oldest first
+     */
+    public List<ArchivedMessage> before(String conversation, long beforeSeq, int limit) {
+        List<ArchivedMessage> newestFirst = new ArrayList<>();
+        List<SegmentInfo> snapshot = new ArrayList<>(segments);
+        for (int i = snapshot.size() - 1; i >= 0 && newestFirst.size() < limit; i--) {
+            SegmentInfo segment = snapshot.get(i);
+            SegmentInfo.ConversationRange range = segment.conversations.get(conversation);
+            if (range == null || range.minSeq >= beforeSeq) {
+                continue;
+            }
+            ArchivedMessage[] rows = rows(segment);
+            if (rows.length < range.firstRow + range.rows) {
+                continue; // unreadable segment, treated as empty
+            }
+            for (int row = range.firstRow + range.rows - 1; row >= range.firstRow && newestFirst.size() < limit; row--) {
+                if (rows[row].seq < beforeSeq) {
+                    newestFirst.add(rows[row]);
+                }
+            }
+        }
+        Collections.reverse(newestFirst);
+        return newestFirst;
+    }
+
+    /**
+     * Get up to limit archived messages of a conversation with seq &gt; afterSeq, oldest first
+     */
+    public List<ArchivedMessage> after(String conversation, long afterSeq, int limit) {
+        List<ArchivedMessage> messages = new ArrayList<>();
+        for (SegmentInfo segment : segments) {
+            if (messages.size() >= limit) {
+                break;
+            }
+            SegmentInfo.ConversationRange range = segment.conversations.get(conversation);
+            if (range == null || range.maxSeq <= afterSeq) {
+                continue;
+            }
+            ArchivedMessage[] rows = rows(segment);
+            if (rows.length < range.firstRow + range.rows) {
+                continue; // unreadable segment, treated as empty
+            }
+            for (int row = range.firstRow; row < range.firstRow + range.rows && messages.size() < limit; row++) {
+                if (rows[row].seq > afterSeq) {
+                    messages.add(rows[row]);
+                }
+            }
+        }
+        return messages;
+    }
+
+    /**
+     * Get the archived messages among the given ids, in no particular order
+     */
+    public List<ArchivedMessage> byIds(Collection<Integer> ids) {
+        List<ArchivedMessage> messages = new ArrayList<>();
+        if (ids.isEmpty()) {
+            return messages;
+        }
+        Set<Integer> wanted = new HashSet<>(ids);
+        for (SegmentInfo segment : segments) {
+            boolean candidate = false;
+            for (int id : wanted) {
+                if (id >= segment.minId && id <= segment.maxId) {
+                    candidate = true;
+                    break;
+                }
+            }
+            if (!candidate) {
+                continue;
+            }
+            for (ArchivedMessage row : rows(segment)) {
+                if (wanted.contains(row.id)) {
+                    messages.add(row);
+                }
+            }
+        }
+        return messages;
+    }
+
+    /**
+     * Visit every archived message, segment by segment (used to build the search index).
+     * Bypasses the cache so a full scan does not evict the segments in use.
+     */
+    public void scan(Consumer<ArchivedMessage> visitor) throws IOException {
+        for (SegmentInfo segment : segments) {
+            for (ArchivedMessage row : SegmentFile.read(segment)) {
+                visitor.accept(row);
+            }
+        }
+    }
+
+    /**
+     * Get the rows of a segment, cached; empty if the file cannot be read
+     */
+    private ArchivedMessage[] rows(SegmentInfo segment) {
+        synchronized (cache) {
+            ArchivedMessage[] rows = cache.get(segment.path);
+            if (rows != null) {
+                metrics.increment("archive.cache.hits");
+                return rows;
+            }
+        }
+        try {
+            ArchivedMessage[] rows = SegmentFile.read(segment);
+            metrics.increment("archive.segmentReads");
+            synchronized (cache) {
+                cache.put(segment.path, rows);
+            }
+            return rows;
+        } catch (IOException e) {
+            System.err.println("❌ Could not read archive segment " + segment.path);
+            e.printStackTrace();
+            return new ArchivedMessage[0];
+        }
+    }
+}
@@ -0,0 +1,367 @@
+package com.chatapp.archive;
+
+import com.chatapp.model.Attachment;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Immutable archive segment: one file per archived batch of messages.
+ *
+ * Rows are sorted by conversation and seq, so each conversation is a contiguous run of rows.
+ * Every column is stored as its own deflate-compressed block of varint-encoded values
+ * (ids, sequence numbers and timestamps as zigzag deltas, which compress to a byte or two).
+ * The uncompressed footer at the end holds the row count, min/max id and timestamp, the
+ * location of each column block and the seq range and row range of each conversation, so
+ * readers can skip segments without decompressing anything.
+ *
+ * Layout: "CSEG" | column blocks | footer | footer length (int) | "CSEG"
+ */
+final class SegmentFile {
+    static final int MAGIC = 0x43534547; // "CSEG"
+    private static final int VERSION = 1;
+
+    private static final int COL_ID = 0;
+    private static final int COL_SENDER = 1;
+    private static final int COL_RECEIVER = 2;
+    private static final int COL_SEQ = 3;
+    private static final int COL_TIMESTAMP = 4;
+    private static final int COL_READ = 5;
+    private static final int COL_CONTENT = 6;
+    private static final int COL_ATTACHMENT_ID = 7;
+    private static final int COL_ATTACHMENT_NAME = 8;
+    private static final int COL_ATTACHMENT_SIZE = 9;
+    private static final int COLUMNS = 10;
+
+    private SegmentFile() {
+    }
+
+    /**
+     * Write rows to a new segment file. The file appears under its final name only once it is complete.
+     */
+    static SegmentInfo write(Path path, List<ArchivedMessage> batch) throws IOException {
+        List<ArchivedMessage> rows = new ArrayList<>(batch);
+        rows.sort(Comparator.comparing((ArchivedMessage m) -> m.conversation).thenComparingLong(m -> m.seq));
+
+        Column[] columns = new Column[COLUMNS];
+        for (int i = 0; i < COLUMNS; i++) {
+            columns[i] = new Column();
+        }
+        Map<String, SegmentInfo.ConversationRange> conversations = new LinkedHashMap<>();
+        int minId = Integer.MAX_VALUE;
+        int maxId = Integer.MIN_VALUE;
+        long minTimestamp = Long.MAX_VALUE;
+        long maxTimestamp = Long.MIN_VALUE;
+        long previousId = 0;
+        long previousSeq = 0;
+        long previousTimestamp = 0;
+
+        for (int row = 0; row < rows.size(); row++) {
+            ArchivedMessage m = rows.get(row);
+            columns[COL_ID].writeSigned(m.id - previousId);
+            columns[COL_SENDER].writeUnsigned(m.senderId);
+            columns[COL_RECEIVER].writeUnsigned(m.receiverId);
+            columns[COL_SEQ].writeSigned(m.seq - previousSeq);
+            columns[COL_TIMESTAMP].writeSigned(m.timestamp - previousTimestamp);
+            columns[COL_READ].writeUnsigned(m.read ? 1 : 0);
+            columns[COL_CONTENT].writeString(m.content);
+            columns[COL_ATTACHMENT_ID].writeString(m.attachment != null ? m.attachment.getId() : null);
+            columns[COL_ATTACHMENT_NAME].writeString(m.attachment != null ? m.attachment.getName() : null);
+            columns[COL_ATTACHMENT_SIZE].writeUnsigned(m.attachment != null ? m.attachment.getSize() : 0);
+            previousId = m.id;
+            previousSeq = m.seq;
+            previousTimestamp = m.timestamp;
+
+            SegmentInfo.ConversationRange range = conversations.get(m.conversation);
+            if (range == null) {
+                conversations.put(m.conversation, new SegmentInfo.ConversationRange(m.seq, m.seq, row, 1));
+            } else {
+                conversations.put(m.conversation,
+                        new SegmentInfo.ConversationRange(range.minSeq, m.seq, range.firstRow, range.rows + 1));
+            }
+            minId = Math.min(minId, m.id);
+            maxId = Math.max(maxId, m.id);
+            minTimestamp = Math.min(minTimestamp, m.timestamp);
+            maxTimestamp = Math.max(maxTimestamp, m.timestamp);
+        }
+
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        long[] offsets = new long[COLUMNS];
+        int[] lengths = new int[COLUMNS];
+        int[] rawLengths = new int[COLUMNS];
+        try (FileOutputStream file = new FileOutputStream(temp.toFile());
+             DataOutputStream out = new DataOutputStream(file)) {
+            out.writeInt(MAGIC);
+            long position = 4;
+            for (int i = 0; i < COLUMNS; i++) {
+                byte[] raw = columns[i].toByteArray();
+                byte[] compressed = deflate(raw);
+                out.write(compressed);
+                offsets[i] = position;
+                lengths[i] = compressed.length;
+                rawLengths[i] = raw.length;
+                position += compressed.length;
+            }
+
+            ByteArrayOutputStream footerBytes = new ByteArrayOutputStream();
+            DataOutputStream footer = new DataOutputStream(footerBytes);
+            footer.writeInt(VERSION);
+            footer.writeInt(rows.size());
+            footer.writeInt(minId);
+            footer.writeInt(maxId);
+            footer.writeLong(minTimestamp);
+            footer.writeLong(maxTimestamp);
+            footer.writeInt(COLUMNS);
+            for (int i = 0; i < COLUMNS; i++) {
+                footer.writeLong(offsets[i]);
+                footer.writeInt(lengths[i]);
+                footer.writeInt(rawLengths[i]);
+            }
+            footer.writeInt(conversations.size());
+            for (Map.Entry<String, SegmentInfo.ConversationRange> entry : conversations.entrySet()) {
+                SegmentInfo.ConversationRange range = entry.getValue();
+                footer.writeUTF(entry.getKey());
+                footer.writeLong(range.minSeq);
+                footer.writeLong(range.maxSeq);
+                footer.writeInt(range.firstRow);
+                footer.writeInt(range.rows);
+            }
+            footer.flush();
+
+            out.write(footerBytes.toByteArray());
+            out.writeInt(footerBytes.size());
+            out.writeInt(MAGIC);
+            out.flush();
+            file.getChannel().force(true);
+        }
+
+        try {
+            Files.move(temp, path, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING);
+        }
+        return new SegmentInfo(path, rows.size(), minId, maxId, minTimestamp, maxTimestamp,
+                offsets, lengths, rawLengths, conversations);
+    }
+
+    /**
+     * Read only the footer of a segment
+     */
+    static SegmentInfo readInfo(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            ByteBuffer tail = ByteBuffer.allocate(8);
+            readFully(channel, tail, size - 8);
+            int footerLength = tail.getInt(0);
+            if (tail.getInt(4) != MAGIC || footerLength <= 0 || footerLength > size - 12) {
+                throw new IOException("Not an archive segment: " + path);
+            }
+            ByteBuffer footerBuffer = ByteBuffer.allocate(footerLength);
+            readFully(channel, footerBuffer, size - 8 - footerLength);
+
+            DataInputStream footer = new DataInputStream(new ByteArrayInputStream(footerBuffer.array()));
+            int version = footer.readInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported segment version " + version + ": " + path);
+            }
+            int rowCount = footer.readInt();
+            int minId = footer.readInt();
+            int maxId = footer.readInt();
+            long minTimestamp = footer.readLong();
+            long maxTimestamp = footer.readLong();
+            int columnCount = footer.readInt();
+            long[] offsets = new long[columnCount];
+            int[] lengths = new int[columnCount];
+            int[] rawLengths = new int[columnCount];
+            for (int i = 0; i < columnCount; i++) {
+                offsets[i] = footer.readLong();
+                lengths[i] = footer.readInt();
+                rawLengths[i] = footer.readInt();
+            }
+            int conversationCount = footer.readInt();
+            Map<String, SegmentInfo.ConversationRange> conversations = new LinkedHashMap<>();
+            for (int i = 0; i < conversationCount; i++) {
+                String key = footer.readUTF();
+                conversations.put(key, new SegmentInfo.ConversationRange(
+                        footer.readLong(), footer.readLong(), footer.readInt(), footer.readInt()));
+            }
+            return new SegmentInfo(path, rowCount, minId, maxId, minTimestamp, maxTimestamp,
+                    offsets, lengths, rawLengths, conversations);
+        }
+    }
+
+    /**
+     * Decompress and decode all rows of a segment
+     */
+    static ArchivedMessage[] read(SegmentInfo info) throws IOException {
+        ColumnReader[] columns = new ColumnReader[COLUMNS];
+        try (FileChannel channel = FileChannel.open(info.path, StandardOpenOption.READ)) {
+            for (int i = 0; i < COLUMNS; i++) {
+                ByteBuffer block = ByteBuffer.allocate(info.lengths[i]);
+                readFully(channel, block, info.offsets[i]);
+                columns[i] = new ColumnReader(inflate(block.array(), info.rawLengths[i]));
+            }
+        }
+
+        String[] conversationOfRow = new String[info.rowCount];
+        for (Map.Entry<String, SegmentInfo.ConversationRange> entry : info.conversations.entrySet()) {
+            SegmentInfo.ConversationRange range = entry.getValue();
+            for (int row = range.firstRow; row < range.firstRow + range.rows; row++) {
+                conversationOfRow[row] = entry.getKey();
+            }
+        }
+
+        ArchivedMessage[] rows = new ArchivedMessage[info.rowCount];
+        long id = 0;
+        long seq = 0;
+        long timestamp = 0;
+        for (int row = 0; row < info.rowCount; row++) {
+            id += columns[COL_ID].readSigned();
+            int sender = (int) columns[COL_SENDER].readUnsigned();
+            int receiver = (int) columns[COL_RECEIVER].readUnsigned();
+            seq += columns[COL_SEQ].readSigned();
+            timestamp += columns[COL_TIMESTAMP].readSigned();
+            boolean read = columns[COL_READ].readUnsigned() != 0;
+            String content = columns[COL_CONTENT].readString();
+            String attachmentId = columns[COL_ATTACHMENT_ID].readString();
+            String attachmentName = columns[COL_ATTACHMENT_NAME].readString();
+            long attachmentSize = columns[COL_ATTACHMENT_SIZE].readUnsigned();
+            Attachment attachment = attachmentId != null ? new Attachment(attachmentId, attachmentName, attachmentSize) : null;
+            rows[row] = new ArchivedMessage((int) id, sender, receiver, conversationOfRow[row], seq,
+                    timestamp, read, content, attachment);
+        }
+        return rows;
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + buffer.position());
+            if (read < 0) {
+                throw new IOException("Unexpected end of segment file");
+            }
+        }
+    }
+
+    private static byte[] deflate(byte[] raw) {
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+        try {
+            deflater.setInput(raw);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, raw.length / 4));
+            byte[] chunk = new byte[16 * 1024];
+            while (!deflater.finished()) {
+                out.write(chunk, 0, deflater.deflate(chunk));
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static byte[] inflate(byte[] compressed, int rawLength) throws IOException {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(compressed);
+            byte[] raw = new byte[rawLength];
+            int length = 0;
+            while (length < rawLength) {
+                int n = inflater.inflate(raw, length, rawLength - length);
+                if (n == 0 && (inflater.finished() || inflater.needsInput())) {
+                    break;
+                }
+                length += n;
+            }
+            if (length != rawLength) {
+                throw new IOException("Corrupt column block");
+            }
+            return raw;
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt column block", e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    /**
+     * Column being written: varints, zigzag varints and length-prefixed strings (length + 1, 0 for null)
+     */
+    private static class Column extends ByteArrayOutputStream {
+        void writeUnsigned(long value) {
+            while ((value & ~0x7FL) != 0) {
+                write((int) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            write((int) value);
+        }
+
+        void writeSigned(long value) {
+            writeUnsigned((value << 1) ^ (value >> 63));
+        }
+
+        void writeString(String value) {
+            if (value == null) {
+                writeUnsigned(0);
+                return;
+            }
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            writeUnsigned(bytes.length + 1L);
+            write(bytes, 0, bytes.length);
+        }
+    }
+
+    private static class ColumnReader {
+        private final byte[] data;
+        private int position;
+
+        ColumnReader(byte[] data) {
+            this.data = data;
+        }
+
+        long readUnsigned() {
+            long value = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = data[position++];
+                value |= (long) (b & 0x7F) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            return value;
+        }
+
+        long readSigned() {
+            long value = readUnsigned();
+            return (value >>> 1) ^ -(value & 1);
+        }
+
+        String readString() {
+            int length = (int) readUnsigned();
+            if (length == 0) {
+                return null;
+            }
+            String value = new String(data, position, length - 1, StandardCharsets.UTF_8);
+            position += length - 1;
+            return value;
+        }
+    }
+}
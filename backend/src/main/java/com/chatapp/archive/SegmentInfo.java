@@ -0,0 +1,68 @@
+package com.chatapp.archive;
+
+import java.nio.file.Path;
+import java.util.Map;
+
+/**
+ * Footer of an archive segment, kept in memory for every segment so queries can skip
+ * segments by id, timestamp or conversation without touching the file
+ */
+public class SegmentInfo {
+    final Path path;
+    final int rowCount;
+    final int minId;
+    final int maxId;
+    final long minTimestamp;
+    final long maxTimestamp;
+    final long[] offsets;
+    final int[] lengths;
+    final int[] rawLengths;
+    final Map<String, ConversationRange> conversations;
+
+    SegmentInfo(Path path, int rowCount, int minId, int maxId, long minTimestamp, long maxTimestamp,
+                long[] offsets, int[] lengths, int[] rawLengths, Map<String, ConversationRange> conversations) {
+        this.path = path;
+        this.rowCount = rowCount;
+        this.minId = minId;
+        this.maxId = maxId;
+        this.minTimestamp = minTimestamp;
+        this.maxTimestamp = maxTimestamp;
+        this.offsets = offsets;
+        this.lengths = lengths;
+        this.rawLengths = rawLengths;
+        this.conversations = conversations;
+    }
+
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    public int getMinId() {
+        return minId;
+    }
+
+    public int getMaxId() {
+        return maxId;
+    }
+
+    public long getMaxTimestamp() {
+        return maxTimestamp;
+    }
+
+    /**
+     * Rows of one conversation: sequence numbers minSeq..maxSeq at rows firstRow..firstRow+rows-1
+     */
+    static class ConversationRange {
+        final long minSeq;
+        final long maxSeq;
+        final int firstRow;
+        final int rows;
+
+        ConversationRange(long minSeq, long maxSeq, int firstRow, int rows) {
+            this.minSeq = minSeq;
+            this.maxSeq = maxSeq;
+            this.firstRow = firstRow;
+            this.rows = rows;
+        }
+    }
+}
@@ -0,0 +1,364 @@
+package com.chatapp.attachment;
+
+import com.chatapp.model.Attachment;
+import com.chatapp.server.ServerMetrics;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Content-addressed attachment store on disk.
+ *
+ * Finished files live under objects/&lt;first two hex digits&gt;/&lt;sha256&gt;, so the same content
+ * is stored once no matter how often it is uploaded. Uploads are written to uploads/&lt;id&gt;.part
+ * strictly in order; the SHA-256 is updated as chunks arrive, and a client that lost its
+ * connection continues from {@link Upload#received()}. Upload state is kept in memory, so an
+ * unfinished upload has to start over after a server restart.
+ *
+ * Knowing a hash is not proof of having the content: before stored content is reused instead of
+ * uploaded, the client answers a {@link #newChallenge() challenge} that needs the actual bytes.
+ *
+ * Each owner may have at most maxUploadsPerOwner unfinished uploads, declaring at most
+ * maxBytesPerOwner bytes together, so one user cannot fill the disk with partial uploads.
+ */
+public class AttachmentStore {
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final Path objects;
+    private final Path uploads;
+    private final long maxSize;
+    private final int maxUploadsPerOwner;
+    private final long maxBytesPerOwner;
+    private final Map<String, Upload> active = new ConcurrentHashMap<>();
+    private final Map<Integer, Reservation> reservations = new ConcurrentHashMap<>();
+    private final SecureRandom random = new SecureRandom();
+    private final ServerMetrics metrics = ServerMetrics.getInstance();
+
+    public AttachmentStore(Path root, long maxSize, int maxUploadsPerOwner, long maxBytesPerOwner) throws IOException {
+        this.objects = Files.createDirectories(root.resolve("objects"));
+        this.uploads = Files.createDirectories(root.resolve("uploads"));
+        this.maxSize = maxSize;
+        this.maxUploadsPerOwner = maxUploadsPerOwner;
+        this.maxBytesPerOwner = maxBytesPerOwner;
+        metrics.gauge("attachments.uploads.active", active::size);
+    }
+
+    /**
+     * Start an upload
+     * @throws IllegalArgumentException if the size is over the limit, or the owner's unfinished
+     *         uploads would exceed their number or byte limit
+     */
+    public Upload begin(int ownerId, String name, long size) throws IOException {
+        if (size < 0 || size > maxSize) {
+            throw new IllegalArgumentException("Attachment size must be between 0 and " + maxSize + " bytes");
+        }
+        reserve(ownerId, size);
+        byte[] bytes = new byte[16];
+        random.nextBytes(bytes);
+        String id = hex(bytes);
+        Upload upload = new Upload(id, ownerId, cleanName(name), size, uploads.resolve(id + ".part"));
+        try {
+            Files.deleteIfExists(upload.part);
+            Files.createFile(upload.part);
+        } catch (IOException e) {
+            unreserve(upload);
+            throw e;
+        }
+        active.put(id, upload);
+        return upload;
+    }
+
+    private void reserve(int ownerId, long size) {
+        boolean[] admitted = new boolean[1];
+        reservations.compute(ownerId, (owner, reservation) -> {
+            Reservation current = reservation != null ? reservation : new Reservation();
+            if (current.uploads < maxUploadsPerOwner && current.bytes + size <= maxBytesPerOwner) {
+                current.uploads++;
+                current.bytes += size;
+                admitted[0] = true;
+            }
+            return current.uploads > 0 ? current : null;
+        });
+        if (!admitted[0]) {
+            metrics.increment("attachments.uploads.rejected");
+            throw new IllegalArgumentException("Too many unfinished uploads: at most " + maxUploadsPerOwner
+                    + " uploads and " + maxBytesPerOwner + " bytes at a time");
+        }
+    }
+
+    private void unreserve(Upload upload) {
+        reservations.computeIfPresent(upload.ownerId, (owner, reservation) -> {
+            reservation.uploads--;
+            reservation.bytes -= upload.size;
+            return reservation.uploads > 0 ? reservation : null;
+        });
+    }
+
+    /**
+     * Forget an unfinished upload and release its reservation; false if it was already gone
+     */
+    private boolean finish(Upload upload) {
+        if (active.remove(upload.id, upload)) {
+            unreserve(upload);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Get an unfinished upload of a user, or null
+     */
+    public Upload getUpload(String uploadId, int ownerId) {
+        Upload upload = uploadId != null ? active.get(uploadId) : null;
+        return upload != null && upload.ownerId == ownerId ? upload : null;
+    }
+
+    /**
+     * Append a chunk to an upload. The chunk starts with whatever is left in the buffer and
+     * continues from the channel; the buffer must be in read mode and is reused for copying,
+     * so a direct buffer keeps the bytes off the heap.
+     * @return the new number of bytes received
+     */
+    public long receive(Upload upload, long offset, long length, ByteBuffer buffer, ReadableByteChannel in) throws IOException {
+        synchronized (upload) {
+            if (offset != upload.received) {
+                throw new IOException("Upload is at offset " + upload.received + ", not " + offset);
+            }
+            if (length < 0 || upload.received + length > upload.size) {
+                throw new IOException("Chunk runs past the declared size of " + upload.size + " bytes");
+            }
+            upload.lastActive = System.currentTimeMillis();
+
+            long remaining = length;
+            try (FileChannel file = FileChannel.open(upload.part, StandardOpenOption.WRITE)) {
+                file.position(upload.received);
+                while (remaining > 0) {
+                    if (!buffer.hasRemaining()) {
+                        buffer.clear();
+                        buffer.limit((int) Math.min(buffer.capacity(), remaining));
+                        int read = in.read(buffer);
+                        buffer.flip();
+                        if (read < 0) {
+                            throw new IOException("Connection closed in the middle of a chunk");
+                        }
+                    }
+                    ByteBuffer chunk = buffer.slice();
+                    chunk.limit((int) Math.min(chunk.remaining(), remaining));
+                    int start = chunk.position();
+                    upload.digest.update(chunk.duplicate());
+                    while (chunk.hasRemaining()) {
+                        file.write(chunk);
+                    }
+                    int written = chunk.position() - start;
+                    buffer.position(buffer.position() + written);
+                    remaining -= written;
+                    upload.received += written;
+                }
+            } finally {
+                metrics.add("attachments.upload.bytes", length - remaining);
+            }
+            return upload.received;
+        }
+    }
+
+    /**
+     * Finish an upload and move it into the store. If the content is already stored, the
+     * upload is discarded and the existing file is used.
+     * @param expectedSha256 hash announced by the client, or null to skip the check
+     */
+    public Attachment complete(Upload upload, String expectedSha256) throws IOException {
+        synchronized (upload) {
+            if (upload.received != upload.size) {
+                throw new IOException("Upload is incomplete: " + upload.received + " of " + upload.size + " bytes");
+            }
+            finish(upload);
+            String hash = hex(upload.digest.digest());
+            if (expectedSha256 != null && !expectedSha256.equalsIgnoreCase(hash)) {
+                Files.deleteIfExists(upload.part);
+                throw new IOException("Content does not match the announced SHA-256");
+            }
+
+            Path target = objectPath(hash);
+            if (Files.exists(target)) {
+                metrics.increment("attachments.dedup");
+                Files.deleteIfExists(upload.part);
+            } else {
+                Files.createDirectories(target.getParent());
+                try {
+                    Files.move(upload.part, target, StandardCopyOption.ATOMIC_MOVE);
+                } catch (AtomicMoveNotSupportedException e) {
+                    Files.move(upload.part, target, StandardCopyOption.REPLACE_EXISTING);
+                }
+                metrics.increment("attachments.stored");
+            }
+            return new Attachment(hash, upload.name, upload.size);
+        }
+    }
+
+    /**
+     * Look up stored content by hash, e.g. to skip an upload the store already has
+     * @return the attachment with the given display name, or null if the content is not stored
+     */
+    public Attachment find(String id, String name) {
+        Path path = resolve(id);
+        if (path == null) {
+            return null;
+        }
+        try {
+            return new Attachment(id.toLowerCase(), cleanName(name), Files.size(path));
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Get a random challenge for {@link #proves}
+     */
+    public String newChallenge() {
+        byte[] bytes = new byte[16];
+        random.nextBytes(bytes);
+        return hex(bytes);
+    }
+
+    /**
+     * Check a proof of possession of stored content: the hex SHA-256 of the challenge (as UTF-8)
+     * followed by the content. Reads the whole file.
+     * @return false if the proof is wrong or the content is not stored
+     */
+    public boolean proves(String id, String challenge, String proof) throws IOException {
+        Path path = resolve(id);
+        if (path == null || challenge == null || proof == null) {
+            return false;
+        }
+        MessageDigest digest = sha256();
+        digest.update(challenge.getBytes(StandardCharsets.UTF_8));
+        ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+        try (FileChannel file = FileChannel.open(path, StandardOpenOption.READ)) {
+            while (file.read(buffer) >= 0) {
+                buffer.flip();
+                digest.update(buffer);
+                buffer.clear();
+            }
+        }
+        return MessageDigest.isEqual(hex(digest.digest()).getBytes(StandardCharsets.US_ASCII),
+                proof.toLowerCase().getBytes(StandardCharsets.US_ASCII));
+    }
+
+    /**
+     * Get the file of a stored attachment, or null if the id is malformed or unknown
+     */
+    public Path resolve(String id) {
+        if (id == null || id.length() != 64 || !id.chars().allMatch(c -> Character.digit(c, 16) >= 0)) {
+            return null;
+        }
+        Path path = objectPath(id.toLowerCase());
+        return Files.isRegularFile(path) ? path : null;
+    }
+
+    /**
+     * Drop uploads that made no progress for the given time
+     */
+    public void purgeStaleUploads(long maxIdleMs) {
+        long cutoff = System.currentTimeMillis() - maxIdleMs;
+        for (Upload upload : active.values()) {
+            if (upload.lastActive < cutoff && finish(upload)) {
+                try {
+                    Files.deleteIfExists(upload.part);
+                } catch (IOException e) {
+                    System.err.println("❌ Could not delete stale upload: " + upload.part);
+                }
+            }
+        }
+    }
+
+    private Path objectPath(String hash) {
+        return objects.resolve(hash.substring(0, 2)).resolve(hash);
+    }
+
+    /**
+     * Keep only the file name part, so names can never point into the file system
+     */
+    private static String cleanName(String name) {
+        if (name == null || name.isBlank()) {
+            return "attachment";
+        }
+        String base = name.substring(Math.max(name.lastIndexOf('/'), name.lastIndexOf('\\')) + 1).trim();
+        if (base.isEmpty()) {
+            return "attachment";
+        }
+        return base.length() > 255 ? base.substring(0, 255) : base;
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    private static String hex(byte[] bytes) {
+        char[] chars = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            chars[i * 2] = HEX[(bytes[i] >> 4) & 0xf];
+            chars[i * 2 + 1] = HEX[bytes[i] & 0xf];
+        }
+        return new String(chars);
+    }
+
+    /**
+     * Unfinished uploads of one owner
+     */
+    private static class Reservation {
+        int uploads;
+        long bytes;
+    }
+
+    /**
+     * An upload in progress
+     */
+    public static class Upload {
+        private final String id;
+        private final int ownerId;
+        private final String name;
+        private final long size;
+        private final Path part;
+        private final MessageDigest digest;
+        private long received;
+        private volatile long lastActive = System.currentTimeMillis();
+
+        private Upload(String id, int ownerId, String name, long size, Path part) {
+            this.id = id;
+            this.ownerId = ownerId;
+            this.name = name;
+            this.size = size;
+            this.part = part;
+            this.digest = sha256();
+        }
+
+        public String id() {
+            return id;
+        }
+
+        public long size() {
+            return size;
+        }
+
+        public synchronized long received() {
+            return received;
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package com.chatapp.auth;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.Base64;
+
+/**
+ * Short-lived tokens that let a client log in again without its password.
+ *
+ * A token is "userId.expiryMillis.signature" with an HMAC-SHA256 signature, so any server process
+ * configured with the same secret can check it without shared state. Sent with the reconnect hint
+ * when a server drains, they spare the next process a BCrypt check per reconnecting client.
+ */
+public class ResumeTokens {
+    private static final String ALGORITHM = "HmacSHA256";
+
+    private final SecretKeySpec key;
+    private final long ttlMs;
+
+    public ResumeTokens(String secret, long ttlMs) {
+        this.key = new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), ALGORITHM);
+        this.ttlMs = ttlMs;
+    }
+
+    public String issue(int userId) {
+        String payload = userId + "." + (System.currentTimeMillis() + ttlMs);
+        return payload + "." + sign(payload);
+    }
+
+    /**
+     * Check a token
+     * @return the user id, or 0 if the token is malformed, forged or expired
+     */
+    public int verify(String token) {
+        if (token == null) {
+            return 0;
+        }
+        int signatureStart = token.lastIndexOf('.');
+        int expiryStart = signatureStart > 0 ? token.lastIndexOf('.', signatureStart - 1) : -1;
+        if (expiryStart <= 0) {
+            return 0;
+        }
+        String payload = token.substring(0, signatureStart);
+        byte[] expected = sign(payload).getBytes(StandardCharsets.US_ASCII);
+        byte[] actual = token.substring(signatureStart + 1).getBytes(StandardCharsets.US_ASCII);
+        if (!MessageDigest.isEqual(expected, actual)) {
+            return 0;
+        }
+        try {
+            long expiry = Long.parseLong(token.substring(expiryStart + 1, signatureStart));
+            if (expiry < System.currentTimeMillis()) {
+                return 0;
+            }
+            return Integer.parseInt(token.substring(0, expiryStart));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private String sign(String payload) {
+        try {
+            Mac mac = Mac.getInstance(ALGORITHM);
+            mac.init(key);
+            byte[] signature = mac.doFinal(payload.getBytes(StandardCharsets.UTF_8));
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(signature);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(ALGORITHM + " is not available", e);
+        }
+    }
+}
@@ -1,25 +1,38 @@
 package com.chatapp.auth;
 
 import com.chatapp.database.DatabaseManager;
+import com.chatapp.database.SpillLog;
+import com.chatapp.jfr.FrameTrace;
+import com.chatapp.jfr.LoginEvent;
+import com.chatapp.jfr.PasswordHashEvent;
 import com.chatapp.model.User;
+import com.chatapp.search.UserIndex;
 import org.mindrot.jbcrypt.BCrypt;
 
 import java.sql.*;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 public class UserAuthService {
+    private static final int OFFLINE_BATCH = 1000;
+
     private final DatabaseManager dbManager;
+    private final SpillLog spill;
 
     public UserAuthService() {
         this.dbManager = DatabaseManager.getInstance();
+        this.spill = SpillLog.getInstance();
     }
 
     /**
      * Register a new user
      */
     public boolean register(String email, String password, String username) {
+        PasswordHashEvent hashEvent = new PasswordHashEvent();
+        hashEvent.begin();
         String hashedPassword = BCrypt.hashpw(password, BCrypt.gensalt());
+        commit(hashEvent, "hash");
         String sql = "INSERT INTO users (email, password, username, status) VALUES (?, ?, ?, 'offline')";
 
         try (Connection conn = dbManager.getConnection();
@@ -42,10 +55,31 @@ public class UserAuthService {
         }
     }
 
+    private static void commit(PasswordHashEvent event, String operation) {
+        if (event.shouldCommit()) {
+            event.frameId = FrameTrace.current();
+            event.operation = operation;
+            event.commit();
+        }
+    }
+
     /**
      * Login user - validate credentials
      */
     public User login(String email, String password) {
+        LoginEvent event = new LoginEvent();
+        event.begin();
+        User user = checkCredentials(email, password);
+        if (event.shouldCommit()) {
+            event.frameId = FrameTrace.current();
+            event.userId = user != null ? user.getId() : 0;
+            event.success = user != null;
+            event.commit();
+        }
+        return user;
+    }
+
+    private User checkCredentials(String email, String password) {
         String sql = "SELECT * FROM users WHERE email = ?";
 
         try (Connection conn = dbManager.getConnection();
@@ -58,7 +92,11 @@ public class UserAuthService {
                 String hashedPassword = rs.getString("password");
                 
                 // Verify password
-                if (BCrypt.checkpw(password, hashedPassword)) {
+                PasswordHashEvent hashEvent = new PasswordHashEvent();
+                hashEvent.begin();
+                boolean matches = BCrypt.checkpw(password, hashedPassword);
+                commit(hashEvent, "check");
+                if (matches) {
                     User user = new User();
                     user.setId(rs.getInt("id"));
                     user.setEmail(rs.getString("email"));
@@ -66,7 +104,7 @@ public class UserAuthService {
                     user.setStatus(rs.getString("status"));
                     
                     // Update status to online
-                    updateUserStatus(email, "online");
+                    updateUserStatus(user.getId(), "online");
                     
                     return user;
                 }
@@ -97,6 +135,90 @@ public class UserAuthService {
         }
     }
 
+    /**
+     * Update user status (online/offline) by user id; spilled for later while the database is unavailable
+     */
+    public boolean updateUserStatus(int userId, String status) {
+        if (spill.pending() > 0) {
+            return spill.appendStatus(new int[] {userId}, status);
+        }
+        String sql = "UPDATE users SET status = ? WHERE id = ?";
+
+        try (Connection conn = dbManager.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+
+            pstmt.setString(1, status);
+            pstmt.setInt(2, userId);
+
+            return pstmt.executeUpdate() > 0;
+
+        } catch (SQLException e) {
+            if (DatabaseManager.isOutage(e)) {
+                return spill.appendStatus(new int[] {userId}, status);
+            }
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    /**
+     * Log in a user whose identity was already proven, e.g. by a resume token: no password check
+     * @return the user, now online, or null if the user no longer exists
+     */
+    public User resumeSession(int userId) {
+        String sql = "SELECT id, email, username FROM users WHERE id = ?";
+
+        try (Connection conn = dbManager.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+
+            pstmt.setInt(1, userId);
+            ResultSet rs = pstmt.executeQuery();
+
+            if (rs.next()) {
+                User user = new User();
+                user.setId(rs.getInt("id"));
+                user.setEmail(rs.getString("email"));
+                user.setUsername(rs.getString("username"));
+                user.setStatus("online");
+                updateUserStatus(userId, "online");
+                return user;
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        return null;
+    }
+
+    /**
+     * Mark many users offline at once, with one statement per OFFLINE_BATCH users;
+     * spilled for later while the database is unavailable
+     */
+    public void setOffline(int[] userIds) {
+        if (spill.pending() > 0) {
+            spill.appendStatus(userIds, "offline");
+            return;
+        }
+        try (Connection conn = dbManager.getConnection()) {
+            for (int from = 0; from < userIds.length; from += OFFLINE_BATCH) {
+                int to = Math.min(userIds.length, from + OFFLINE_BATCH);
+                String placeholders = String.join(",", Collections.nCopies(to - from, "?"));
+                try (PreparedStatement pstmt = conn.prepareStatement(
+                        "UPDATE users SET status = 'offline' WHERE id IN (" + placeholders + ")")) {
+                    for (int i = from; i < to; i++) {
+                        pstmt.setInt(i - from + 1, userIds[i]);
+                    }
+                    pstmt.executeUpdate();
+                }
+            }
+        } catch (SQLException e) {
+            if (DatabaseManager.isOutage(e)) {
+                spill.appendStatus(userIds, "offline");
+            } else {
+                e.printStackTrace();
+            }
+        }
+    }
+
     /**
      * Get user by email
      */
@@ -123,8 +245,30 @@ public class UserAuthService {
         return null;
     }
 
+    /**
+     * Load every user (id, email and username) into the user index, in id order. Rows are
+     * streamed, so the whole table is never held in memory.
+     */
+    public void loadIndex(UserIndex index) throws SQLException {
+        String sql = "SELECT id, email, username FROM users ORDER BY id";
+
+        try (Connection conn = dbManager.getBulkConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+
+            // Connector/J only streams with this exact fetch size; otherwise it buffers the whole result
+            pstmt.setFetchSize("MySQL".equalsIgnoreCase(conn.getMetaData().getDatabaseProductName())
+                    ? Integer.MIN_VALUE : 1000);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    index.load(rs.getInt("id"), rs.getString("email"), rs.getString("username"));
+                }
+            }
+        }
+    }
+
     /**
      * Get all online users
+     * @return the users, or null if the database could not be read
      */
     public List<User> getOnlineUsers() {
         List<User> users = new ArrayList<>();
@@ -143,7 +287,10 @@ public class UserAuthService {
                 users.add(user);
             }
         } catch (SQLException e) {
-            e.printStackTrace();
+            if (!DatabaseManager.isOutage(e)) {
+                e.printStackTrace();
+            }
+            return null;
         }
         return users;
     }
@@ -0,0 +1,59 @@
+package com.chatapp.auth;
+
+import com.chatapp.model.User;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Interns users to their integer users.id so the rest of the server can work with ids.
+ * Emails are only resolved at the protocol edge (login and message addressing).
+ * Entries are added on login and looked up in the database on a miss.
+ */
+public class UserDirectory {
+    private final UserAuthService authService;
+    private final Map<String, Integer> idsByEmail = new ConcurrentHashMap<>();
+    private final Map<Integer, User> usersById = new ConcurrentHashMap<>();
+
+    public UserDirectory(UserAuthService authService) {
+        this.authService = authService;
+    }
+
+    /**
+     * Remember a user loaded from the database
+     */
+    public void intern(User user) {
+        User entry = new User();
+        entry.setId(user.getId());
+        entry.setEmail(user.getEmail());
+        entry.setUsername(user.getUsername());
+        usersById.put(user.getId(), entry);
+        idsByEmail.put(user.getEmail(), user.getId());
+    }
+
+    /**
+     * Get the id of a user by email, or -1 if there is no such user
+     */
+    public int idOf(String email) {
+        if (email == null) {
+            return -1;
+        }
+        Integer id = idsByEmail.get(email);
+        if (id != null) {
+            return id;
+        }
+        User user = authService.getUserByEmail(email);
+        if (user == null) {
+            return -1;
+        }
+        intern(user);
+        return user.getId();
+    }
+
+    /**
+     * Get the interned user (id, email and username only), or null if unknown
+     */
+    public User get(int id) {
+        return usersById.get(id);
+    }
+}
@@ -0,0 +1,89 @@
+package com.chatapp.database;
+
+import com.chatapp.server.ServerMetrics;
+
+/**
+ * Stops calls to the database after failureThreshold consecutive failures, so connection threads
+ * fail fast instead of piling up on a database that is down or too slow to answer. A call slower
+ * than slowCallMs counts as a failure. After openMs one trial call is let through: if it succeeds
+ * the circuit closes again, otherwise it stays open for another openMs.
+ */
+public class CircuitBreaker {
+    public enum State { CLOSED, OPEN, HALF_OPEN }
+
+    private final int failureThreshold;
+    private final long slowCallNanos;
+    private final long openNanos;
+    private final ServerMetrics metrics = ServerMetrics.getInstance();
+
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long openedAt;
+
+    public CircuitBreaker(int failureThreshold, long slowCallMs, long openMs) {
+        this.failureThreshold = Math.max(1, failureThreshold);
+        this.slowCallNanos = slowCallMs * 1_000_000L;
+        this.openNanos = openMs * 1_000_000L;
+        metrics.gauge("db.breaker.state", () -> getState().ordinal());
+    }
+
+    /**
+     * Ask to make a call
+     * @return false if the circuit is open and the call must not be made
+     */
+    public synchronized boolean tryAcquire() {
+        switch (state) {
+            case CLOSED:
+                return true;
+            case OPEN:
+                if (System.nanoTime() - openedAt >= openNanos) {
+                    state = State.HALF_OPEN; // this caller makes the trial call
+                    return true;
+                }
+                break;
+            default:
+                break; // the trial call is still running
+        }
+        metrics.increment("db.breaker.rejected");
+        return false;
+    }
+
+    /**
+     * Report a call that completed, slow calls count as failures
+     */
+    public void onSuccess(long elapsedNanos) {
+        if (elapsedNanos > slowCallNanos) {
+            metrics.increment("db.calls.slow");
+            onFailure();
+            return;
+        }
+        synchronized (this) {
+            consecutiveFailures = 0;
+            if (state == State.HALF_OPEN) {
+                state = State.CLOSED;
+                System.out.println("✅ Database circuit closed: database is back");
+            }
+        }
+    }
+
+    /**
+     * Report a call that failed because the database could not be reached or timed out
+     */
+    public void onFailure() {
+        metrics.increment("db.calls.failed");
+        synchronized (this) {
+            consecutiveFailures++;
+            if (state == State.HALF_OPEN || (state == State.CLOSED && consecutiveFailures >= failureThreshold)) {
+                state = State.OPEN;
+                openedAt = System.nanoTime();
+                metrics.increment("db.breaker.opened");
+                System.err.println("⚠️ Database circuit open after " + consecutiveFailures
+                        + " failed or slow calls: running degraded");
+            }
+        }
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+}
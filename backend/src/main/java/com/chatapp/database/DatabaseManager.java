@@ -1,5 +1,9 @@
 package com.chatapp.database;
 
+import com.chatapp.jfr.ConnectionAcquiredEvent;
+import com.chatapp.jfr.FrameTrace;
+import com.chatapp.server.ServerConfig;
+
 import java.io.IOException;
 import java.io.InputStream;
 import java.sql.*;
@@ -10,10 +14,19 @@ public class DatabaseManager {
     private String url;
     private String username;
     private String password;
+    private String driver = "com.mysql.cj.jdbc.Driver";
+    private final int connectTimeoutMs;
+    private final int queryTimeoutSeconds;
+    private final CircuitBreaker breaker;
 
     private DatabaseManager() {
         loadDatabaseConfig();
-        testInitialConnection();
+        ServerConfig config = ServerConfig.getInstance();
+        this.connectTimeoutMs = config.getInt("db.connectTimeoutMs", 3000);
+        this.queryTimeoutSeconds = (config.getInt("db.queryTimeoutMs", 5000) + 999) / 1000;
+        this.breaker = new CircuitBreaker(config.getInt("db.breaker.failureThreshold", 5),
+                config.getLong("db.breaker.slowCallMs", 2000), config.getLong("db.breaker.openMs", 5000));
+        loadDriver();
     }
 
     public static synchronized DatabaseManager getInstance() {
@@ -28,44 +41,135 @@ public class DatabaseManager {
         try (InputStream input = getClass().getClassLoader().getResourceAsStream("db_config.properties")) {
             if (input == null) {
                 System.err.println("Unable to find db_config.properties");
-                return;
+            } else {
+                props.load(input);
+                this.url = props.getProperty("db.url");
+                this.username = props.getProperty("db.username");
+                this.password = props.getProperty("db.password");
+                this.driver = props.getProperty("db.driver", driver);
             }
-            props.load(input);
-            this.url = props.getProperty("db.url");
-            this.username = props.getProperty("db.username");
-            this.password = props.getProperty("db.password");
         } catch (IOException e) {
             e.printStackTrace();
         }
+
+        // System properties take precedence, e.g. to point tools at a local stand-in database
+        this.url = System.getProperty("db.url", url);
+        this.username = System.getProperty("db.username", username);
+        this.password = System.getProperty("db.password", password);
+        this.driver = System.getProperty("db.driver", driver);
     }
 
-    private void testInitialConnection() {
+    /**
+     * Register the JDBC driver. The connection itself is checked once by the server
+     * through {@link #testConnection()}, so startup does not open a throwaway connection here.
+     */
+    private void loadDriver() {
         try {
-            Class.forName("com.mysql.cj.jdbc.Driver");
-            // Test the connection and immediately close it
-            try (Connection testConn = DriverManager.getConnection(url, username, password)) {
-                System.out.println("✅ Database connected successfully!");
-            }
-        } catch (ClassNotFoundException | SQLException e) {
-            System.err.println("❌ Database connection failed!");
-            e.printStackTrace();
+            Class.forName(driver);
+        } catch (ClassNotFoundException e) {
+            System.err.println("❌ JDBC driver not found: " + driver);
         }
+        DriverManager.setLoginTimeout((connectTimeoutMs + 999) / 1000);
     }
 
     /**
      * Get a new database connection.
      * IMPORTANT: The caller is responsible for closing this connection!
      * Use try-with-resources: try (Connection conn = dbManager.getConnection()) { ... }
+     *
+     * Statements get the query timeout, and slow or failing ones trip the circuit breaker.
+     *
+     * @throws DatabaseUnavailableException at once, without connecting, while the circuit is open
      */
     public Connection getConnection() throws SQLException {
+        return open(true);
+    }
+
+    /**
+     * Get a new connection for background and streaming work (index builds, archiving, exports),
+     * whose statements may rightly run for a long time. Connecting is guarded like
+     * {@link #getConnection()}, but statements get no query timeout and are not reported to the
+     * circuit breaker. The caller closes it.
+     *
+     * @throws DatabaseUnavailableException at once, without connecting, while the circuit is open
+     */
+    public Connection getBulkConnection() throws SQLException {
+        return open(false);
+    }
+
+    private Connection open(boolean guarded) throws SQLException {
+        if (!breaker.tryAcquire()) {
+            throw new DatabaseUnavailableException();
+        }
+        ConnectionAcquiredEvent event = new ConnectionAcquiredEvent();
+        event.begin();
+        boolean success = false;
+        long start = System.nanoTime();
+        Connection conn = null;
         try {
-            Class.forName("com.mysql.cj.jdbc.Driver");
-            Connection conn = DriverManager.getConnection(url, username, password);
+            Class.forName(driver);
+            conn = DriverManager.getConnection(url, connectionProperties());
             conn.setAutoCommit(true); // Ensure auto-commit is enabled
-            return conn;
+            Connection result = guarded ? GuardedConnection.wrap(conn, breaker, queryTimeoutSeconds) : conn;
+            success = true;
+            breaker.onSuccess(System.nanoTime() - start);
+            return result;
         } catch (ClassNotFoundException e) {
-            throw new SQLException("MySQL Driver not found", e);
+            throw new SQLException("JDBC driver not found: " + driver, e);
+        } finally {
+            if (!success) {
+                // Whatever went wrong, report it: a half-open probe that never reports keeps the circuit stuck
+                breaker.onFailure();
+                closeQuietly(conn);
+            }
+            if (event.shouldCommit()) {
+                event.frameId = FrameTrace.current();
+                event.success = success;
+                event.commit();
+            }
+        }
+    }
+
+    private static void closeQuietly(Connection conn) {
+        if (conn != null) {
+            try {
+                conn.close();
+            } catch (SQLException e) {
+                // already failing; the original error is the one that matters
+            }
+        }
+    }
+
+    private Properties connectionProperties() {
+        Properties props = new Properties();
+        if (username != null) {
+            props.setProperty("user", username);
+        }
+        if (password != null) {
+            props.setProperty("password", password);
+        }
+        if (url != null && url.startsWith("jdbc:mysql:")) {
+            // Connector/J ignores the login timeout
+            props.setProperty("connectTimeout", Integer.toString(connectTimeoutMs));
         }
+        return props;
+    }
+
+    /**
+     * Whether the circuit is closed, i.e. the database is believed to be reachable
+     */
+    public boolean isAvailable() {
+        return breaker.getState() == CircuitBreaker.State.CLOSED;
+    }
+
+    /**
+     * Whether an exception means the database is down or too slow, rather than a problem with the statement
+     */
+    public static boolean isOutage(SQLException e) {
+        String state = e.getSQLState();
+        return e instanceof SQLTransientConnectionException || e instanceof SQLNonTransientConnectionException
+                || e instanceof SQLRecoverableException || e instanceof SQLTimeoutException
+                || (state != null && state.startsWith("08"));
     }
 
     /**
@@ -0,0 +1,14 @@
+package com.chatapp.database;
+
+import java.sql.SQLTransientConnectionException;
+
+/**
+ * Thrown instead of connecting while the database circuit is open
+ */
+public class DatabaseUnavailableException extends SQLTransientConnectionException {
+    private static final long serialVersionUID = 1L;
+
+    public DatabaseUnavailableException() {
+        super("Database unavailable: circuit open", "08000");
+    }
+}
@@ -0,0 +1,62 @@
+package com.chatapp.database;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Wraps a JDBC connection so every statement created from it gets the query timeout, and every
+ * statement execution is reported to the circuit breaker: its duration, or a failure if the
+ * database could not be reached or timed out. Other SQL errors (e.g. a duplicate key) are the
+ * caller's business and do not count.
+ */
+final class GuardedConnection {
+    private GuardedConnection() {
+    }
+
+    static Connection wrap(Connection connection, CircuitBreaker breaker, int queryTimeoutSeconds) {
+        InvocationHandler handler = (proxy, method, args) -> {
+            Object result = invoke(connection, method, args);
+            if (result instanceof Statement) { // createStatement, prepareStatement or prepareCall
+                Statement statement = (Statement) result;
+                statement.setQueryTimeout(queryTimeoutSeconds);
+                return guard(statement, method.getReturnType(), breaker);
+            }
+            return result;
+        };
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                new Class<?>[] {Connection.class}, handler);
+    }
+
+    private static Object guard(Statement statement, Class<?> type, CircuitBreaker breaker) {
+        InvocationHandler handler = (proxy, method, args) -> {
+            if (!method.getName().startsWith("execute")) {
+                return invoke(statement, method, args);
+            }
+            long start = System.nanoTime();
+            try {
+                Object result = invoke(statement, method, args);
+                breaker.onSuccess(System.nanoTime() - start);
+                return result;
+            } catch (SQLException e) {
+                if (DatabaseManager.isOutage(e)) {
+                    breaker.onFailure();
+                }
+                throw e;
+            }
+        };
+        return Proxy.newProxyInstance(Statement.class.getClassLoader(), new Class<?>[] {type}, handler);
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+}
@@ -1,83 +1,410 @@
 package com.chatapp.database;
 
+import com.chatapp.archive.ArchivedMessage;
+import com.chatapp.archive.MessageArchive;
+import com.chatapp.jfr.FrameTrace;
+import com.chatapp.jfr.MessagePersistedEvent;
+import com.chatapp.model.Attachment;
+import com.chatapp.model.Conversation;
 import com.chatapp.model.Message;
+import com.chatapp.model.Reaction;
 
+import java.io.IOException;
 import java.sql.*;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 public class MessageRepository {
+    /**
+     * Messages store user ids; sender and receiver emails are joined in for the client protocol
+     */
+    private static final String SELECT_MESSAGES =
+            "SELECT m.id, m.message, m.timestamp, m.conversation, m.seq, " +
+            "m.attachment_id, m.attachment_name, m.attachment_size, " +
+            "s.email AS sender, s.username, r.email AS receiver FROM messages m " +
+            "JOIN users s ON m.sender_id = s.id " +
+            "LEFT JOIN users r ON m.receiver_id = r.id ";
+
+    /** Grantee standing for every user, for attachments sent in public chat */
+    public static final int ALL_USERS = 0;
+
+    /** Rows per archive page, and per network round trip for drivers that honour the fetch size, when streaming */
+    private static final int STREAM_PAGE_SIZE = 1000;
+    /** Seconds MySQL waits for a slow (throttled) consumer of a streamed result set */
+    private static final int STREAM_WRITE_TIMEOUT_SECONDS = 3600;
+
     private final DatabaseManager dbManager;
+    private final MessageArchive archive;
+    private final SpillLog spill;
+
+    /**
+     * Receives streamed messages one at a time
+     */
+    public interface MessageSink {
+        void accept(Message message) throws IOException;
+    }
 
     public MessageRepository() {
         this.dbManager = DatabaseManager.getInstance();
+        this.archive = MessageArchive.getInstance();
+        this.spill = SpillLog.getInstance();
     }
 
     /**
-     * Save a message to the database
+     * Save a message to the database. While the database is unavailable, or earlier writes are
+     * still waiting in the spill log, the message is spilled instead and saved later by {@link #replaySpill}.
+     * @param receiverId the receiving user's id, 0 for public messages
+     * @param seq the sequence number assigned to the message within its conversation
+     * @param attachment the attached file, or null
+     * @return the generated message id, or -1 if the message was not saved (yet)
      */
-    public boolean saveMessage(String sender, String receiver, String messageContent) {
-        String sql = "INSERT INTO messages (sender, receiver, message) VALUES (?, ?, ?)";
+    public int saveMessage(int senderId, int receiverId, String messageContent, long seq, Attachment attachment) {
+        MessagePersistedEvent event = new MessagePersistedEvent();
+        event.begin();
+        int id = insertMessage(senderId, receiverId, messageContent, seq, attachment);
+        if (event.shouldCommit()) {
+            event.frameId = FrameTrace.current();
+            event.messageId = id;
+            event.conversation = Conversation.of(senderId, receiverId);
+            event.seq = seq;
+            event.commit();
+        }
+        return id;
+    }
+
+    private int insertMessage(int senderId, int receiverId, String messageContent, long seq, Attachment attachment) {
+        if (spill.pending() > 0) {
+            spill.appendMessage(senderId, receiverId, messageContent, seq, attachment, System.currentTimeMillis());
+            return -1;
+        }
+        String sql = "INSERT INTO messages (sender_id, receiver_id, message, conversation, seq, " +
+                     "attachment_id, attachment_name, attachment_size) VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
 
         try (Connection conn = dbManager.getConnection();
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+             PreparedStatement pstmt = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
 
             if (conn == null) {
                 System.err.println("❌ Database connection is null!");
-                return false;
+                return -1;
             }
 
-            System.out.println("💾 Attempting to save message: sender=" + sender + ", receiver=" + receiver + ", content=" + messageContent);
-
-            pstmt.setString(1, sender);
-            pstmt.setString(2, receiver); // null for public messages
+            pstmt.setInt(1, senderId);
+            if (receiverId > 0) {
+                pstmt.setInt(2, receiverId);
+            } else {
+                pstmt.setNull(2, Types.INTEGER); // public message
+            }
             pstmt.setString(3, messageContent);
+            pstmt.setString(4, Conversation.of(senderId, receiverId));
+            pstmt.setLong(5, seq);
+            if (attachment != null) {
+                pstmt.setString(6, attachment.getId());
+                pstmt.setString(7, attachment.getName());
+                pstmt.setLong(8, attachment.getSize());
+            } else {
+                pstmt.setNull(6, Types.CHAR);
+                pstmt.setNull(7, Types.VARCHAR);
+                pstmt.setNull(8, Types.BIGINT);
+            }
 
             int rowsAffected = pstmt.executeUpdate();
-            
+
             if (rowsAffected > 0) {
-                System.out.println("✅ Message saved successfully! Rows affected: " + rowsAffected);
-                return true;
+                try (ResultSet keys = pstmt.getGeneratedKeys()) {
+                    return keys.next() ? keys.getInt(1) : -1;
+                }
             } else {
                 System.err.println("⚠️ No rows were inserted!");
-                return false;
+                return -1;
             }
 
         } catch (SQLException e) {
+            if (DatabaseManager.isOutage(e)) {
+                if (spill.appendMessage(senderId, receiverId, messageContent, seq, attachment, System.currentTimeMillis())) {
+                    System.err.println("💾 Database unavailable, message spilled for later: " + e.getMessage());
+                }
+                return -1;
+            }
             System.err.println("❌ Error saving message to database:");
             e.printStackTrace();
-            return false;
+            return -1;
+        }
+    }
+
+    /**
+     * Write the spilled messages and status changes to the database, batchSize per transaction.
+     * A batch that fails for reasons other than an outage is retried record by record, and
+     * records the database still rejects are dropped.
+     * @param saved receives each replayed message, with its new id
+     * @return the number of records replayed
+     * @throws SQLException if the database became unavailable; the rest stays spilled
+     */
+    public int replaySpill(int batchSize, MessageSink saved) throws SQLException {
+        return spill.replay(batchSize, (batch, committed) -> {
+            List<Message> messages = new ArrayList<>();
+            try (Connection conn = dbManager.getConnection()) {
+                try {
+                    conn.setAutoCommit(false);
+                    for (SpillLog.Record record : batch) {
+                        replay(conn, record, messages);
+                    }
+                    conn.commit();
+                } catch (SQLException e) {
+                    conn.rollback();
+                    messages.clear();
+                    if (DatabaseManager.isOutage(e)) {
+                        throw e;
+                    }
+                    conn.setAutoCommit(true);
+                    // Each record now commits on its own; report them as they do, since an outage part way
+                    // must not replay the committed ones (nothing in the table would reject the duplicates)
+                    for (int i = 0; i < batch.size(); i++) {
+                        SpillLog.Record record = batch.get(i);
+                        try {
+                            replay(conn, record, messages);
+                        } catch (SQLException recordError) {
+                            if (DatabaseManager.isOutage(recordError)) {
+                                throw recordError;
+                            }
+                            System.err.println("❌ Dropping spilled " + record.op + ": " + recordError.getMessage());
+                        }
+                        committed.accept(i + 1);
+                    }
+                }
+            } finally {
+                for (Message message : messages) {
+                    try {
+                        saved.accept(message);
+                    } catch (IOException e) {
+                        e.printStackTrace();
+                    }
+                }
+            }
+        });
+    }
+
+    private void replay(Connection conn, SpillLog.Record record, List<Message> messages) throws SQLException {
+        if ("status".equals(record.op) && record.userIds.length > 0) {
+            String placeholders = String.join(",", Collections.nCopies(record.userIds.length, "?"));
+            try (PreparedStatement pstmt = conn.prepareStatement(
+                    "UPDATE users SET status = ? WHERE id IN (" + placeholders + ")")) {
+                pstmt.setString(1, record.status);
+                for (int i = 0; i < record.userIds.length; i++) {
+                    pstmt.setInt(i + 2, record.userIds[i]);
+                }
+                pstmt.executeUpdate();
+            }
+        } else if ("message".equals(record.op)) {
+            String sql = "INSERT INTO messages (sender_id, receiver_id, message, conversation, seq, timestamp, " +
+                         "attachment_id, attachment_name, attachment_size) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)";
+            String conversation = Conversation.of(record.senderId, record.receiverId);
+            try (PreparedStatement pstmt = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+                pstmt.setInt(1, record.senderId);
+                if (record.receiverId > 0) {
+                    pstmt.setInt(2, record.receiverId);
+                } else {
+                    pstmt.setNull(2, Types.INTEGER);
+                }
+                pstmt.setString(3, record.content);
+                pstmt.setString(4, conversation);
+                pstmt.setLong(5, record.seq);
+                pstmt.setTimestamp(6, new Timestamp(record.timestamp));
+                Attachment attachment = record.attachment;
+                if (attachment != null) {
+                    pstmt.setString(7, attachment.getId());
+                    pstmt.setString(8, attachment.getName());
+                    pstmt.setLong(9, attachment.getSize());
+                } else {
+                    pstmt.setNull(7, Types.CHAR);
+                    pstmt.setNull(8, Types.VARCHAR);
+                    pstmt.setNull(9, Types.BIGINT);
+                }
+                pstmt.executeUpdate();
+                try (ResultSet keys = pstmt.getGeneratedKeys()) {
+                    if (keys.next()) {
+                        Message message = new Message();
+                        message.setId(keys.getInt(1));
+                        message.setContent(record.content);
+                        message.setConversation(conversation);
+                        message.setSeq(record.seq);
+                        message.setTimestamp(record.timestamp);
+                        messages.add(message);
+                    }
+                }
+            }
         }
     }
 
     /**
      * Get recent public messages (limit)
      */
-    public List<Message> getRecentPublicMessages(int limit) {
+    public List<Message> getRecentPublicMessages(int limit) throws SQLException {
+        return getRecentMessages(Conversation.PUBLIC, limit);
+    }
+
+    /**
+     * Get private messages between two users
+     */
+    public List<Message> getPrivateMessages(int user1, int user2, int limit) throws SQLException {
+        return getRecentMessages(Conversation.privateKey(user1, user2), limit);
+    }
+
+    /**
+     * Get the latest messages of a conversation, oldest first
+     */
+    public List<Message> getRecentMessages(String conversation, int limit) throws SQLException {
+        return getMessagesBefore(conversation, Long.MAX_VALUE, limit);
+    }
+
+    /**
+     * Get up to limit messages of a conversation with a sequence number below beforeSeq, oldest first.
+     * Pages that reach past the oldest message still in the database continue in the archive.
+     * @throws SQLException if the database cannot be read; the archive alone would pass off old messages as recent
+     */
+    public List<Message> getMessagesBefore(String conversation, long beforeSeq, int limit) throws SQLException {
         List<Message> messages = new ArrayList<>();
-        String sql = "SELECT m.*, u.username FROM messages m " +
-                     "JOIN users u ON m.sender = u.email " +
-                     "WHERE m.receiver IS NULL " +
-                     "ORDER BY m.timestamp DESC LIMIT ?";
+        String sql = SELECT_MESSAGES +
+                     "WHERE m.conversation = ? AND m.seq < ? " +
+                     "ORDER BY m.seq DESC LIMIT ?";
 
         try (Connection conn = dbManager.getConnection();
              PreparedStatement pstmt = conn.prepareStatement(sql)) {
 
-            pstmt.setInt(1, limit);
+            pstmt.setString(1, conversation);
+            pstmt.setLong(2, beforeSeq);
+            pstmt.setInt(3, limit);
             ResultSet rs = pstmt.executeQuery();
 
             while (rs.next()) {
-                Message msg = new Message();
-                msg.setType("message");
-                msg.setSender(rs.getString("sender"));
-                msg.setUsername(rs.getString("username"));
-                msg.setContent(rs.getString("message"));
-                msg.setTimestamp(rs.getTimestamp("timestamp").getTime());
-                messages.add(msg);
+                messages.add(readMessage(rs));
             }
 
             // Reverse to show oldest first
-            java.util.Collections.reverse(messages);
+            Collections.reverse(messages);
+        }
+
+        if (messages.size() < limit) {
+            // Legacy rows may have no seq; page the archive from beforeSeq then
+            Long oldest = messages.isEmpty() ? null : messages.get(0).getSeq();
+            long archiveBefore = oldest != null ? oldest : beforeSeq;
+            List<Message> archived = fromArchive(archive.before(conversation, archiveBefore, limit - messages.size()));
+            archived.addAll(messages);
+            messages = archived;
+        }
+        return messages;
+    }
+
+    /**
+     * Stream every message of a conversation to the sink in seq order, without ever holding more
+     * than one page of rows. Archived messages come first, then the database rows from a
+     * forward-only cursor (row-by-row streaming on MySQL).
+     * @return the number of messages streamed
+     */
+    public long streamConversation(String conversation, MessageSink sink) throws SQLException, IOException {
+        String sql = SELECT_MESSAGES +
+                     "WHERE m.conversation = ? ORDER BY m.seq";
+        long count = 0;
+
+        try (Connection conn = dbManager.getBulkConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+
+            if ("MySQL".equalsIgnoreCase(conn.getMetaData().getDatabaseProductName())) {
+                // Connector/J only streams with this exact fetch size; otherwise it buffers the whole result
+                try (Statement stmt = conn.createStatement()) {
+                    stmt.execute("SET SESSION net_write_timeout = " + STREAM_WRITE_TIMEOUT_SECONDS);
+                }
+                pstmt.setFetchSize(Integer.MIN_VALUE);
+            } else {
+                pstmt.setFetchSize(STREAM_PAGE_SIZE);
+            }
+            pstmt.setString(1, conversation);
+
+            try (ResultSet rs = pstmt.executeQuery()) {
+                // The cursor sees every row not yet archived when the query started. Rows the archive
+                // job moves while we stream are then in both tiers, so the archive is only read below
+                // the first database row.
+                boolean hasRows = rs.next();
+                long hotFrom = hasRows ? rs.getLong("seq") : Long.MAX_VALUE;
+
+                long lastSeq = 0;
+                while (lastSeq < hotFrom - 1) {
+                    List<ArchivedMessage> page = archive.after(conversation, lastSeq, STREAM_PAGE_SIZE);
+                    if (page.isEmpty()) {
+                        break;
+                    }
+                    for (Message message : fromArchive(page)) {
+                        if (message.getSeq() >= hotFrom) {
+                            break;
+                        }
+                        sink.accept(message);
+                        count++;
+                    }
+                    lastSeq = page.get(page.size() - 1).seq;
+                }
+
+                while (hasRows) {
+                    sink.accept(readMessage(rs));
+                    count++;
+                    hasRows = rs.next();
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Get the highest sequence number used in a conversation, 0 if it has no messages
+     */
+    public long getMaxSeq(String conversation) throws SQLException {
+        String sql = "SELECT MAX(seq) FROM messages WHERE conversation = ?";
+
+        try (Connection conn = dbManager.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+
+            pstmt.setString(1, conversation);
+            ResultSet rs = pstmt.executeQuery();
+            long hot = rs.next() ? rs.getLong(1) : 0;
+            // A conversation whose messages were all archived continues after its archived ones
+            return Math.max(hot, archive.maxSeq(conversation));
+        }
+    }
+
+    /**
+     * Get the messages of a conversation with a sequence number greater than afterSeq, oldest first
+     */
+    public List<Message> getMessagesAfterSeq(String conversation, long afterSeq, int limit) {
+        List<Message> messages = new ArrayList<>();
+        if (archive.maxSeq(conversation) > afterSeq) {
+            messages.addAll(fromArchive(archive.after(conversation, afterSeq, limit)));
+            if (messages.size() >= limit) {
+                return messages;
+            }
+            if (!messages.isEmpty()) { // empty if the segments could not be read
+                afterSeq = messages.get(messages.size() - 1).getSeq();
+                limit -= messages.size();
+            }
+        }
+        String sql = SELECT_MESSAGES +
+                     "WHERE m.conversation = ? AND m.seq > ? " +
+                     "ORDER BY m.seq LIMIT ?";
+
+        try (Connection conn = dbManager.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+
+            pstmt.setString(1, conversation);
+            pstmt.setLong(2, afterSeq);
+            pstmt.setInt(3, limit);
+
+            ResultSet rs = pstmt.executeQuery();
+            while (rs.next()) {
+                messages.add(readMessage(rs));
+            }
 
         } catch (SQLException e) {
             e.printStackTrace();
@@ -86,56 +413,354 @@ public class MessageRepository {
     }
 
     /**
-     * Get private messages between two users
+     * Get messages by id, returned in the order of the given ids
      */
-    public List<Message> getPrivateMessages(String user1, String user2, int limit) {
+    public List<Message> getMessagesByIds(List<Integer> ids) {
         List<Message> messages = new ArrayList<>();
-        String sql = "SELECT m.*, u.username FROM messages m " +
-                     "JOIN users u ON m.sender = u.email " +
-                     "WHERE ((m.sender = ? AND m.receiver = ?) OR (m.sender = ? AND m.receiver = ?)) " +
-                     "ORDER BY m.timestamp DESC LIMIT ?";
+        if (ids.isEmpty()) {
+            return messages;
+        }
+        String placeholders = String.join(",", Collections.nCopies(ids.size(), "?"));
+        String sql = SELECT_MESSAGES + "WHERE m.id IN (" + placeholders + ")";
 
         try (Connection conn = dbManager.getConnection();
              PreparedStatement pstmt = conn.prepareStatement(sql)) {
 
-            pstmt.setString(1, user1);
-            pstmt.setString(2, user2);
-            pstmt.setString(3, user2);
-            pstmt.setString(4, user1);
-            pstmt.setInt(5, limit);
+            for (int i = 0; i < ids.size(); i++) {
+                pstmt.setInt(i + 1, ids.get(i));
+            }
 
+            Map<Integer, Message> byId = new HashMap<>();
             ResultSet rs = pstmt.executeQuery();
+            while (rs.next()) {
+                Message msg = readMessage(rs);
+                byId.put(msg.getId(), msg);
+            }
 
+            if (byId.size() < ids.size()) {
+                List<Integer> missing = new ArrayList<>();
+                for (Integer id : ids) {
+                    if (!byId.containsKey(id)) {
+                        missing.add(id);
+                    }
+                }
+                for (Message msg : fromArchive(archive.byIds(missing))) {
+                    byId.put(msg.getId(), msg);
+                }
+            }
+
+            for (Integer id : ids) {
+                Message msg = byId.get(id);
+                if (msg != null) {
+                    messages.add(msg);
+                }
+            }
+
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        return messages;
+    }
+
+    /**
+     * Get the lowest and highest message id, or null if there are no messages
+     */
+    public int[] getMessageIdRange() {
+        String sql = "SELECT MIN(id), MAX(id) FROM messages";
+
+        try (Connection conn = dbManager.getBulkConnection();
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery(sql)) {
+
+            if (rs.next() && rs.getObject(1) != null) {
+                return new int[] { rs.getInt(1), rs.getInt(2) };
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        return null;
+    }
+
+    /**
+     * Get all messages with fromId <= id <= toId with only id, conversation, content and
+     * timestamp filled in (used to build the search index)
+     */
+    public List<Message> getMessagesInIdRange(int fromId, int toId) throws SQLException {
+        List<Message> messages = new ArrayList<>();
+        String sql = "SELECT id, conversation, message, timestamp FROM messages " +
+                     "WHERE id BETWEEN ? AND ? ORDER BY id";
+
+        try (Connection conn = dbManager.getBulkConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+
+            pstmt.setInt(1, fromId);
+            pstmt.setInt(2, toId);
+
+            ResultSet rs = pstmt.executeQuery();
             while (rs.next()) {
                 Message msg = new Message();
-                msg.setType("private_message");
-                msg.setSender(rs.getString("sender"));
-                msg.setReceiver(rs.getString("receiver"));
-                msg.setUsername(rs.getString("username"));
+                msg.setId(rs.getInt("id"));
+                msg.setConversation(rs.getString("conversation"));
                 msg.setContent(rs.getString("message"));
                 msg.setTimestamp(rs.getTimestamp("timestamp").getTime());
                 messages.add(msg);
             }
+        }
+        return messages;
+    }
+
+    /**
+     * Get the next batch of messages older than the cutoff for archiving, in id order
+     */
+    public List<ArchivedMessage> getArchiveBatch(int afterId, long cutoffMillis, int limit) throws SQLException {
+        List<ArchivedMessage> batch = new ArrayList<>();
+        String sql = "SELECT id, sender_id, receiver_id, message, timestamp, is_read, conversation, seq, " +
+                     "attachment_id, attachment_name, attachment_size FROM messages " +
+                     "WHERE id > ? AND timestamp < ? ORDER BY id LIMIT ?";
+
+        try (Connection conn = dbManager.getBulkConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+
+            pstmt.setInt(1, afterId);
+            pstmt.setTimestamp(2, new Timestamp(cutoffMillis));
+            pstmt.setInt(3, limit);
+
+            ResultSet rs = pstmt.executeQuery();
+            while (rs.next()) {
+                int senderId = rs.getInt("sender_id");
+                int receiverId = rs.getInt("receiver_id"); // 0 when NULL
+                String conversation = rs.getString("conversation");
+                String attachmentId = rs.getString("attachment_id");
+                batch.add(new ArchivedMessage(
+                        rs.getInt("id"),
+                        senderId,
+                        receiverId,
+                        conversation != null ? conversation : Conversation.of(senderId, receiverId),
+                        rs.getLong("seq"),
+                        rs.getTimestamp("timestamp").getTime(),
+                        rs.getBoolean("is_read"),
+                        rs.getString("message"),
+                        attachmentId != null
+                                ? new Attachment(attachmentId, rs.getString("attachment_name"), rs.getLong("attachment_size"))
+                                : null));
+            }
+        }
+        return batch;
+    }
 
-            java.util.Collections.reverse(messages);
+    /**
+     * Delete the rows of an archive segment: its id range, no newer than its newest message.
+     * Stored timestamps can be finer than milliseconds, so the bound is the next millisecond.
+     * @return the number of deleted rows
+     */
+    public int deleteArchived(int minId, int maxId, long maxTimestamp) throws SQLException {
+        String sql = "DELETE FROM messages WHERE id BETWEEN ? AND ? AND timestamp < ?";
 
+        try (Connection conn = dbManager.getBulkConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+
+            pstmt.setInt(1, minId);
+            pstmt.setInt(2, maxId);
+            pstmt.setTimestamp(3, new Timestamp(maxTimestamp + 1));
+            return pstmt.executeUpdate();
+        }
+    }
+
+    /**
+     * Turn archived rows into protocol messages, looking up sender and receiver emails
+     */
+    private List<Message> fromArchive(List<ArchivedMessage> rows) {
+        List<Message> messages = new ArrayList<>();
+        if (rows.isEmpty()) {
+            return messages;
+        }
+        Set<Integer> userIds = new HashSet<>();
+        for (ArchivedMessage row : rows) {
+            userIds.add(row.senderId);
+            if (row.receiverId > 0) {
+                userIds.add(row.receiverId);
+            }
+        }
+        Map<Integer, String[]> users = getUserNames(userIds);
+
+        for (ArchivedMessage row : rows) {
+            String[] sender = users.getOrDefault(row.senderId, new String[2]);
+            String[] receiver = row.receiverId > 0 ? users.getOrDefault(row.receiverId, new String[2]) : null;
+            Message msg = new Message();
+            msg.setId(row.id);
+            msg.setType(receiver == null ? "message" : "private_message");
+            msg.setSender(sender[0]);
+            msg.setUsername(sender[1]);
+            msg.setReceiver(receiver != null ? receiver[0] : null);
+            msg.setContent(row.content);
+            msg.setTimestamp(row.timestamp);
+            msg.setConversation(row.conversation);
+            msg.setSeq(row.seq);
+            msg.setAttachment(row.attachment);
+            messages.add(msg);
+        }
+        return messages;
+    }
+
+    /**
+     * Get email and username by user id
+     */
+    private Map<Integer, String[]> getUserNames(Set<Integer> userIds) {
+        Map<Integer, String[]> users = new HashMap<>();
+        String placeholders = String.join(",", Collections.nCopies(userIds.size(), "?"));
+        String sql = "SELECT id, email, username FROM users WHERE id IN (" + placeholders + ")";
+
+        try (Connection conn = dbManager.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+
+            int index = 1;
+            for (Integer id : userIds) {
+                pstmt.setInt(index++, id);
+            }
+            ResultSet rs = pstmt.executeQuery();
+            while (rs.next()) {
+                users.put(rs.getInt("id"), new String[] { rs.getString("email"), rs.getString("username") });
+            }
         } catch (SQLException e) {
             e.printStackTrace();
         }
-        return messages;
+        return users;
+    }
+
+    /**
+     * Let users read and share an attachment; {@link #ALL_USERS} grants it to everyone.
+     * Granting again is harmless.
+     */
+    public void grantAttachment(String attachmentId, int... userIds) throws SQLException {
+        String sql = "INSERT IGNORE INTO attachment_grants (attachment_id, user_id) VALUES (?, ?)";
+
+        try (Connection conn = dbManager.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+
+            for (int userId : userIds) {
+                pstmt.setString(1, attachmentId);
+                pstmt.setInt(2, userId);
+                pstmt.addBatch();
+            }
+            pstmt.executeBatch();
+        }
+    }
+
+    /**
+     * Check whether a user may read or share an attachment: they uploaded it, or it was sent to
+     * them or to everyone. False if the database cannot be read.
+     */
+    public boolean canReadAttachment(String attachmentId, int userId) {
+        String sql = "SELECT 1 FROM attachment_grants WHERE attachment_id = ? AND user_id IN (?, ?)";
+
+        try (Connection conn = dbManager.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+
+            pstmt.setString(1, attachmentId);
+            pstmt.setInt(2, userId);
+            pstmt.setInt(3, ALL_USERS);
+            ResultSet rs = pstmt.executeQuery();
+            return rs.next();
+        } catch (SQLException e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    /**
+     * Write coalesced reaction changes in one transaction.
+     * Both directions are idempotent, so a batch may safely be written again after a failure.
+     */
+    public void saveReactions(Collection<Reaction> added, Collection<Reaction> removed) throws SQLException {
+        String insert = "INSERT IGNORE INTO reactions (message_id, emoji, user_id) VALUES (?, ?, ?)";
+        String delete = "DELETE FROM reactions WHERE message_id = ? AND emoji = ? AND user_id = ?";
+
+        try (Connection conn = dbManager.getConnection()) {
+            conn.setAutoCommit(false);
+            try (PreparedStatement insertStmt = conn.prepareStatement(insert);
+                 PreparedStatement deleteStmt = conn.prepareStatement(delete)) {
+                addReactionBatch(insertStmt, added);
+                addReactionBatch(deleteStmt, removed);
+                conn.commit();
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            }
+        }
+    }
+
+    private static void addReactionBatch(PreparedStatement pstmt, Collection<Reaction> reactions) throws SQLException {
+        if (reactions.isEmpty()) {
+            return;
+        }
+        for (Reaction reaction : reactions) {
+            pstmt.setInt(1, reaction.getMessageId());
+            pstmt.setString(2, reaction.getEmoji());
+            pstmt.setInt(3, reaction.getUserId());
+            pstmt.addBatch();
+        }
+        pstmt.executeBatch();
+    }
+
+    /**
+     * Get all reactions to one message
+     */
+    public List<Reaction> getReactions(int messageId) throws SQLException {
+        String sql = "SELECT emoji, user_id FROM reactions WHERE message_id = ?";
+        List<Reaction> reactions = new ArrayList<>();
+
+        try (Connection conn = dbManager.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+
+            pstmt.setInt(1, messageId);
+            ResultSet rs = pstmt.executeQuery();
+            while (rs.next()) {
+                reactions.add(new Reaction(messageId, rs.getInt("user_id"), rs.getString("emoji")));
+            }
+        }
+        return reactions;
+    }
+
+    /**
+     * Get reaction counts (message id -> emoji -> users) of the given messages; messages without reactions are left out
+     */
+    public Map<Integer, Map<String, Integer>> getReactionCounts(List<Integer> messageIds) {
+        Map<Integer, Map<String, Integer>> counts = new HashMap<>();
+        if (messageIds.isEmpty()) {
+            return counts;
+        }
+        String placeholders = String.join(",", Collections.nCopies(messageIds.size(), "?"));
+        String sql = "SELECT message_id, emoji, COUNT(*) AS users FROM reactions " +
+                "WHERE message_id IN (" + placeholders + ") GROUP BY message_id, emoji";
+
+        try (Connection conn = dbManager.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+
+            for (int i = 0; i < messageIds.size(); i++) {
+                pstmt.setInt(i + 1, messageIds.get(i));
+            }
+            ResultSet rs = pstmt.executeQuery();
+            while (rs.next()) {
+                counts.computeIfAbsent(rs.getInt("message_id"), id -> new HashMap<>())
+                        .put(rs.getString("emoji"), rs.getInt("users"));
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        return counts;
     }
 
     /**
      * Mark messages as read
      */
-    public boolean markAsRead(String receiver, String sender) {
-        String sql = "UPDATE messages SET is_read = TRUE WHERE receiver = ? AND sender = ?";
+    public boolean markAsRead(int receiverId, int senderId) {
+        String sql = "UPDATE messages SET is_read = TRUE WHERE receiver_id = ? AND sender_id = ?";
 
         try (Connection conn = dbManager.getConnection();
              PreparedStatement pstmt = conn.prepareStatement(sql)) {
 
-            pstmt.setString(1, receiver);
-            pstmt.setString(2, sender);
+            pstmt.setInt(1, receiverId);
+            pstmt.setInt(2, senderId);
 
             return pstmt.executeUpdate() > 0;
 
@@ -144,4 +769,28 @@ public class MessageRepository {
             return false;
         }
     }
+
+    /**
+     * Map a row selected with SELECT_MESSAGES
+     */
+    private static Message readMessage(ResultSet rs) throws SQLException {
+        Message msg = new Message();
+        msg.setId(rs.getInt("id"));
+        msg.setSender(rs.getString("sender"));
+        msg.setReceiver(rs.getString("receiver"));
+        msg.setType(msg.getReceiver() == null ? "message" : "private_message");
+        msg.setUsername(rs.getString("username"));
+        msg.setContent(rs.getString("message"));
+        msg.setTimestamp(rs.getTimestamp("timestamp").getTime());
+        msg.setConversation(rs.getString("conversation"));
+        long seq = rs.getLong("seq");
+        if (!rs.wasNull()) {
+            msg.setSeq(seq);
+        }
+        String attachmentId = rs.getString("attachment_id");
+        if (attachmentId != null) {
+            msg.setAttachment(new Attachment(attachmentId, rs.getString("attachment_name"), rs.getLong("attachment_size")));
+        }
+        return msg;
+    }
 }
@@ -0,0 +1,277 @@
+package com.chatapp.database;
+
+import com.chatapp.model.Attachment;
+import com.chatapp.server.ServerConfig;
+import com.chatapp.server.ServerMetrics;
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.IntConsumer;
+
+/**
+ * Writes that could not reach the database, kept in a local file until they can be replayed.
+ *
+ * Each write is one JSON line. While any are pending, new writes are appended here too, so
+ * the database sees all writes in their original order. Replay reads batches from a read offset,
+ * kept in a small file next to the log, and moves the offset past each batch once the database
+ * has committed it, or past the records committed so far when a batch goes in one record at a
+ * time and fails part way; a crash in between replays that batch again. The log is emptied once
+ * everything has been replayed. Records survive restarts, and the server replays them before
+ * it starts serving.
+ */
+public class SpillLog {
+    private static SpillLog instance;
+    private static final Gson GSON = new Gson();
+
+    private final Path file;
+    private final Path offsetFile;
+    private final Object replayLock = new Object();
+    private final ServerMetrics metrics = ServerMetrics.getInstance();
+    private int pending; // guarded by this
+    private long offset; // of the first record not yet replayed, guarded by this
+
+    /**
+     * One spilled write: a message ("message") or a presence change ("status")
+     */
+    static final class Record {
+        String op;
+        int senderId;
+        int receiverId;
+        String content;
+        long seq;
+        long timestamp;
+        Attachment attachment;
+        int[] userIds;
+        String status;
+    }
+
+    /**
+     * Writes one batch of records to the database. A writer that commits records one at a time
+     * reports how many of the batch are committed so far, so a failure part way does not replay them again.
+     */
+    interface BatchWriter {
+        void write(List<Record> batch, IntConsumer committed) throws SQLException;
+    }
+
+    /**
+     * Records read from the read offset, and the offset just after each of them
+     */
+    private static final class Head {
+        final List<Record> records = new ArrayList<>();
+        final List<Long> ends = new ArrayList<>();
+    }
+
+    private SpillLog(Path file) {
+        this.file = file;
+        this.offsetFile = file.resolveSibling(file.getFileName() + ".offset");
+        this.offset = readOffset();
+        this.pending = countRecords();
+        if (pending > 0) {
+            System.out.println("💾 " + pending + " spilled database writes waiting in " + file);
+        }
+        metrics.gauge("db.spill.pending", this::pending);
+    }
+
+    public static synchronized SpillLog getInstance() {
+        if (instance == null) {
+            instance = new SpillLog(Paths.get(ServerConfig.getInstance().getString("db.spillFile", "spill/db-spill.jsonl")));
+        }
+        return instance;
+    }
+
+    public synchronized int pending() {
+        return pending;
+    }
+
+    /**
+     * Spill a message that could not be saved
+     * @return false if it could not be written to the file either, i.e. it is lost
+     */
+    boolean appendMessage(int senderId, int receiverId, String content, long seq, Attachment attachment, long timestamp) {
+        Record record = new Record();
+        record.op = "message";
+        record.senderId = senderId;
+        record.receiverId = receiverId;
+        record.content = content;
+        record.seq = seq;
+        record.attachment = attachment;
+        record.timestamp = timestamp;
+        return append(record);
+    }
+
+    /**
+     * Spill a status change of one or more users that could not be saved
+     * @return false if it could not be written to the file either, i.e. it is lost
+     */
+    public boolean appendStatus(int[] userIds, String status) {
+        Record record = new Record();
+        record.op = "status";
+        record.userIds = userIds;
+        record.status = status;
+        return append(record);
+    }
+
+    private synchronized boolean append(Record record) {
+        try {
+            if (file.getParent() != null) {
+                Files.createDirectories(file.getParent());
+            }
+            Files.writeString(file, GSON.toJson(record) + "\n", StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            pending++;
+            metrics.increment("db.spill.appended");
+            return true;
+        } catch (IOException e) {
+            System.err.println("❌ Could not spill a database write to " + file + ": " + e.getMessage());
+            metrics.increment("db.spill.lost");
+            return false;
+        }
+    }
+
+    /**
+     * Replay pending records in batches of up to batchSize, oldest first, until none are left
+     * or a batch fails
+     * @return the number of records replayed
+     * @throws SQLException from the failed batch; its records stay pending
+     */
+    int replay(int batchSize, BatchWriter writer) throws SQLException {
+        synchronized (replayLock) {
+            int replayed = 0;
+            Head head;
+            while (!(head = head(batchSize)).records.isEmpty()) {
+                int[] committed = new int[1];
+                try {
+                    writer.write(head.records, count -> committed[0] = count);
+                    committed[0] = head.records.size();
+                } finally {
+                    if (committed[0] > 0) {
+                        advance(committed[0], head.ends.get(committed[0] - 1));
+                        replayed += committed[0];
+                        metrics.add("db.spill.replayed", committed[0]);
+                    }
+                }
+            }
+            return replayed;
+        }
+    }
+
+    private synchronized Head head(int max) throws SQLException {
+        Head head = new Head();
+        if (pending == 0) {
+            return head;
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            channel.position(offset);
+            InputStream in = new BufferedInputStream(Channels.newInputStream(channel));
+            ByteArrayOutputStream line = new ByteArrayOutputStream();
+            long end = offset;
+            while (head.records.size() < max && readLine(in, line)) {
+                end += line.size() + 1;
+                head.ends.add(end);
+                head.records.add(parse(line.toString(StandardCharsets.UTF_8)));
+            }
+        } catch (IOException e) {
+            throw new SQLException("Could not read spilled writes from " + file, e);
+        }
+        return head;
+    }
+
+    /**
+     * Read one line (without its newline) into line
+     * @return false at the end of the file
+     */
+    private static boolean readLine(InputStream in, ByteArrayOutputStream line) throws IOException {
+        line.reset();
+        int b;
+        while ((b = in.read()) != -1 && b != '\n') {
+            line.write(b);
+        }
+        return b != -1 || line.size() > 0;
+    }
+
+    /**
+     * Move the read offset past count replayed records ending at end; once nothing is left
+     * (including anything appended meanwhile) the log is emptied
+     */
+    private synchronized void advance(int count, long end) throws SQLException {
+        try {
+            pending -= count;
+            offset = end;
+            if (pending <= 0) {
+                pending = 0;
+                offset = 0;
+                Files.deleteIfExists(file);
+                Files.deleteIfExists(offsetFile);
+                return;
+            }
+            Path tmp = offsetFile.resolveSibling(offsetFile.getFileName() + ".tmp");
+            Files.writeString(tmp, Long.toString(offset), StandardCharsets.UTF_8);
+            Files.move(tmp, offsetFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new SQLException("Could not update the read offset of spilled writes in " + offsetFile, e);
+        }
+    }
+
+    private long readOffset() {
+        try {
+            if (Files.exists(offsetFile) && Files.exists(file)) {
+                long saved = Long.parseLong(Files.readString(offsetFile, StandardCharsets.UTF_8).trim());
+                if (saved >= 0 && saved <= Files.size(file)) {
+                    return saved;
+                }
+            }
+        } catch (IOException | NumberFormatException e) {
+            System.err.println("❌ Could not read " + offsetFile + ", replaying spilled writes from the start: " + e.getMessage());
+        }
+        return 0;
+    }
+
+    private Record parse(String line) {
+        try {
+            Record record = GSON.fromJson(line, Record.class);
+            if (record != null && record.op != null) {
+                return record;
+            }
+        } catch (JsonParseException e) {
+            // torn line from a crash while appending
+        }
+        System.err.println("❌ Skipping unreadable spilled write: " + line);
+        Record skipped = new Record();
+        skipped.op = "skip";
+        return skipped;
+    }
+
+    private int countRecords() {
+        if (!Files.exists(file)) {
+            return 0;
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            channel.position(offset);
+            InputStream in = new BufferedInputStream(Channels.newInputStream(channel));
+            ByteArrayOutputStream line = new ByteArrayOutputStream();
+            int count = 0;
+            while (readLine(in, line)) {
+                count++;
+            }
+            return count;
+        } catch (IOException e) {
+            System.err.println("❌ Could not read spilled writes from " + file + ": " + e.getMessage());
+            return 0;
+        }
+    }
+}
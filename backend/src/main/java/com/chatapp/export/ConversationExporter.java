@@ -0,0 +1,88 @@
+package com.chatapp.export;
+
+import com.chatapp.database.MessageRepository;
+import com.chatapp.server.ServerConfig;
+import com.chatapp.server.TokenBucket;
+import com.google.gson.Gson;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Exports a whole conversation as JSON Lines, one message per line in seq order.
+ *
+ * Rows are streamed from the database cursor straight into the output, so memory use does not
+ * depend on the size of the conversation. The export is throttled to export.rowsPerSecond so it
+ * can run next to live traffic without starving it of database time.
+ */
+public class ConversationExporter {
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final MessageRepository messageRepository;
+    private final TokenBucket throttle; // null when unthrottled
+    private final Gson gson = new Gson();
+
+    public ConversationExporter(MessageRepository messageRepository) {
+        this(messageRepository, ServerConfig.getInstance().getInt("export.rowsPerSecond", 5000));
+    }
+
+    /**
+     * @param rowsPerSecond  export rate limit, 0 for unthrottled
+     */
+    public ConversationExporter(MessageRepository messageRepository, int rowsPerSecond) {
+        this.messageRepository = messageRepository;
+        // A tenth of a second of burst keeps the sleeps coarse without letting the export spike
+        this.throttle = rowsPerSecond > 0 ? new TokenBucket(Math.max(1, rowsPerSecond / 10), rowsPerSecond) : null;
+    }
+
+    /**
+     * Export to a file, gzip-compressed if the file name ends in ".gz"
+     * @return the number of exported messages
+     */
+    public long export(String conversation, Path file) throws IOException, SQLException {
+        boolean gzip = file.getFileName().toString().endsWith(".gz");
+        try (OutputStream out = Files.newOutputStream(file)) {
+            return export(conversation, out, gzip);
+        }
+    }
+
+    /**
+     * Export to a stream; the stream is flushed but not closed
+     * @return the number of exported messages
+     */
+    public long export(String conversation, OutputStream out, boolean gzip) throws IOException, SQLException {
+        GZIPOutputStream compressed = gzip ? new GZIPOutputStream(out, BUFFER_SIZE) : null;
+        Writer writer = new BufferedWriter(new OutputStreamWriter(
+                gzip ? compressed : new BufferedOutputStream(out, BUFFER_SIZE), StandardCharsets.UTF_8), BUFFER_SIZE);
+
+        long count = messageRepository.streamConversation(conversation, message -> {
+            if (throttle != null) {
+                try {
+                    throttle.acquire(1);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Export interrupted");
+                }
+            }
+            gson.toJson(message, writer);
+            writer.write('\n');
+        });
+
+        writer.flush();
+        if (compressed != null) {
+            compressed.finish();
+        }
+        out.flush();
+        return count;
+    }
+}
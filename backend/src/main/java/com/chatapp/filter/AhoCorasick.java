@@ -0,0 +1,178 @@
+package com.chatapp.filter;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * Aho-Corasick automaton over a fixed set of terms, matching all of them in one pass over the text.
+ *
+ * Terms and text are compared case-insensitively (per char). Chars are first mapped to a small
+ * alphabet of the chars that occur in some term, everything else being class 0, and the goto and
+ * failure functions are folded into a complete transition table: one int array indexed by
+ * state * alphabet + class. Scanning is then a table lookup per char with no branches on failure.
+ * Instances are immutable and safe to share between threads.
+ */
+public final class AhoCorasick {
+    private static final AhoCorasick EMPTY = new AhoCorasick(new String[0]);
+
+    private final char[] charClass; // folded char -> class, 0 for chars in no term
+    private final int alphabet;
+    private final int[] transitions;
+    private final int[] matchLength; // length of the longest term ending in each state, 0 if none
+    private final int terms;
+
+    private AhoCorasick(String[] patterns) {
+        char[] classes = new char[Character.MAX_VALUE + 1];
+        int classCount = 1;
+        for (String pattern : patterns) {
+            for (int i = 0; i < pattern.length(); i++) {
+                char c = pattern.charAt(i);
+                if (classes[c] == 0) {
+                    if (classCount > Character.MAX_VALUE) {
+                        throw new IllegalArgumentException("Too many distinct characters in the terms");
+                    }
+                    classes[c] = (char) classCount++;
+                }
+            }
+        }
+        this.charClass = classes;
+        this.alphabet = classCount;
+
+        // Trie: -1 marks a missing edge until the failure pass fills it in
+        int capacity = 64;
+        int[] next = new int[capacity * alphabet];
+        int[] length = new int[capacity];
+        Arrays.fill(next, -1);
+        int states = 1;
+        for (String pattern : patterns) {
+            int state = 0;
+            for (int i = 0; i < pattern.length(); i++) {
+                int index = state * alphabet + classes[pattern.charAt(i)];
+                if (next[index] < 0) {
+                    if (states == capacity) {
+                        capacity *= 2;
+                        int oldSize = next.length;
+                        next = Arrays.copyOf(next, capacity * alphabet);
+                        Arrays.fill(next, oldSize, next.length, -1);
+                        length = Arrays.copyOf(length, capacity);
+                    }
+                    next[index] = states++;
+                }
+                state = next[index];
+            }
+            length[state] = Math.max(length[state], pattern.length());
+        }
+
+        // Breadth-first: a state's failure target is always shallower, so it is complete already
+        int[] fail = new int[states];
+        int[] queue = new int[states];
+        int head = 0;
+        int tail = 0;
+        for (int c = 0; c < alphabet; c++) {
+            int child = next[c];
+            if (child < 0) {
+                next[c] = 0;
+            } else {
+                fail[child] = 0;
+                queue[tail++] = child;
+            }
+        }
+        while (head < tail) {
+            int state = queue[head++];
+            length[state] = Math.max(length[state], length[fail[state]]);
+            for (int c = 0; c < alphabet; c++) {
+                int index = state * alphabet + c;
+                int fallback = next[fail[state] * alphabet + c];
+                if (next[index] < 0) {
+                    next[index] = fallback;
+                } else {
+                    fail[next[index]] = fallback;
+                    queue[tail++] = next[index];
+                }
+            }
+        }
+
+        this.transitions = Arrays.copyOf(next, states * alphabet);
+        this.matchLength = Arrays.copyOf(length, states);
+        this.terms = patterns.length;
+    }
+
+    /**
+     * Compile an automaton; blank terms are ignored
+     */
+    public static AhoCorasick compile(Collection<String> terms) {
+        String[] patterns = terms.stream()
+                .map(String::trim)
+                .filter(term -> !term.isEmpty())
+                .map(AhoCorasick::fold)
+                .distinct()
+                .toArray(String[]::new);
+        return patterns.length == 0 ? EMPTY : new AhoCorasick(patterns);
+    }
+
+    public static AhoCorasick empty() {
+        return EMPTY;
+    }
+
+    /**
+     * Check whether the text contains any term
+     */
+    public boolean matches(CharSequence text) {
+        if (terms == 0) {
+            return false;
+        }
+        int state = 0;
+        for (int i = 0; i < text.length(); i++) {
+            state = transitions[state * alphabet + charClass[Character.toLowerCase(text.charAt(i))]];
+            if (matchLength[state] > 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Replace every char of every occurrence of a term with the mask char
+     *
+     * @return the masked text, or the same instance if nothing matched
+     */
+    public String mask(String text, char maskChar) {
+        if (terms == 0) {
+            return text;
+        }
+        char[] masked = null;
+        int maskedUpTo = 0; // chars before this index are already masked
+        int state = 0;
+        for (int i = 0; i < text.length(); i++) {
+            state = transitions[state * alphabet + charClass[Character.toLowerCase(text.charAt(i))]];
+            int length = matchLength[state];
+            if (length > 0) {
+                if (masked == null) {
+                    masked = text.toCharArray();
+                }
+                // Shorter terms ending here lie inside the longest one
+                for (int j = Math.max(i - length + 1, maskedUpTo); j <= i; j++) {
+                    masked[j] = maskChar;
+                }
+                maskedUpTo = i + 1;
+            }
+        }
+        return masked == null ? text : new String(masked);
+    }
+
+    public int getTermCount() {
+        return terms;
+    }
+
+    public int getStateCount() {
+        return matchLength.length;
+    }
+
+    private static String fold(String term) {
+        char[] chars = term.toCharArray();
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = Character.toLowerCase(chars[i]);
+        }
+        return new String(chars);
+    }
+}
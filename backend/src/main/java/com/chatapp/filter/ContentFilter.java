@@ -0,0 +1,100 @@
+package com.chatapp.filter;
+
+import com.chatapp.server.ServerMetrics;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Banned-term filter for chat messages, backed by an {@link AhoCorasick} automaton compiled
+ * from a term list file (one term per line, '#' starts a comment line).
+ *
+ * {@link #reloadIfChanged()} recompiles the automaton when the file's modification time changes
+ * and swaps it in atomically: messages being filtered finish with the automaton they started
+ * with, and nothing waits for the compile.
+ */
+public class ContentFilter {
+    public enum Mode { MASK, BLOCK }
+
+    private static final char MASK_CHAR = '*';
+
+    private final Path termsFile;
+    private final Mode mode;
+    private final AtomicReference<AhoCorasick> automaton = new AtomicReference<>(AhoCorasick.empty());
+    private final ServerMetrics metrics = ServerMetrics.getInstance();
+    private volatile FileTime loadedModified;
+    private volatile boolean loaded = false;
+
+    public ContentFilter(Path termsFile, Mode mode) {
+        this.termsFile = termsFile;
+        this.mode = mode;
+        metrics.gauge("filter.terms", () -> automaton.get().getTermCount());
+    }
+
+    /**
+     * Filter a message text
+     *
+     * @return the text to deliver (masked in MASK mode), or null if BLOCK mode rejects it
+     */
+    public String apply(String text) {
+        if (text == null) {
+            return null;
+        }
+        AhoCorasick current = automaton.get();
+        if (mode == Mode.BLOCK) {
+            if (current.matches(text)) {
+                metrics.increment("filter.blocked");
+                return null;
+            }
+            return text;
+        }
+        String masked = current.mask(text, MASK_CHAR);
+        if (masked != text) {
+            metrics.increment("filter.masked");
+        }
+        return masked;
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    /**
+     * Recompile the automaton if the term list changed since the last load.
+     * A missing file means no banned terms; an unreadable one keeps the current automaton.
+     */
+    public void reloadIfChanged() {
+        try {
+            FileTime modified = Files.exists(termsFile) ? Files.getLastModifiedTime(termsFile) : null;
+            if (loaded && Objects.equals(modified, loadedModified)) {
+                return;
+            }
+
+            long start = System.nanoTime();
+            List<String> terms = new ArrayList<>();
+            if (modified != null) {
+                for (String line : Files.readAllLines(termsFile, StandardCharsets.UTF_8)) {
+                    if (!line.isBlank() && !line.trim().startsWith("#")) {
+                        terms.add(line);
+                    }
+                }
+            }
+            AhoCorasick compiled = AhoCorasick.compile(terms);
+            automaton.set(compiled);
+            loadedModified = modified;
+            loaded = true;
+            System.out.println("🚫 Content filter loaded: " + compiled.getTermCount() + " terms, "
+                    + compiled.getStateCount() + " states (" + (System.nanoTime() - start) / 1_000_000 + " ms)");
+        } catch (IOException | IllegalArgumentException e) {
+            metrics.increment("filter.reloadFailures");
+            System.err.println("❌ Could not load banned terms from " + termsFile + ": " + e.getMessage());
+        }
+    }
+}
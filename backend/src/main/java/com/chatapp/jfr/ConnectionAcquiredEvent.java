@@ -0,0 +1,21 @@
+package com.chatapp.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name("com.chatapp.ConnectionAcquired")
+@Label("Database Connection Acquired")
+@Category({ "Chat", "Database" })
+@Description("Time taken to obtain a JDBC connection")
+@StackTrace(false)
+public class ConnectionAcquiredEvent extends Event {
+    @Label("Frame Id")
+    public long frameId;
+
+    @Label("Success")
+    public boolean success;
+}
@@ -0,0 +1,25 @@
+package com.chatapp.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name("com.chatapp.FanOut")
+@Label("Fan-out")
+@Category({ "Chat", "Delivery" })
+@Description("A frame handed to the sessions it is delivered to, from the first to the last recipient")
+@StackTrace(false)
+public class FanOutEvent extends Event {
+    @Label("Frame Id")
+    public long frameId;
+
+    @Label("Target")
+    @Description("broadcast, or user for the sessions of one user")
+    public String target;
+
+    @Label("Recipients")
+    public int recipients;
+}
@@ -0,0 +1,34 @@
+package com.chatapp.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+@Name("com.chatapp.FrameReceived")
+@Label("Frame Received")
+@Category({ "Chat", "Protocol" })
+@Description("A frame read from a client, from decoding until it has been handled")
+@StackTrace(false)
+public class FrameReceivedEvent extends Event {
+    @Label("Frame Id")
+    public long frameId;
+
+    @Label("Type")
+    public String type;
+
+    @Label("Length")
+    @DataAmount
+    public int length;
+
+    @Label("User Id")
+    public int userId;
+
+    @Label("Decode Time")
+    @Timespan(Timespan.NANOSECONDS)
+    public long decodeNanos;
+}
@@ -0,0 +1,37 @@
+package com.chatapp.jfr;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Correlation id of the frame the current thread is handling. A client's frames are handled
+ * start to finish on its connection thread, so every event recorded while handling a frame
+ * (persist, fan-out, login, database connections) carries the same frame id.
+ */
+public final class FrameTrace {
+    private static final AtomicLong NEXT_ID = new AtomicLong();
+    private static final ThreadLocal<long[]> CURRENT = ThreadLocal.withInitial(() -> new long[1]);
+
+    private FrameTrace() {
+    }
+
+    /**
+     * Start handling a new frame on this thread
+     * @return its id
+     */
+    public static long begin() {
+        long id = NEXT_ID.incrementAndGet();
+        CURRENT.get()[0] = id;
+        return id;
+    }
+
+    /**
+     * Get the id of the frame being handled, 0 outside of frame handling
+     */
+    public static long current() {
+        return CURRENT.get()[0];
+    }
+
+    public static void end() {
+        CURRENT.get()[0] = 0;
+    }
+}
@@ -0,0 +1,22 @@
+package com.chatapp.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name("com.chatapp.Login")
+@Label("Login")
+@Category({ "Chat", "Authentication" })
+@StackTrace(false)
+public class LoginEvent extends Event {
+    @Label("Frame Id")
+    public long frameId;
+
+    @Label("User Id")
+    public int userId;
+
+    @Label("Success")
+    public boolean success;
+}
@@ -0,0 +1,28 @@
+package com.chatapp.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name("com.chatapp.MessagePersisted")
+@Label("Message Persisted")
+@Category({ "Chat", "Database" })
+@Description("A chat message inserted into the messages table")
+@StackTrace(false)
+public class MessagePersistedEvent extends Event {
+    @Label("Frame Id")
+    public long frameId;
+
+    @Label("Message Id")
+    @Description("Database id of the message, -1 if the insert failed")
+    public int messageId;
+
+    @Label("Conversation")
+    public String conversation;
+
+    @Label("Sequence Number")
+    public long seq;
+}
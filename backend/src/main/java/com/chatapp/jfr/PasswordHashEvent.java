@@ -0,0 +1,22 @@
+package com.chatapp.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name("com.chatapp.PasswordHash")
+@Label("BCrypt")
+@Category({ "Chat", "Authentication" })
+@Description("Hashing a new password or checking one against its stored hash")
+@StackTrace(false)
+public class PasswordHashEvent extends Event {
+    @Label("Frame Id")
+    public long frameId;
+
+    @Label("Operation")
+    @Description("hash or check")
+    public String operation;
+}
@@ -0,0 +1,45 @@
+package com.chatapp.model;
+
+/**
+ * Reference to a file in the attachment store. Messages only carry this reference;
+ * the bytes are moved over the separate transfer port.
+ */
+public class Attachment {
+    private String id; // SHA-256 of the content, hex encoded
+    private String name;
+    private long size;
+
+    public Attachment() {
+    }
+
+    public Attachment(String id, String name, long size) {
+        this.id = id;
+        this.name = name;
+        this.size = size;
+    }
+
+    // Getters and Setters
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public void setSize(long size) {
+        this.size = size;
+    }
+}
@@ -0,0 +1,69 @@
+package com.chatapp.model;
+
+/**
+ * Helpers for naming conversations.
+ * Public chat is a single conversation; every pair of users has its own private conversation,
+ * keyed by the two user ids ("dm:&lt;lower id&gt;:&lt;higher id&gt;").
+ */
+public final class Conversation {
+    public static final String PUBLIC = "public";
+    private static final String PRIVATE_PREFIX = "dm:";
+
+    private Conversation() {
+    }
+
+    /**
+     * Get the conversation key for a message (receiverId is 0 for public messages)
+     */
+    public static String of(int senderId, int receiverId) {
+        if (receiverId <= 0) {
+            return PUBLIC;
+        }
+        return privateKey(senderId, receiverId);
+    }
+
+    /**
+     * Get the key of the private conversation between two users, independent of direction
+     */
+    public static String privateKey(int user1, int user2) {
+        return PRIVATE_PREFIX + Math.min(user1, user2) + ":" + Math.max(user1, user2);
+    }
+
+    public static boolean isPublic(String key) {
+        return PUBLIC.equals(key);
+    }
+
+    /**
+     * Get the two user ids of a private conversation key, or null for public or malformed keys
+     */
+    public static int[] participants(String key) {
+        if (key == null || !key.startsWith(PRIVATE_PREFIX)) {
+            return null;
+        }
+        int separator = key.indexOf(':', PRIVATE_PREFIX.length());
+        if (separator < 0) {
+            return null;
+        }
+        try {
+            return new int[] {
+                    Integer.parseInt(key.substring(PRIVATE_PREFIX.length(), separator)),
+                    Integer.parseInt(key.substring(separator + 1))
+            };
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Check whether a user may see the messages of a conversation.
+     * Private keys must be in canonical form, as made by {@link #privateKey}.
+     */
+    public static boolean isParticipant(String key, int userId) {
+        if (isPublic(key)) {
+            return true;
+        }
+        int[] users = participants(key);
+        return users != null && (users[0] == userId || users[1] == userId)
+                && key.equals(privateKey(users[0], users[1]));
+    }
+}
@@ -2,13 +2,23 @@ package com.chatapp.model;
 
 import com.google.gson.Gson;
 
+import java.util.Map;
+
 public class Message {
+    private static final Gson GSON = new Gson(); // thread-safe, and costly to create per frame
+
+    private Integer id; // database id, null until the message has been saved
     private String type; // "message", "login", "register", "user_list", "status", "private_message", "typing"
     private String sender;
     private String receiver; // null for public messages
     private String content;
     private long timestamp;
     private String username;
+    private String conversation; // "public" or the private conversation key, see Conversation
+    private Long seq; // server-assigned sequence number within the conversation
+    private String clientMsgId; // optional id chosen by the client to make resends idempotent
+    private Attachment attachment; // optional file reference, the bytes go over the transfer port
+    private Map<String, Integer> reactions; // emoji -> number of users, null if the message has none
 
     public Message() {
         this.timestamp = System.currentTimeMillis();
@@ -30,6 +40,14 @@ public class Message {
     }
 
     // Getters and Setters
+    public Integer getId() {
+        return id;
+    }
+
+    public void setId(Integer id) {
+        this.id = id;
+    }
+
     public String getType() {
         return type;
     }
@@ -78,27 +96,69 @@ public class Message {
         this.username = username;
     }
 
+    public String getConversation() {
+        return conversation;
+    }
+
+    public void setConversation(String conversation) {
+        this.conversation = conversation;
+    }
+
+    public Long getSeq() {
+        return seq;
+    }
+
+    public void setSeq(Long seq) {
+        this.seq = seq;
+    }
+
+    public String getClientMsgId() {
+        return clientMsgId;
+    }
+
+    public void setClientMsgId(String clientMsgId) {
+        this.clientMsgId = clientMsgId;
+    }
+
+    public Attachment getAttachment() {
+        return attachment;
+    }
+
+    public void setAttachment(Attachment attachment) {
+        this.attachment = attachment;
+    }
+
+    public Map<String, Integer> getReactions() {
+        return reactions;
+    }
+
+    public void setReactions(Map<String, Integer> reactions) {
+        this.reactions = reactions;
+    }
+
     // Convert to JSON
     public String toJson() {
-        Gson gson = new Gson();
-        return gson.toJson(this);
+        return GSON.toJson(this);
     }
 
     // Create from JSON
     public static Message fromJson(String json) {
-        Gson gson = new Gson();
-        return gson.fromJson(json, Message.class);
+        return GSON.fromJson(json, Message.class);
     }
 
     @Override
     public String toString() {
         return "Message{" +
-                "type='" + type + '\'' +
+                "id=" + id +
+                ", type='" + type + '\'' +
                 ", sender='" + sender + '\'' +
                 ", receiver='" + receiver + '\'' +
                 ", content='" + content + '\'' +
                 ", timestamp=" + timestamp +
                 ", username='" + username + '\'' +
+                ", conversation='" + conversation + '\'' +
+                ", seq=" + seq +
+                ", clientMsgId='" + clientMsgId + '\'' +
                 '}';
     }
 }
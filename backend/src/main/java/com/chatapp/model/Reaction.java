@@ -0,0 +1,47 @@
+package com.chatapp.model;
+
+import java.util.Objects;
+
+/**
+ * One user's reaction with one emoji to one message
+ */
+public final class Reaction {
+    private final int messageId;
+    private final int userId;
+    private final String emoji;
+
+    public Reaction(int messageId, int userId, String emoji) {
+        this.messageId = messageId;
+        this.userId = userId;
+        this.emoji = emoji;
+    }
+
+    public int getMessageId() {
+        return messageId;
+    }
+
+    public int getUserId() {
+        return userId;
+    }
+
+    public String getEmoji() {
+        return emoji;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof Reaction)) {
+            return false;
+        }
+        Reaction other = (Reaction) o;
+        return messageId == other.messageId && userId == other.userId && emoji.equals(other.emoji);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(messageId, userId, emoji);
+    }
+}
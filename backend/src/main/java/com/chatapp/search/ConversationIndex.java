@@ -0,0 +1,159 @@
+package com.chatapp.search;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * Inverted index of a single conversation: term -> posting list of message ids,
+ * plus the timestamp of every indexed message for time filtering.
+ */
+class ConversationIndex {
+    private final String key;
+    private final NavigableMap<String, PostingList> postings = new TreeMap<>();
+    private int[] ids = new int[16];
+    private long[] timestamps = new long[16];
+    private int size;
+
+    ConversationIndex(String key) {
+        this.key = key;
+    }
+
+    String getKey() {
+        return key;
+    }
+
+    synchronized void add(int id, long timestamp, Collection<String> terms) {
+        if (!addDocument(id, timestamp)) {
+            return;
+        }
+        for (String term : terms) {
+            postings.computeIfAbsent(term, t -> new PostingList()).add(id);
+        }
+    }
+
+    /**
+     * Find message ids containing every query term.
+     * Terms in {@code prefixes} match any indexed term starting with them.
+     */
+    synchronized int[] search(List<String> terms, List<String> prefixes, long from, long to) {
+        int[] result = null;
+        for (String term : terms) {
+            PostingList list = postings.get(term);
+            if (list == null) {
+                return new int[0];
+            }
+            result = result == null ? list.toArray() : intersect(result, list.toArray());
+            if (result.length == 0) {
+                return result;
+            }
+        }
+        for (String prefix : prefixes) {
+            int[] matches = prefixUnion(prefix);
+            result = result == null ? matches : intersect(result, matches);
+            if (result.length == 0) {
+                return result;
+            }
+        }
+        if (result == null) {
+            return new int[0];
+        }
+        return filterByTime(result, from, to);
+    }
+
+    synchronized int documentCount() {
+        return size;
+    }
+
+    synchronized int termCount() {
+        return postings.size();
+    }
+
+    private int[] prefixUnion(String prefix) {
+        Map<String, PostingList> range = postings.subMap(prefix, true, prefix + Character.MAX_VALUE, true);
+        int[] result = new int[0];
+        for (PostingList list : range.values()) {
+            result = union(result, list.toArray());
+        }
+        return result;
+    }
+
+    private int[] filterByTime(int[] candidates, long from, long to) {
+        if (from <= 0 && to <= 0) {
+            return candidates;
+        }
+        int kept = 0;
+        for (int id : candidates) {
+            int index = Arrays.binarySearch(ids, 0, size, id);
+            long timestamp = index >= 0 ? timestamps[index] : 0;
+            if ((from <= 0 || timestamp >= from) && (to <= 0 || timestamp <= to)) {
+                candidates[kept++] = id;
+            }
+        }
+        return Arrays.copyOf(candidates, kept);
+    }
+
+    /**
+     * Record a message id and timestamp, keeping ids sorted. Returns false if already indexed.
+     */
+    private boolean addDocument(int id, long timestamp) {
+        int insertAt = size;
+        if (size > 0 && ids[size - 1] >= id) {
+            int index = Arrays.binarySearch(ids, 0, size, id);
+            if (index >= 0) {
+                return false;
+            }
+            insertAt = -index - 1;
+        }
+        if (size == ids.length) {
+            ids = Arrays.copyOf(ids, size * 2);
+            timestamps = Arrays.copyOf(timestamps, size * 2);
+        }
+        System.arraycopy(ids, insertAt, ids, insertAt + 1, size - insertAt);
+        System.arraycopy(timestamps, insertAt, timestamps, insertAt + 1, size - insertAt);
+        ids[insertAt] = id;
+        timestamps[insertAt] = timestamp;
+        size++;
+        return true;
+    }
+
+    private static int[] intersect(int[] a, int[] b) {
+        int[] out = new int[Math.min(a.length, b.length)];
+        int i = 0, j = 0, n = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] == b[j]) {
+                out[n++] = a[i];
+                i++;
+                j++;
+            } else if (a[i] < b[j]) {
+                i++;
+            } else {
+                j++;
+            }
+        }
+        return Arrays.copyOf(out, n);
+    }
+
+    private static int[] union(int[] a, int[] b) {
+        if (a.length == 0) {
+            return b;
+        }
+        int[] out = new int[a.length + b.length];
+        int i = 0, j = 0, n = 0;
+        while (i < a.length || j < b.length) {
+            if (j == b.length || (i < a.length && a[i] < b[j])) {
+                out[n++] = a[i++];
+            } else if (i == a.length || b[j] < a[i]) {
+                out[n++] = b[j++];
+            } else {
+                out[n++] = a[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(out, n);
+    }
+}
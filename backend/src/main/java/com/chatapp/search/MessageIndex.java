@@ -0,0 +1,246 @@
+package com.chatapp.search;
+
+import com.chatapp.archive.MessageArchive;
+import com.chatapp.database.MessageRepository;
+import com.chatapp.model.Conversation;
+import com.chatapp.model.Message;
+import com.chatapp.util.IntObjectHashMap;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * In-memory full-text index over message history, partitioned per conversation.
+ * The index is rebuilt from the database at startup and then kept up to date
+ * by {@link #add} every time a message is saved.
+ */
+public class MessageIndex {
+    public static final int MAX_RESULTS = 100;
+
+    private final Map<String, ConversationIndex> conversations = new ConcurrentHashMap<>();
+    private final IntObjectHashMap<Set<String>> conversationsByUser = new IntObjectHashMap<>(); // guarded by itself
+    private final List<Document> pending = new ArrayList<>();
+    private volatile boolean ready = false;
+
+    /**
+     * Index a saved message. Messages saved while the index is being rebuilt
+     * are queued and applied once the rebuild has finished.
+     */
+    public void add(int id, String conversation, String content, long timestamp) {
+        Document document = new Document(id, conversation, timestamp, Tokenizer.terms(content));
+        if (!ready) {
+            synchronized (pending) {
+                if (!ready) {
+                    pending.add(document);
+                    return;
+                }
+            }
+        }
+        apply(document);
+    }
+
+    /**
+     * Rebuild the index from the archive and the database, loading and tokenizing
+     * database id ranges in parallel
+     */
+    public void rebuild(MessageRepository repository, int threads, int chunkSize) {
+        long start = System.currentTimeMillis();
+        int indexed = indexArchive();
+        int[] range = repository.getMessageIdRange();
+
+        if (range != null) {
+            ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, threads));
+            try {
+                List<Future<List<Document>>> chunks = new ArrayList<>();
+                for (long from = range[0]; from <= range[1]; from += chunkSize) {
+                    int chunkFrom = (int) from;
+                    int chunkTo = (int) Math.min(from + chunkSize - 1, range[1]);
+                    chunks.add(executor.submit(() -> loadChunk(repository, chunkFrom, chunkTo)));
+                }
+                // Apply chunks in id order so posting lists are only ever appended to
+                for (Future<List<Document>> chunk : chunks) {
+                    for (Document document : chunk.get()) {
+                        apply(document);
+                        indexed++;
+                    }
+                }
+            } catch (Exception e) {
+                System.err.println("❌ Failed to rebuild search index:");
+                e.printStackTrace();
+            } finally {
+                executor.shutdownNow();
+            }
+        }
+
+        synchronized (pending) {
+            for (Document document : pending) {
+                apply(document);
+            }
+            indexed += pending.size();
+            pending.clear();
+            ready = true;
+        }
+
+        System.out.println("🔎 Search index built: " + indexed + " messages in " + conversations.size()
+                + " conversations (" + (System.currentTimeMillis() - start) + " ms)");
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * Search the conversations visible to a user.
+     *
+     * @param userId        the searching user
+     * @param query         whitespace separated terms; a term ending in '*' is a prefix query
+     * @param conversation  restrict to this conversation key, or null for all conversations of the user
+     * @param from          only messages at or after this time (epoch millis), 0 for no limit
+     * @param to            only messages at or before this time (epoch millis), 0 for no limit
+     * @param limit         maximum number of results
+     * @return matching message ids, newest first
+     */
+    public List<Integer> search(int userId, String query, String conversation, long from, long to, int limit) {
+        List<String> terms = new ArrayList<>();
+        List<String> prefixes = new ArrayList<>();
+        parseQuery(query, terms, prefixes);
+        if (terms.isEmpty() && prefixes.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        List<ConversationIndex> targets = new ArrayList<>();
+        if (conversation != null) {
+            ConversationIndex index = conversations.get(conversation);
+            if (index != null && Conversation.isParticipant(conversation, userId)) {
+                targets.add(index);
+            }
+        } else {
+            ConversationIndex publicIndex = conversations.get(Conversation.PUBLIC);
+            if (publicIndex != null) {
+                targets.add(publicIndex);
+            }
+            List<String> keys = new ArrayList<>();
+            synchronized (conversationsByUser) {
+                Set<String> own = conversationsByUser.get(userId);
+                if (own != null) {
+                    keys.addAll(own);
+                }
+            }
+            for (String key : keys) {
+                targets.add(conversations.get(key));
+            }
+        }
+
+        int max = Math.max(1, Math.min(limit, MAX_RESULTS));
+        int[] matches = new int[0];
+        for (ConversationIndex index : targets) {
+            int[] found = index.search(terms, prefixes, from, to);
+            int keep = Math.min(found.length, max);
+            // Only the newest ids of each conversation can make it into the result
+            int[] merged = Arrays.copyOf(matches, matches.length + keep);
+            System.arraycopy(found, found.length - keep, merged, matches.length, keep);
+            matches = merged;
+        }
+        Arrays.sort(matches);
+
+        List<Integer> ids = new ArrayList<>();
+        for (int i = matches.length - 1; i >= 0 && ids.size() < max; i--) {
+            ids.add(matches[i]);
+        }
+        return ids;
+    }
+
+    private void apply(Document document) {
+        String key = document.conversation;
+        if (key == null) {
+            return;
+        }
+        ConversationIndex index = conversations.computeIfAbsent(key, ConversationIndex::new);
+        int[] participants = Conversation.participants(key);
+        if (participants != null) {
+            synchronized (conversationsByUser) {
+                for (int userId : participants) {
+                    Set<String> keys = conversationsByUser.get(userId);
+                    if (keys == null) {
+                        keys = new HashSet<>();
+                        conversationsByUser.put(userId, keys);
+                    }
+                    keys.add(key);
+                }
+            }
+        }
+        index.add(document.id, document.timestamp, document.terms);
+    }
+
+    /**
+     * Index the archived messages. They are older than everything in the database, so
+     * applying them first keeps posting lists append-only.
+     */
+    private int indexArchive() {
+        List<Document> documents = new ArrayList<>();
+        try {
+            MessageArchive.getInstance().scan(row -> documents.add(
+                    new Document(row.id, row.conversation, row.timestamp, Tokenizer.terms(row.content))));
+        } catch (IOException e) {
+            System.err.println("❌ Failed to index archived messages:");
+            e.printStackTrace();
+        }
+        // Segments are stored by conversation, not by id
+        documents.sort(Comparator.comparingInt(document -> document.id));
+        for (Document document : documents) {
+            apply(document);
+        }
+        return documents.size();
+    }
+
+    private static List<Document> loadChunk(MessageRepository repository, int fromId, int toId) throws Exception {
+        List<Document> documents = new ArrayList<>();
+        for (Message message : repository.getMessagesInIdRange(fromId, toId)) {
+            documents.add(new Document(message.getId(), message.getConversation(),
+                    message.getTimestamp(), Tokenizer.terms(message.getContent())));
+        }
+        return documents;
+    }
+
+    private static void parseQuery(String query, List<String> terms, List<String> prefixes) {
+        if (query == null) {
+            return;
+        }
+        for (String word : query.trim().split("\\s+")) {
+            boolean prefix = word.endsWith("*");
+            List<String> parts = new ArrayList<>(Tokenizer.terms(word));
+            for (int i = 0; i < parts.size(); i++) {
+                if (prefix && i == parts.size() - 1) {
+                    prefixes.add(parts.get(i));
+                } else {
+                    terms.add(parts.get(i));
+                }
+            }
+        }
+    }
+
+    private static class Document {
+        final int id;
+        final String conversation;
+        final long timestamp;
+        final Set<String> terms;
+
+        Document(int id, String conversation, long timestamp, Set<String> terms) {
+            this.id = id;
+            this.conversation = conversation;
+            this.timestamp = timestamp;
+            this.terms = terms;
+        }
+    }
+}
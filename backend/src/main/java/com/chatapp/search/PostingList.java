@@ -0,0 +1,89 @@
+package com.chatapp.search;
+
+import java.util.Arrays;
+
+/**
+ * Sorted list of message ids stored as variable-length encoded deltas.
+ * Ids are almost always appended in increasing order, so appends are O(1) and
+ * a typical posting costs one or two bytes instead of four.
+ * Not thread-safe: the owning {@link ConversationIndex} guards access.
+ */
+class PostingList {
+    private byte[] data = new byte[4];
+    private int length;
+    private int count;
+    private int lastId;
+
+    void add(int id) {
+        if (count > 0 && id <= lastId) {
+            if (id != lastId) {
+                insertOutOfOrder(id);
+            }
+            return;
+        }
+        writeVarInt(count == 0 ? id : id - lastId);
+        lastId = id;
+        count++;
+    }
+
+    int size() {
+        return count;
+    }
+
+    /**
+     * Decode the list into a sorted array of ids
+     */
+    int[] toArray() {
+        int[] ids = new int[count];
+        int pos = 0;
+        int previous = 0;
+        for (int i = 0; i < count; i++) {
+            int value = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = data[pos++];
+                value |= (b & 0x7F) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            previous += value;
+            ids[i] = previous;
+        }
+        return ids;
+    }
+
+    /**
+     * Concurrent saves can finish slightly out of id order; re-encode the tail in that case.
+     */
+    private void insertOutOfOrder(int id) {
+        int[] ids = toArray();
+        int index = Arrays.binarySearch(ids, id);
+        if (index >= 0) {
+            return;
+        }
+        int insertAt = -index - 1;
+        int[] merged = new int[ids.length + 1];
+        System.arraycopy(ids, 0, merged, 0, insertAt);
+        merged[insertAt] = id;
+        System.arraycopy(ids, insertAt, merged, insertAt + 1, ids.length - insertAt);
+
+        length = 0;
+        count = 0;
+        for (int value : merged) {
+            writeVarInt(count == 0 ? value : value - lastId);
+            lastId = value;
+            count++;
+        }
+    }
+
+    private void writeVarInt(int value) {
+        if (data.length - length < 5) {
+            data = Arrays.copyOf(data, Math.max(data.length * 2, length + 5));
+        }
+        while ((value & ~0x7F) != 0) {
+            data[length++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        data[length++] = (byte) value;
+    }
+}
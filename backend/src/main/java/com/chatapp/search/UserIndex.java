@@ -0,0 +1,390 @@
+package com.chatapp.search;
+
+import com.chatapp.model.User;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Prefix index over the emails and usernames of all registered users, for search_users.
+ *
+ * Users are packed into one UTF-8 byte array, "email\0username\0" per user, next to int arrays
+ * of user ids and offsets. The searchable keys (the email, the username and every later word of
+ * the username) are just offsets into that array, kept sorted by the text they point at, so a
+ * prefix query is a binary search followed by a short forward scan. That costs the text plus
+ * about 12 bytes per user and 4 bytes per key, a couple of hundred MB for a few million users.
+ *
+ * Users registered after the load are appended to the arrays right away and searched linearly
+ * until {@value #DELTA_LIMIT} of them have accumulated; their keys are then merged into the
+ * sorted keys. Searches read an immutable snapshot and never wait for a writer.
+ * Matching ignores ASCII case only.
+ */
+public class UserIndex {
+    public static final int MAX_RESULTS = 50;
+    private static final int DELTA_LIMIT = 256;
+
+    private final Object writeLock = new Object();
+    private final List<User> pending = new ArrayList<>(); // registered while loading, guarded by writeLock
+    private volatile Snapshot snapshot = new Snapshot(new byte[0], new int[0], new int[1], new int[0], 0, new int[0], new int[0]);
+    private volatile boolean ready = false;
+
+    // Writer side, guarded by writeLock. Snapshots share these arrays: appends only touch
+    // entries beyond the published user count, so readers of an older snapshot never see them.
+    private byte[] data = new byte[4096];
+    private int dataLength;
+    private int[] ids = new int[256];
+    private int[] userStart = new int[257];
+    private int[] nameStart = new int[256];
+    private int users;
+
+    /**
+     * Append a user read by the bulk load; users must arrive in increasing id order.
+     * Call {@link #finishLoad()} after the last one.
+     */
+    public void load(int id, String email, String username) {
+        synchronized (writeLock) {
+            append(id, email, username);
+        }
+    }
+
+    /**
+     * Sort the loaded users' keys, add the users registered in the meantime and start serving searches
+     */
+    public void finishLoad() {
+        synchronized (writeLock) {
+            int loaded = users;
+            // Drop the growth slack of the bulk load, keeping a little room for registrations
+            data = Arrays.copyOf(data, dataLength + dataLength / 32 + 1024);
+            ids = Arrays.copyOf(ids, users + users / 32 + 16);
+            nameStart = Arrays.copyOf(nameStart, ids.length);
+            userStart = Arrays.copyOf(userStart, ids.length + 1);
+            int[] keys = collectKeys(0, loaded);
+            sortKeys(data, keys);
+            for (User user : pending) {
+                if (Arrays.binarySearch(ids, 0, loaded, user.getId()) < 0) {
+                    append(user.getId(), user.getEmail(), user.getUsername());
+                }
+            }
+            pending.clear();
+            int[] delta = new int[users - loaded];
+            for (int i = 0; i < delta.length; i++) {
+                delta[i] = loaded + i;
+            }
+            snapshot = new Snapshot(data, ids, userStart, nameStart, users, keys, delta);
+            ready = true;
+        }
+    }
+
+    /**
+     * Add a newly registered user
+     */
+    public void add(int id, String email, String username) {
+        synchronized (writeLock) {
+            if (!ready) {
+                User user = new User();
+                user.setId(id);
+                user.setEmail(email);
+                user.setUsername(username);
+                pending.add(user);
+                return;
+            }
+            append(id, email, username);
+
+            Snapshot current = snapshot;
+            int[] delta = Arrays.copyOf(current.delta, current.delta.length + 1);
+            delta[delta.length - 1] = users - 1;
+            int[] keys = current.keys;
+            if (delta.length >= DELTA_LIMIT) {
+                keys = mergeKeys(keys, collectKeys(delta[0], users));
+                delta = new int[0];
+            }
+            snapshot = new Snapshot(data, ids, userStart, nameStart, users, keys, delta);
+        }
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    public int size() {
+        return snapshot.users;
+    }
+
+    /**
+     * Find users whose email, username or a word of their username starts with the query,
+     * ordered by the matching text
+     *
+     * @return users with id, email and username set
+     */
+    public List<User> search(String query, int limit) {
+        List<User> results = new ArrayList<>();
+        byte[] prefix = foldedBytes(query == null ? "" : query.trim());
+        limit = Math.max(1, Math.min(limit, MAX_RESULTS));
+        if (prefix.length == 0) {
+            return results;
+        }
+
+        Snapshot s = snapshot;
+        // Candidate (key offset, user index) pairs: at most limit distinct users from the sorted
+        // keys, plus the matches among the users not merged into the keys yet
+        List<int[]> candidates = new ArrayList<>();
+        Set<Integer> seen = new HashSet<>();
+        for (int i = s.lowerBound(prefix); i < s.keys.length && seen.size() < limit; i++) {
+            if (s.comparePrefix(s.keys[i], prefix) != 0) {
+                break;
+            }
+            int user = s.userAt(s.keys[i]);
+            if (seen.add(user)) {
+                candidates.add(new int[] { s.keys[i], user });
+            }
+        }
+        for (int user : s.delta) {
+            int key = s.firstMatchingKey(user, prefix);
+            if (key >= 0) {
+                candidates.add(new int[] { key, user });
+            }
+        }
+        candidates.sort((a, b) -> compareKeys(s.data, a[0], b[0]));
+
+        Set<Integer> added = new HashSet<>();
+        for (int[] candidate : candidates) {
+            if (results.size() >= limit) {
+                break;
+            }
+            if (added.add(candidate[1])) {
+                results.add(s.user(candidate[1]));
+            }
+        }
+        return results;
+    }
+
+    private void append(int id, String email, String username) {
+        // NUL terminates the fields, so it cannot be part of them
+        byte[] emailBytes = email.replace("\0", "").getBytes(StandardCharsets.UTF_8);
+        byte[] nameBytes = username.replace("\0", "").getBytes(StandardCharsets.UTF_8);
+        int needed = dataLength + emailBytes.length + nameBytes.length + 2;
+        if (needed > data.length) {
+            data = Arrays.copyOf(data, Math.max(needed, data.length + (data.length >> 1)));
+        }
+        if (users == ids.length) {
+            int capacity = ids.length + (ids.length >> 1);
+            ids = Arrays.copyOf(ids, capacity);
+            nameStart = Arrays.copyOf(nameStart, capacity);
+            userStart = Arrays.copyOf(userStart, capacity + 1);
+        }
+
+        ids[users] = id;
+        userStart[users] = dataLength;
+        System.arraycopy(emailBytes, 0, data, dataLength, emailBytes.length);
+        dataLength += emailBytes.length;
+        data[dataLength++] = 0;
+        nameStart[users] = dataLength;
+        System.arraycopy(nameBytes, 0, data, dataLength, nameBytes.length);
+        dataLength += nameBytes.length;
+        data[dataLength++] = 0;
+        users++;
+        userStart[users] = dataLength;
+    }
+
+    /**
+     * Get the unsorted keys of users from..to-1
+     */
+    private int[] collectKeys(int from, int to) {
+        int[] keys = new int[Math.max(16, (to - from) * 2)];
+        int count = 0;
+        for (int user = from; user < to; user++) {
+            if (count + 2 > keys.length) {
+                keys = Arrays.copyOf(keys, keys.length * 2);
+            }
+            keys[count++] = userStart[user];
+            keys[count++] = nameStart[user];
+            for (int i = nameStart[user] + 1; i < userStart[user + 1] - 1; i++) {
+                if (isSeparator(data[i - 1]) && !isSeparator(data[i])) {
+                    if (count == keys.length) {
+                        keys = Arrays.copyOf(keys, keys.length * 2);
+                    }
+                    keys[count++] = i;
+                }
+            }
+        }
+        return Arrays.copyOf(keys, count);
+    }
+
+    private int[] mergeKeys(int[] sorted, int[] added) {
+        sortKeys(data, added);
+        int[] merged = new int[sorted.length + added.length];
+        int i = 0;
+        int j = 0;
+        int k = 0;
+        while (i < sorted.length && j < added.length) {
+            merged[k++] = compareKeys(data, sorted[i], added[j]) <= 0 ? sorted[i++] : added[j++];
+        }
+        while (i < sorted.length) {
+            merged[k++] = sorted[i++];
+        }
+        while (j < added.length) {
+            merged[k++] = added[j++];
+        }
+        return merged;
+    }
+
+    /**
+     * Bottom-up merge sort of key offsets by the text they point at
+     */
+    private static void sortKeys(byte[] data, int[] keys) {
+        int[] source = keys;
+        int[] target = new int[keys.length];
+        for (int width = 1; width < keys.length; width *= 2) {
+            for (int from = 0; from < keys.length; from += 2 * width) {
+                int middle = Math.min(from + width, keys.length);
+                int to = Math.min(from + 2 * width, keys.length);
+                int i = from;
+                int j = middle;
+                int k = from;
+                while (i < middle && j < to) {
+                    target[k++] = compareKeys(data, source[i], source[j]) <= 0 ? source[i++] : source[j++];
+                }
+                while (i < middle) {
+                    target[k++] = source[i++];
+                }
+                while (j < to) {
+                    target[k++] = source[j++];
+                }
+            }
+            int[] swap = source;
+            source = target;
+            target = swap;
+        }
+        if (source != keys) {
+            System.arraycopy(source, 0, keys, 0, keys.length);
+        }
+    }
+
+    private static int compareKeys(byte[] data, int a, int b) {
+        for (int i = 0; ; i++) {
+            int ca = fold(data[a + i]);
+            int cb = fold(data[b + i]);
+            if (ca != cb) {
+                return ca - cb;
+            }
+            if (ca == 0) {
+                return 0;
+            }
+        }
+    }
+
+    private static int fold(byte b) {
+        return b >= 'A' && b <= 'Z' ? b + ('a' - 'A') : b & 0xff;
+    }
+
+    private static boolean isSeparator(byte b) {
+        return b == ' ' || b == '.' || b == '_' || b == '-';
+    }
+
+    private static byte[] foldedBytes(String text) {
+        byte[] bytes = text.replace("\0", "").getBytes(StandardCharsets.UTF_8);
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) fold(bytes[i]);
+        }
+        return bytes;
+    }
+
+    /**
+     * Published state of the index. The arrays may be longer than the snapshot's users.
+     */
+    private static final class Snapshot {
+        final byte[] data;
+        final int[] ids;
+        final int[] userStart;
+        final int[] nameStart;
+        final int users;
+        final int[] keys;
+        final int[] delta; // users whose keys are not in keys yet
+
+        Snapshot(byte[] data, int[] ids, int[] userStart, int[] nameStart, int users, int[] keys, int[] delta) {
+            this.data = data;
+            this.ids = ids;
+            this.userStart = userStart;
+            this.nameStart = nameStart;
+            this.users = users;
+            this.keys = keys;
+            this.delta = delta;
+        }
+
+        /**
+         * Compare the start of a key with the prefix: 0 if the key starts with it
+         */
+        int comparePrefix(int key, byte[] prefix) {
+            for (int i = 0; i < prefix.length; i++) {
+                int c = fold(data[key + i]);
+                if (c != (prefix[i] & 0xff)) {
+                    return c - (prefix[i] & 0xff);
+                }
+            }
+            return 0;
+        }
+
+        /**
+         * Index of the first key not below the prefix
+         */
+        int lowerBound(byte[] prefix) {
+            int low = 0;
+            int high = keys.length;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (comparePrefix(keys[middle], prefix) < 0) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+
+        /**
+         * Get the user a key offset belongs to
+         */
+        int userAt(int key) {
+            int low = 0;
+            int high = users - 1;
+            while (low < high) {
+                int middle = (low + high + 1) >>> 1;
+                if (userStart[middle] <= key) {
+                    low = middle;
+                } else {
+                    high = middle - 1;
+                }
+            }
+            return low;
+        }
+
+        /**
+         * Linear match for a user whose keys are not merged yet: the offset of the first
+         * matching key, or -1
+         */
+        int firstMatchingKey(int user, byte[] prefix) {
+            if (comparePrefix(userStart[user], prefix) == 0) {
+                return userStart[user];
+            }
+            for (int i = nameStart[user]; i < userStart[user + 1] - 1; i++) {
+                boolean wordStart = i == nameStart[user] || (isSeparator(data[i - 1]) && !isSeparator(data[i]));
+                if (wordStart && comparePrefix(i, prefix) == 0) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        User user(int index) {
+            User user = new User();
+            user.setId(ids[index]);
+            user.setEmail(new String(data, userStart[index], nameStart[index] - userStart[index] - 1, StandardCharsets.UTF_8));
+            user.setUsername(new String(data, nameStart[index], userStart[index + 1] - nameStart[index] - 1, StandardCharsets.UTF_8));
+            return user;
+        }
+    }
+}
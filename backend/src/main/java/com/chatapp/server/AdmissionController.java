@@ -0,0 +1,140 @@
+package com.chatapp.server;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Accept-time limits on the total number of connections and on connections per client IP.
+ *
+ * Connections from a trusted proxy (e.g. the WebSocket bridge) carry many clients, so the proxy's
+ * own address is not limited; the per-IP limit applies instead to the client address the proxy
+ * forwards, see {@link #tryAdmitForwarded}.
+ */
+public class AdmissionController {
+    private final int maxConnections;
+    private final int maxConnectionsPerIp;
+    private final Set<InetAddress> trustedProxies;
+    private final String metricPrefix;
+    private final AtomicInteger active = new AtomicInteger();
+    private final Map<InetAddress, AtomicInteger> perIp = new ConcurrentHashMap<>();
+    private final ServerMetrics metrics = ServerMetrics.getInstance();
+
+    public AdmissionController(int maxConnections, int maxConnectionsPerIp) {
+        this(maxConnections, maxConnectionsPerIp, "");
+    }
+
+    /**
+     * @param trustedProxies comma-separated IP addresses of proxies allowed to forward client addresses
+     */
+    public AdmissionController(int maxConnections, int maxConnectionsPerIp, String trustedProxies) {
+        this(maxConnections, maxConnectionsPerIp, trustedProxies, "connections");
+    }
+
+    /**
+     * @param metricPrefix prefix of this controller's metrics, e.g. "connections" for
+     *                     connections.active and connections.rejected.ip
+     */
+    public AdmissionController(int maxConnections, int maxConnectionsPerIp, String trustedProxies, String metricPrefix) {
+        this.maxConnections = maxConnections;
+        this.maxConnectionsPerIp = maxConnectionsPerIp;
+        this.trustedProxies = parseAddresses(trustedProxies);
+        this.metricPrefix = metricPrefix;
+        metrics.gauge(metricPrefix + ".active", active::get);
+    }
+
+    private static Set<InetAddress> parseAddresses(String list) {
+        Set<InetAddress> addresses = new HashSet<>();
+        for (String entry : list.split(",")) {
+            entry = entry.trim();
+            if (entry.isEmpty()) {
+                continue;
+            }
+            InetAddress address = parseLiteral(entry);
+            if (address != null) {
+                addresses.add(address);
+            } else {
+                System.err.println("❌ Ignoring trusted proxy that is not an IP address: " + entry);
+            }
+        }
+        return addresses;
+    }
+
+    /**
+     * Parse an IP address literal without ever resolving a host name
+     * @return the address, or null if text is not an IP literal
+     */
+    static InetAddress parseLiteral(String text) {
+        if (text.isEmpty() || !text.chars().allMatch(c -> Character.digit(c, 16) >= 0 || c == '.' || c == ':')) {
+            return null;
+        }
+        try {
+            return InetAddress.getByName(text);
+        } catch (UnknownHostException e) {
+            return null;
+        }
+    }
+
+    public boolean isTrustedProxy(InetAddress address) {
+        return trustedProxies.contains(address);
+    }
+
+    /**
+     * Try to admit a new connection.
+     * @return null if admitted (the caller must later call {@link #release}), otherwise the rejection reason
+     */
+    public String tryAdmit(InetAddress address) {
+        if (active.incrementAndGet() > maxConnections) {
+            active.decrementAndGet();
+            metrics.increment(metricPrefix + ".rejected.global");
+            return "Server is at capacity, please try again later";
+        }
+        if (trustedProxies.contains(address)) {
+            metrics.increment(metricPrefix + ".accepted");
+            return null;
+        }
+
+        AtomicInteger count = perIp.computeIfAbsent(address, a -> new AtomicInteger());
+        if (count.incrementAndGet() > maxConnectionsPerIp) {
+            release(address);
+            metrics.increment(metricPrefix + ".rejected.ip");
+            return "Too many connections from your address";
+        }
+
+        metrics.increment(metricPrefix + ".accepted");
+        return null;
+    }
+
+    /**
+     * Apply the per-IP limit to the client address forwarded on an admitted trusted proxy connection
+     * @return null if admitted (the caller must later call {@link #releaseForwarded}), otherwise the rejection reason
+     */
+    public String tryAdmitForwarded(InetAddress client) {
+        AtomicInteger count = perIp.computeIfAbsent(client, a -> new AtomicInteger());
+        if (count.incrementAndGet() > maxConnectionsPerIp) {
+            releaseForwarded(client);
+            metrics.increment(metricPrefix + ".rejected.ip");
+            return "Too many connections from your address";
+        }
+        return null;
+    }
+
+    public void release(InetAddress address) {
+        active.decrementAndGet();
+        if (!trustedProxies.contains(address)) {
+            releaseForwarded(address);
+        }
+    }
+
+    public void releaseForwarded(InetAddress client) {
+        perIp.computeIfPresent(client, (a, count) -> count.decrementAndGet() <= 0 ? null : count);
+    }
+
+    public int getActiveConnections() {
+        return active.get();
+    }
+}
@@ -0,0 +1,45 @@
+package com.chatapp.server;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Fixed-size byte buffers shared by all connections. A connection takes one when the first byte
+ * of a frame arrives and returns it once it has no buffered bytes left, so steady-state reading
+ * allocates no buffers at all and idle connections hold none.
+ * At most maxPooled free buffers are retained; the rest are left to the garbage collector.
+ */
+final class BufferPool {
+    private final int bufferSize;
+    private final int maxPooled;
+    private final ConcurrentLinkedQueue<byte[]> free = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger freeCount = new AtomicInteger();
+    private final ServerMetrics metrics = ServerMetrics.getInstance();
+
+    BufferPool(int bufferSize, int maxPooled) {
+        this.bufferSize = bufferSize;
+        this.maxPooled = maxPooled;
+        metrics.gauge("inbound.pooledBuffers", freeCount::get);
+    }
+
+    byte[] acquire() {
+        byte[] buffer = free.poll();
+        if (buffer != null) {
+            freeCount.decrementAndGet();
+            return buffer;
+        }
+        metrics.increment("inbound.buffersAllocated");
+        return new byte[bufferSize];
+    }
+
+    /**
+     * Return a buffer; the caller must not touch it afterwards
+     */
+    void release(byte[] buffer) {
+        if (buffer.length == bufferSize && freeCount.incrementAndGet() <= maxPooled) {
+            free.offer(buffer);
+        } else if (buffer.length == bufferSize) {
+            freeCount.decrementAndGet();
+        }
+    }
+}
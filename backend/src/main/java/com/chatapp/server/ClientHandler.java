@@ -1,58 +1,180 @@
 package com.chatapp.server;
 
+import com.chatapp.auth.ResumeTokens;
 import com.chatapp.auth.UserAuthService;
 import com.chatapp.database.DatabaseManager;
 import com.chatapp.database.MessageRepository;
+import com.chatapp.filter.ContentFilter;
+import com.chatapp.jfr.FrameReceivedEvent;
+import com.chatapp.jfr.FrameTrace;
+import com.chatapp.model.Attachment;
+import com.chatapp.model.Conversation;
 import com.chatapp.model.Message;
 import com.chatapp.model.User;
+import com.chatapp.search.MessageIndex;
+import com.chatapp.search.UserIndex;
 import com.google.gson.Gson;
+import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 
 import java.io.*;
+import java.net.InetAddress;
 import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
 
 public class ClientHandler implements Runnable {
+    private static final int RESUME_LIMIT = ServerConfig.getInstance().getInt("resume.maxMessages", 200);
+    private static final int RESUME_CONVERSATIONS = ServerConfig.getInstance().getInt("resume.maxConversations", 100);
+    private static final int HISTORY_LIMIT = 50;
+    private static final int MAX_HISTORY_LIMIT = ServerConfig.getInstance().getInt("history.maxMessages", 200);
+    private static final int MAX_FRAME_BYTES = ServerConfig.getInstance().getInt("inbound.maxFrameBytes", 64 * 1024);
+    private static final long HEARTBEAT_INTERVAL_MS = ServerConfig.getInstance().getLong("heartbeat.intervalMs", 30_000);
+    private static final long IDLE_TIMEOUT_MS = ServerConfig.getInstance().getLong("heartbeat.idleTimeoutMs", 90_000);
+    private static final String PING = new Message("ping", null, "").toJson();
+    private static final String PONG = new Message("pong", null, "").toJson();
+    private static final LongAdder DELIVERY_FRAMES = ServerMetrics.getInstance().counter("delivery.frames");
+    private static final LongAdder DELIVERY_WRITES = ServerMetrics.getInstance().counter("delivery.writes");
+    /** Requests that write state or start sessions, refused while the server drains */
+    private static final Set<String> DRAIN_REFUSED = Set.of("register", "login", "message", "private_message", "react", "unreact");
+    private static final String RATE_LIMITED = new Message("error", null, "Rate limit exceeded, slow down").toJson();
+
     private final Socket clientSocket;
     private final MainServer server;
+    private InetAddress clientAddress; // as forwarded by a trusted proxy, else the socket's peer
+    private InetAddress forwardedAddress; // admitted forwarded address, null if none
     private PrintWriter out;
-    private BufferedReader in;
+    private OutboundQueue outbound; // batched delivery, null when frames are written one by one
+    private int userId; // 0 until logged in
     private String userEmail;
     private String username;
+    private String transferToken;
     private final UserAuthService authService;
     private final MessageRepository messageRepository;
     private final Gson gson;
+    private final RateLimiter rateLimiter;
+    private RateLimiter.Buckets rateBuckets;
+    private final AtomicBoolean closed = new AtomicBoolean(false);
+    private volatile long lastReadNanos = System.nanoTime();
+    private volatile HashedWheelTimer.Timeout heartbeat;
 
     public ClientHandler(Socket socket, MainServer server) {
         this.clientSocket = socket;
         this.server = server;
-        this.authService = new UserAuthService();
-        this.messageRepository = new MessageRepository();
-        this.gson = new Gson();
+        this.authService = server.getAuthService();
+        this.messageRepository = server.getMessageRepository();
+        this.gson = server.getGson();
+        this.rateLimiter = server.getRateLimiter();
+        this.clientAddress = socket.getInetAddress();
     }
 
     @Override
     public void run() {
+        FrameDecoder decoder = null;
         try {
-            in = new BufferedReader(new InputStreamReader(clientSocket.getInputStream()));
-            out = new PrintWriter(clientSocket.getOutputStream(), true);
+            decoder = new FrameDecoder(clientSocket.getInputStream(), server.getBufferPool(), MAX_FRAME_BYTES);
+            out = new PrintWriter(new OutputStreamWriter(clientSocket.getOutputStream(), StandardCharsets.UTF_8), true);
+            WriteBatcher batcher = server.getWriteBatcher();
+            if (batcher != null && clientSocket.getChannel() != null) {
+                outbound = batcher.newQueue(clientSocket.getChannel());
+            }
 
-            String inputLine;
-            while ((inputLine = in.readLine()) != null) {
-                System.out.println("📨 Received: " + inputLine);
+            scheduleHeartbeat(HEARTBEAT_INTERVAL_MS);
+
+            String inputLine = decoder.readFrame();
+            if (inputLine != null && inputLine.startsWith("PROXY ") && server.isTrustedProxy(clientAddress)) {
+                if (!acceptProxyHeader(inputLine)) {
+                    return;
+                }
+                inputLine = decoder.readFrame();
+            }
+            // Before login, requests are limited per client address
+            RateLimiter.Buckets ipBuckets = rateLimiter.acquire("ip:" + clientAddress.getHostAddress());
+            synchronized (this) {
+                if (closed.get()) { // closed meanwhile, cleanup has already released what it had
+                    rateLimiter.release(ipBuckets);
+                    return;
+                }
+                rateBuckets = ipBuckets;
+            }
+
+            while (inputLine != null) {
+                lastReadNanos = System.nanoTime();
                 handleMessage(inputLine);
+                inputLine = decoder.readFrame();
             }
 
+        } catch (FrameDecoder.FrameTooLargeException e) {
+            ServerMetrics.getInstance().increment("inbound.oversized");
+            System.err.println("❌ Closing connection after an oversized frame: "
+                    + (userEmail != null ? userEmail : clientAddress));
+            sendError("Frame too large, the limit is " + MAX_FRAME_BYTES + " bytes");
         } catch (IOException e) {
             System.err.println("❌ Client disconnected: " + userEmail);
         } finally {
             cleanup();
+            // Only now that this thread has stopped reading can the buffer go to another connection
+            if (decoder != null) {
+                decoder.release();
+            }
         }
     }
 
+    /**
+     * Take the client address from a PROXY protocol (v1) header sent by a trusted proxy,
+     * "PROXY TCP4|TCP6 clientIp proxyIp clientPort proxyPort", and apply the per-IP limit to it
+     * @return false (after sending an error) if the client is over the limit
+     */
+    private boolean acceptProxyHeader(String header) {
+        String[] fields = header.trim().split(" ");
+        InetAddress forwarded = fields.length >= 3 && (fields[1].equals("TCP4") || fields[1].equals("TCP6"))
+                ? AdmissionController.parseLiteral(fields[2]) : null;
+        if (forwarded == null) {
+            return true; // "PROXY UNKNOWN": the proxy's own address stands
+        }
+        String rejection = server.admitForwarded(forwarded);
+        if (rejection != null) {
+            sendError(rejection);
+            return false;
+        }
+        synchronized (this) {
+            if (closed.get()) {
+                server.releaseForwarded(forwarded);
+                return false;
+            }
+            forwardedAddress = forwarded;
+        }
+        clientAddress = forwarded;
+        return true;
+    }
+
     private void handleMessage(String jsonMessage) {
+        FrameReceivedEvent event = new FrameReceivedEvent();
+        event.begin();
+        event.frameId = FrameTrace.begin();
         try {
+            long decodeStart = event.isEnabled() ? System.nanoTime() : 0;
             Message message = Message.fromJson(jsonMessage);
+            if (decodeStart != 0) {
+                event.decodeNanos = System.nanoTime() - decodeStart;
+            }
+            event.type = message.getType();
+
+            if (!rateLimiter.tryAcquire(rateBuckets, message.getType())) {
+                sendMessage(RATE_LIMITED);
+                return;
+            }
+            if (server.isDraining() && DRAIN_REFUSED.contains(message.getType())) {
+                // The next server process owns the conversations now; clientMsgId makes the resend safe
+                sendReconnect(0);
+                return;
+            }
             
             switch (message.getType()) {
                 case "register":
@@ -73,9 +195,33 @@ public class ClientHandler implements Runnable {
                 case "get_history":
                     handleGetHistory(message);
                     break;
+                case "resume":
+                    handleResume(message);
+                    break;
+                case "search":
+                    handleSearch(message);
+                    break;
+                case "search_users":
+                    handleSearchUsers(message);
+                    break;
+                case "react":
+                    handleReaction(message, true);
+                    break;
+                case "unreact":
+                    handleReaction(message, false);
+                    break;
                 case "typing":
                     handleTyping(message);
                     break;
+                case "ping":
+                    sendMessage(PONG);
+                    break;
+                case "pong":
+                    // Only refreshes lastReadNanos
+                    break;
+                case "stats":
+                    handleStats();
+                    break;
                 case "logout":
                     handleLogout();
                     break;
@@ -85,6 +231,13 @@ public class ClientHandler implements Runnable {
         } catch (Exception e) {
             e.printStackTrace();
             sendError("Invalid message format");
+        } finally {
+            FrameTrace.end();
+            if (event.shouldCommit()) {
+                event.length = jsonMessage.length();
+                event.userId = userId;
+                event.commit();
+            }
         }
     }
 
@@ -94,14 +247,24 @@ public class ClientHandler implements Runnable {
         String password = content.get("password").getAsString();
         String username = content.get("username").getAsString();
 
-        boolean success = authService.register(email, password, username);
-
         Message response = new Message();
         response.setType("register_response");
+        if (!DatabaseManager.getInstance().isAvailable()) {
+            // A new account must be in the database before it can log in anywhere
+            response.setContent("{\"success\": false, \"message\": \"Registration is unavailable right now, please try again later\"}");
+            sendMessage(response.toJson());
+            return;
+        }
+
+        boolean success = authService.register(email, password, username);
         
         if (success) {
             response.setContent("{\"success\": true, \"message\": \"Registration successful\"}");
             System.out.println("✅ User registered: " + email);
+            int id = server.getUserDirectory().idOf(email);
+            if (id > 0) {
+                server.getUserIndex().add(id, email, username);
+            }
         } else {
             response.setContent("{\"success\": false, \"message\": \"Registration failed. Email may already exist.\"}");
         }
@@ -110,25 +273,55 @@ public class ClientHandler implements Runnable {
     }
 
     private void handleLogin(Message message) {
-        JsonObject content = gson.fromJson(message.getContent(), JsonObject.class);
-        String email = content.get("email").getAsString();
-        String password = content.get("password").getAsString();
+        if (userId > 0) {
+            // The session is registered under its user; logging in again would register it twice
+            Message response = new Message();
+            response.setType("login_response");
+            response.setContent("{\"success\": false, \"message\": \"Already logged in\"}");
+            sendMessage(response.toJson());
+            return;
+        }
 
-        User user = authService.login(email, password);
+        JsonObject content = gson.fromJson(message.getContent(), JsonObject.class);
+        User user;
+        ResumeTokens resumeTokens = server.getResumeTokens();
+        if (content.has("resumeToken") && resumeTokens != null) {
+            // Reconnect after a server drain: the token stands in for the password check
+            int tokenUserId = resumeTokens.verify(content.get("resumeToken").getAsString());
+            user = tokenUserId > 0 ? authService.resumeSession(tokenUserId) : null;
+            if (user != null) {
+                ServerMetrics.getInstance().increment("login.resumed");
+            }
+        } else if (content.has("email") && content.has("password")) {
+            user = authService.login(content.get("email").getAsString(), content.get("password").getAsString());
+        } else {
+            user = null;
+        }
+        String email = user != null ? user.getEmail() : null;
 
         Message response = new Message();
         response.setType("login_response");
 
         if (user != null) {
+            this.userId = user.getId();
             this.userEmail = email;
             this.username = user.getUsername();
-            server.addClient(email, this);
+            server.getUserDirectory().intern(user);
+            RateLimiter.Buckets ipBuckets = rateBuckets;
+            rateBuckets = rateLimiter.acquire(email);
+            rateLimiter.release(ipBuckets);
+            boolean firstSession = server.addClient(userId, this);
+            TransferServer transferServer = server.getTransferServer();
+            transferServer.revokeToken(transferToken);
+            transferToken = transferServer.issueToken(userId);
 
             JsonObject responseContent = new JsonObject();
             responseContent.addProperty("success", true);
             responseContent.addProperty("email", user.getEmail());
             responseContent.addProperty("username", user.getUsername());
             responseContent.addProperty("message", "Login successful");
+            responseContent.addProperty("transferToken", transferToken);
+            responseContent.addProperty("transferPort", transferServer.getPort());
             response.setContent(responseContent.toString());
 
             System.out.println("✅ User logged in: " + email);
@@ -136,12 +329,25 @@ public class ClientHandler implements Runnable {
             // Send login response
             sendMessage(response.toJson());
 
-            // Notify all users that someone joined
-            broadcastUserJoined();
+            if (firstSession) {
+                // Notify all users that someone joined
+                broadcastUserJoined();
+            } else {
+                // Another tab of an online user: only this connection needs the user list
+                handleGetUsers();
+            }
 
-            // Send recent messages to the newly logged-in user
-            sendRecentMessages();
+            if (content.has("resume")) {
+                // Reconnecting client: only send what it missed
+                sendResume(content.getAsJsonObject("resume"));
+            } else {
+                // Send recent messages to the newly logged-in user
+                sendRecentMessages();
+            }
 
+        } else if (!DatabaseManager.getInstance().isAvailable()) {
+            response.setContent("{\"success\": false, \"message\": \"Login is unavailable right now, please try again later\"}");
+            sendMessage(response.toJson());
         } else {
             response.setContent("{\"success\": false, \"message\": \"Invalid credentials\"}");
             sendMessage(response.toJson());
@@ -160,25 +366,35 @@ public class ClientHandler implements Runnable {
         // Use the sender from message if this connection is not authenticated but sender is provided
         String effectiveSender = userEmail != null ? userEmail : senderEmail;
         String effectiveUsername = username;
-        
-        // Get username from auth service if not set on this connection
-        if (effectiveUsername == null && effectiveSender != null) {
-            User user = authService.getUserByEmail(effectiveSender);
-            if (user != null) {
-                effectiveUsername = user.getUsername();
+        int senderId = userId;
+
+        // Resolve the sender if this connection is not logged in
+        if (senderId == 0) {
+            senderId = server.getUserDirectory().idOf(effectiveSender);
+            if (senderId < 0) {
+                sendError("Unknown sender: " + effectiveSender);
+                return;
             }
+            effectiveUsername = server.getUserDirectory().get(senderId).getUsername();
         }
 
-        System.out.println("📝 Public message from " + effectiveUsername + " (" + effectiveSender + "): " + message.getContent());
+        if (!resolveAttachment(message, senderId) || !applyFilter(message) || isDuplicate(effectiveSender, message)) {
+            return;
+        }
 
         // Save to database
-        boolean saved = messageRepository.saveMessage(effectiveSender, null, message.getContent());
+        ConversationLog conversationLog = server.getConversationLog();
+        long seq = reserveSeq(conversationLog, Conversation.PUBLIC);
+        if (seq < 0) {
+            releaseClaim(effectiveSender, message);
+            return;
+        }
+        int messageId = messageRepository.saveMessage(senderId, 0, message.getContent(), seq, message.getAttachment());
         
-        if (!saved) {
+        if (messageId < 0) {
             System.err.println("❌ Failed to save public message to database!");
-        } else {
-            System.out.println("✅ Message saved to database");
         }
+        grantAttachment(message, MessageRepository.ALL_USERS);
 
         // Prepare broadcast message
         Message broadcastMsg = new Message();
@@ -187,9 +403,52 @@ public class ClientHandler implements Runnable {
         broadcastMsg.setUsername(effectiveUsername);
         broadcastMsg.setContent(message.getContent());
         broadcastMsg.setTimestamp(System.currentTimeMillis());
+        broadcastMsg.setConversation(Conversation.PUBLIC);
+        broadcastMsg.setSeq(seq);
+        broadcastMsg.setAttachment(message.getAttachment());
+
+        if (messageId >= 0) {
+            broadcastMsg.setId(messageId);
+            server.getMessageIndex().add(messageId, Conversation.PUBLIC, message.getContent(), broadcastMsg.getTimestamp());
+        }
+        conversationLog.record(broadcastMsg);
 
         // Broadcast to all connected clients
-        server.broadcast(broadcastMsg.toJson(), null);
+        server.broadcast(broadcastMsg.toJson(), 0);
+        acknowledge(effectiveSender, message.getClientMsgId(), Conversation.PUBLIC, seq, messageId);
+    }
+
+    /**
+     * Reserve the next sequence number of a conversation
+     * @return the seq, or -1 (after sending an error) if the conversation's numbering could not be
+     *         loaded from the database
+     */
+    private long reserveSeq(ConversationLog conversationLog, String conversation) {
+        try {
+            return conversationLog.nextSeq(conversation);
+        } catch (IllegalStateException e) {
+            sendError("Conversation unavailable while the database is down, please try again later");
+            return -1;
+        }
+    }
+
+    /**
+     * Run the message text through the banned-term filter: masks it in place, or rejects the
+     * message with an error in block mode
+     * @return false if the message must not be delivered
+     */
+    private boolean applyFilter(Message message) {
+        ContentFilter filter = server.getContentFilter();
+        if (filter == null) {
+            return true;
+        }
+        String filtered = filter.apply(message.getContent());
+        if (filtered == null && message.getContent() != null) {
+            sendError("Message contains blocked terms");
+            return false;
+        }
+        message.setContent(filtered);
+        return true;
     }
 
     private void handlePrivateMessage(Message message) {
@@ -199,15 +458,30 @@ public class ClientHandler implements Runnable {
         }
 
         String receiver = message.getReceiver();
-        
-        System.out.println("📨 Private message from " + username + " (" + userEmail + ") to " + receiver + ": " + message.getContent());
+        int receiverId = server.getUserDirectory().idOf(receiver);
+        if (receiverId < 0) {
+            sendError("User not found: " + receiver);
+            return;
+        }
+
+        if (!resolveAttachment(message, userId) || !applyFilter(message) || isDuplicate(userEmail, message)) {
+            return;
+        }
         
         // Save to database
-        boolean saved = messageRepository.saveMessage(userEmail, receiver, message.getContent());
+        ConversationLog conversationLog = server.getConversationLog();
+        String conversation = Conversation.of(userId, receiverId);
+        long seq = reserveSeq(conversationLog, conversation);
+        if (seq < 0) {
+            releaseClaim(userEmail, message);
+            return;
+        }
+        int messageId = messageRepository.saveMessage(userId, receiverId, message.getContent(), seq, message.getAttachment());
         
-        if (!saved) {
+        if (messageId < 0) {
             System.err.println("❌ Failed to save private message to database!");
         }
+        grantAttachment(message, receiverId);
 
         // Prepare private message
         Message privateMsg = new Message();
@@ -217,16 +491,121 @@ public class ClientHandler implements Runnable {
         privateMsg.setReceiver(receiver);
         privateMsg.setContent(message.getContent());
         privateMsg.setTimestamp(System.currentTimeMillis());
+        privateMsg.setConversation(conversation);
+        privateMsg.setSeq(seq);
+        privateMsg.setAttachment(message.getAttachment());
 
-        // Send to receiver
-        server.sendToUser(receiver, privateMsg.toJson());
+        if (messageId >= 0) {
+            privateMsg.setId(messageId);
+            server.getMessageIndex().add(messageId, conversation, message.getContent(), privateMsg.getTimestamp());
+        }
+        conversationLog.record(privateMsg);
+
+        // Send to all sessions of the receiver
+        String json = privateMsg.toJson();
+        server.sendToUser(receiverId, json);
         
-        // Send confirmation to sender
-        sendMessage(privateMsg.toJson());
+        // Send confirmation to all sessions of the sender
+        if (receiverId != userId) {
+            server.sendToUser(userId, json);
+        }
+        acknowledge(userEmail, message.getClientMsgId(), conversation, seq, messageId);
+    }
+
+    /**
+     * Replace the attachment reference sent by the client with the stored file's details.
+     * @return false (after sending an error) if the referenced content is not in the store, or the
+     *         sender has neither uploaded nor received it
+     */
+    private boolean resolveAttachment(Message message, int senderId) {
+        Attachment requested = message.getAttachment();
+        if (requested == null) {
+            return true;
+        }
+        Attachment stored = server.getAttachmentStore().find(requested.getId(), requested.getName());
+        if (stored == null || !messageRepository.canReadAttachment(stored.getId(), senderId)) {
+            sendError("Unknown attachment: " + requested.getId());
+            return false;
+        }
+        message.setAttachment(stored);
+        if (message.getContent() == null) {
+            message.setContent("");
+        }
+        return true;
+    }
+
+    /**
+     * Let the receiver of a sent message (or everyone, for public chat) download its attachment
+     */
+    private void grantAttachment(Message message, int receiverId) {
+        if (message.getAttachment() == null) {
+            return;
+        }
+        try {
+            messageRepository.grantAttachment(message.getAttachment().getId(), receiverId);
+        } catch (SQLException e) {
+            System.err.println("❌ Could not grant attachment " + message.getAttachment().getId() + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Check a submission against the sender's dedup window. A resend of a recent
+     * client message id is answered with the original ack and not processed again.
+     */
+    private boolean isDuplicate(String sender, Message message) {
+        String clientMsgId = message.getClientMsgId();
+        if (clientMsgId == null) {
+            return false;
+        }
+        DedupWindow.Result earlier = server.getDedupWindow().claim(sender, clientMsgId);
+        if (earlier == null) {
+            return false;
+        }
+        ServerMetrics.getInstance().increment("dedup.duplicates");
+        sendAck(clientMsgId, earlier.conversation, earlier.seq, earlier.messageId, true);
+        return true;
+    }
+
+    /**
+     * Give up the dedup claim of a submission that was rejected after {@link #isDuplicate}
+     */
+    private void releaseClaim(String sender, Message message) {
+        if (message.getClientMsgId() != null) {
+            server.getDedupWindow().release(sender, message.getClientMsgId());
+        }
+    }
+
+    private void acknowledge(String sender, String clientMsgId, String conversation, long seq, int messageId) {
+        if (clientMsgId == null) {
+            return;
+        }
+        server.getDedupWindow().complete(sender, clientMsgId, conversation, seq, messageId);
+        sendAck(clientMsgId, conversation, seq, messageId, false);
+    }
+
+    private void sendAck(String clientMsgId, String conversation, long seq, int messageId, boolean duplicate) {
+        JsonObject content = new JsonObject();
+        content.addProperty("clientMsgId", clientMsgId);
+        content.addProperty("duplicate", duplicate);
+        if (seq > 0) {
+            content.addProperty("conversation", conversation);
+            content.addProperty("seq", seq);
+            if (messageId >= 0) {
+                content.addProperty("id", messageId);
+            }
+        } else {
+            // The original submission is still being processed; its ack will follow
+            content.addProperty("pending", true);
+        }
+
+        Message ack = new Message();
+        ack.setType("ack");
+        ack.setContent(content.toString());
+        sendMessage(ack.toJson());
     }
 
     private void handleGetUsers() {
-        List<User> onlineUsers = authService.getOnlineUsers();
+        List<User> onlineUsers = server.getOnlineUsers();
         
         Message response = new Message();
         response.setType("user_list");
@@ -235,8 +614,43 @@ public class ClientHandler implements Runnable {
         sendMessage(response.toJson());
     }
 
+    /**
+     * Send a page of history, oldest first. Content is optional: {"with": "public" or a user's email,
+     * "beforeSeq": page below this sequence number, "limit": page size}; by default the latest public messages.
+     */
     private void handleGetHistory(Message message) {
-        List<Message> history = messageRepository.getRecentPublicMessages(50);
+        String conversation = Conversation.PUBLIC;
+        long beforeSeq = Long.MAX_VALUE;
+        int limit = HISTORY_LIMIT;
+
+        String body = message.getContent();
+        if (body != null && body.trim().startsWith("{")) {
+            JsonObject content = gson.fromJson(body, JsonObject.class);
+            String peer = content.has("with") ? content.get("with").getAsString() : Conversation.PUBLIC;
+            if (!Conversation.PUBLIC.equals(peer)) {
+                int peerId = userEmail != null ? server.getUserDirectory().idOf(peer) : 0;
+                if (peerId <= 0) {
+                    sendError("Unknown conversation: " + peer);
+                    return;
+                }
+                conversation = Conversation.privateKey(userId, peerId);
+            }
+            if (content.has("beforeSeq")) {
+                beforeSeq = content.get("beforeSeq").getAsLong();
+            }
+            if (content.has("limit")) {
+                limit = Math.max(1, Math.min(content.get("limit").getAsInt(), MAX_HISTORY_LIMIT));
+            }
+        }
+
+        List<Message> history;
+        try {
+            history = messageRepository.getMessagesBefore(conversation, beforeSeq, limit);
+        } catch (SQLException e) {
+            sendError("History unavailable while the database is down, please try again later");
+            return;
+        }
+        server.getReactionStore().attachCounts(history);
         
         Message response = new Message();
         response.setType("history");
@@ -245,6 +659,156 @@ public class ClientHandler implements Runnable {
         sendMessage(response.toJson());
     }
 
+    private void handleResume(Message message) {
+        if (userEmail == null) {
+            sendError("Not authenticated");
+            return;
+        }
+
+        JsonObject content = gson.fromJson(message.getContent(), JsonObject.class);
+        sendResume(content.getAsJsonObject("conversations"));
+    }
+
+    /**
+     * Send the messages missed since the given last seen sequence numbers (conversation key -> seq).
+     * Each conversation reports "more": true if the client should resume again for the rest.
+     * Only the first RESUME_CONVERSATIONS conversations of a request are answered.
+     */
+    private void sendResume(JsonObject lastSeen) {
+        ConversationLog conversationLog = server.getConversationLog();
+        JsonObject conversations = new JsonObject();
+
+        if (lastSeen != null) {
+            int checked = 0;
+            for (Map.Entry<String, JsonElement> entry : lastSeen.entrySet()) {
+                if (++checked > RESUME_CONVERSATIONS) {
+                    break;
+                }
+                String conversation = entry.getKey();
+                if (!Conversation.isParticipant(conversation, userId)
+                        || !entry.getValue().isJsonPrimitive() || !entry.getValue().getAsJsonPrimitive().isNumber()) {
+                    continue;
+                }
+
+                List<Message> missed = conversationLog.messagesAfter(conversation, entry.getValue().getAsLong(), RESUME_LIMIT + 1);
+                boolean more = missed.size() > RESUME_LIMIT;
+                if (more) {
+                    missed = missed.subList(0, RESUME_LIMIT);
+                }
+
+                JsonObject result = new JsonObject();
+                result.add("messages", gson.toJsonTree(missed));
+                result.addProperty("more", more);
+                result.addProperty("lastSeq", conversationLog.lastSeq(conversation));
+                conversations.add(conversation, result);
+            }
+        }
+
+        Message response = new Message();
+        response.setType("resume");
+        response.setContent(conversations.toString());
+
+        sendMessage(response.toJson());
+    }
+
+    private void handleSearch(Message message) {
+        if (userEmail == null) {
+            sendError("Not authenticated");
+            return;
+        }
+
+        MessageIndex index = server.getMessageIndex();
+        if (!index.isReady()) {
+            sendError("Search index is still loading, please try again shortly");
+            return;
+        }
+
+        JsonObject content = gson.fromJson(message.getContent(), JsonObject.class);
+        String query = content.has("query") ? content.get("query").getAsString() : "";
+        String peer = content.has("with") ? content.get("with").getAsString() : null;
+        String conversation = null;
+        if (Conversation.PUBLIC.equals(peer)) {
+            conversation = Conversation.PUBLIC;
+        } else if (peer != null) {
+            int peerId = server.getUserDirectory().idOf(peer);
+            conversation = peerId > 0 ? Conversation.privateKey(userId, peerId) : "";
+        }
+        long from = content.has("from") ? content.get("from").getAsLong() : 0;
+        long to = content.has("to") ? content.get("to").getAsLong() : 0;
+        int limit = content.has("limit") ? content.get("limit").getAsInt() : 20;
+
+        List<Integer> ids = index.search(userId, query, conversation, from, to, limit);
+        List<Message> results = messageRepository.getMessagesByIds(ids);
+        server.getReactionStore().attachCounts(results);
+
+        Message response = new Message();
+        response.setType("search_results");
+        response.setContent(gson.toJson(results));
+
+        sendMessage(response.toJson());
+    }
+
+    private void handleSearchUsers(Message message) {
+        if (userEmail == null) {
+            sendError("Not authenticated");
+            return;
+        }
+
+        UserIndex index = server.getUserIndex();
+        if (!index.isReady()) {
+            sendError("User search is still loading, please try again shortly");
+            return;
+        }
+
+        JsonObject content = gson.fromJson(message.getContent(), JsonObject.class);
+        String query = content.has("query") ? content.get("query").getAsString() : "";
+        int limit = content.has("limit") ? content.get("limit").getAsInt() : 10;
+
+        List<User> users = index.search(query, limit);
+        for (User user : users) {
+            user.setStatus(server.isOnline(user.getId()) ? "online" : "offline");
+        }
+
+        Message response = new Message();
+        response.setType("user_search_results");
+        response.setContent(gson.toJson(users));
+
+        sendMessage(response.toJson());
+    }
+
+    /**
+     * Add or take back a reaction: {"messageId": id, "emoji": "..."}.
+     * Nothing is sent back on success; the new counts reach everyone in the conversation,
+     * the reacting user included, with the next "reactions" frame.
+     */
+    private void handleReaction(Message message, boolean add) {
+        if (userEmail == null) {
+            sendError("Not authenticated");
+            return;
+        }
+
+        JsonObject content = gson.fromJson(message.getContent(), JsonObject.class);
+        int messageId = content.has("messageId") ? content.get("messageId").getAsInt() : 0;
+        String emoji = content.has("emoji") ? content.get("emoji").getAsString() : null;
+
+        switch (server.getReactionStore().react(userId, messageId, emoji, add)) {
+            case INVALID:
+                sendError("Invalid reaction");
+                break;
+            case UNKNOWN_MESSAGE:
+                sendError("Unknown message: " + messageId);
+                break;
+            case TOO_MANY_KINDS:
+                sendError("This message has too many different reactions");
+                break;
+            case FAILED:
+                sendError("Could not save the reaction, please try again");
+                break;
+            default:
+                // APPLIED or UNCHANGED
+        }
+    }
+
     private void handleTyping(Message message) {
         if (userEmail == null) return;
 
@@ -254,7 +818,55 @@ public class ClientHandler implements Runnable {
         typingMsg.setUsername(username);
         typingMsg.setContent(message.getContent()); // "typing" or "stopped"
 
-        server.broadcast(typingMsg.toJson(), userEmail);
+        server.broadcast(typingMsg.toJson(), userId);
+    }
+
+    private void scheduleHeartbeat(long delayMs) {
+        heartbeat = server.getTimer().schedule(this::checkHeartbeat, delayMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Runs on the timer thread: reap the connection if the peer has been silent too long,
+     * otherwise ping it when idle. Socket work is handed to the server's executor so a
+     * dead peer can never block the timer.
+     */
+    private void checkHeartbeat() {
+        if (closed.get()) {
+            return;
+        }
+        long idleMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - lastReadNanos);
+        if (idleMs >= IDLE_TIMEOUT_MS) {
+            ServerMetrics.getInstance().increment("heartbeat.reaped");
+            System.out.println("💤 Closing idle connection: " + (userEmail != null ? userEmail : clientAddress));
+            server.execute(this::cleanup);
+            return;
+        }
+        if (idleMs >= HEARTBEAT_INTERVAL_MS) {
+            ServerMetrics.getInstance().increment("heartbeat.pings");
+            server.execute(() -> sendMessage(PING));
+        }
+        scheduleHeartbeat(Math.min(HEARTBEAT_INTERVAL_MS, IDLE_TIMEOUT_MS - idleMs));
+    }
+
+    /**
+     * Send the server counters. They describe the whole server, so only logged-in sessions connecting
+     * from the server's own host (the forwarded address for proxied clients) may read them.
+     */
+    private void handleStats() {
+        if (userEmail == null) {
+            sendError("Not authenticated");
+            return;
+        }
+        if (!clientAddress.isLoopbackAddress()) {
+            sendError("Stats are only available from the server host");
+            return;
+        }
+
+        Message response = new Message();
+        response.setType("stats");
+        response.setContent(gson.toJson(ServerMetrics.getInstance().snapshot()));
+
+        sendMessage(response.toJson());
     }
 
     private void handleLogout() {
@@ -262,7 +874,14 @@ public class ClientHandler implements Runnable {
     }
 
     private void sendRecentMessages() {
-        List<Message> recentMessages = messageRepository.getRecentPublicMessages(50);
+        List<Message> recentMessages;
+        try {
+            recentMessages = messageRepository.getRecentPublicMessages(50);
+        } catch (SQLException e) {
+            sendError("History unavailable while the database is down, please try again later");
+            return;
+        }
+        server.getReactionStore().attachCounts(recentMessages);
         
         Message response = new Message();
         response.setType("history");
@@ -278,7 +897,7 @@ public class ClientHandler implements Runnable {
         statusMsg.setUsername(username);
         statusMsg.setContent(username + " joined the chat");
         
-        server.broadcast(statusMsg.toJson(), userEmail);
+        server.broadcast(statusMsg.toJson(), userId);
         
         // Also send updated user list to everyone
         handleGetUsers();
@@ -292,13 +911,44 @@ public class ClientHandler implements Runnable {
         statusMsg.setUsername(username);
         statusMsg.setContent(username + " left the chat");
         
-        server.broadcast(statusMsg.toJson(), null);
+        server.broadcast(statusMsg.toJson(), 0);
         server.broadcastUserList();
     }
 
+    /**
+     * Ask the client to reconnect after afterMs, when the next server process has taken over.
+     * Logged-in sessions get a resume token to log in again with, if resume tokens are enabled.
+     */
+    void sendReconnect(long afterMs) {
+        JsonObject content = new JsonObject();
+        content.addProperty("reason", "Server restarting");
+        content.addProperty("afterMs", afterMs);
+        ResumeTokens resumeTokens = server.getResumeTokens();
+        if (resumeTokens != null && userId > 0) {
+            content.addProperty("resumeToken", resumeTokens.issue(userId));
+        }
+
+        Message hint = new Message();
+        hint.setType("reconnect");
+        hint.setContent(content.toString());
+        sendMessage(hint.toJson());
+    }
+
+    /**
+     * Close the connection from the server side
+     */
+    void disconnect() {
+        cleanup();
+    }
+
     public void sendMessage(String message) {
-        if (out != null) {
+        if (outbound != null) {
+            outbound.enqueue(message);
+        } else if (out != null) {
+            // Auto-flush: one write per frame
             out.println(message);
+            DELIVERY_FRAMES.increment();
+            DELIVERY_WRITES.increment();
         }
     }
 
@@ -310,22 +960,48 @@ public class ClientHandler implements Runnable {
     }
 
     private void cleanup() {
+        if (!closed.compareAndSet(false, true)) {
+            return;
+        }
+        HashedWheelTimer.Timeout timeout = heartbeat;
+        if (timeout != null) {
+            timeout.cancel();
+        }
+        synchronized (this) {
+            if (rateBuckets != null) {
+                rateLimiter.release(rateBuckets);
+            }
+            if (forwardedAddress != null) {
+                server.releaseForwarded(forwardedAddress);
+            }
+        }
+        server.connectionClosed(clientSocket);
+
         try {
-            if (userEmail != null) {
-                authService.updateUserStatus(userEmail, "offline");
-                server.removeClient(userEmail);
+            server.getTransferServer().revokeToken(transferToken);
+            if (userId > 0 && server.removeClient(userId, this) && !server.isStopping()) {
+                // Last session of this user; a stopping server updates everyone's presence at once
+                authService.updateUserStatus(userId, "offline");
                 broadcastUserLeft();
             }
             
-            if (in != null) in.close();
-            if (out != null) out.close();
+            if (outbound != null) {
+                outbound.flush();
+                outbound.close();
+            }
+            // Closing the socket also unblocks the reader thread
             if (clientSocket != null) clientSocket.close();
+            if (out != null) out.close();
             
         } catch (IOException e) {
             e.printStackTrace();
         }
     }
 
+    public int getUserId() {
+        return userId;
+    }
+
     public String getUserEmail() {
         return userEmail;
     }
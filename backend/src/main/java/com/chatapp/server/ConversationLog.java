@@ -0,0 +1,253 @@
+package com.chatapp.server;
+
+import com.chatapp.database.MessageRepository;
+import com.chatapp.database.SpillLog;
+import com.chatapp.model.Message;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Assigns monotonic sequence numbers per conversation and keeps the most recent
+ * messages of each conversation in a ring buffer, so reconnecting clients can be sent
+ * just the messages they missed without going to the database.
+ *
+ * A conversation only gets a log once a message is sent in it; reading (resume) never creates one.
+ * Rings start small and grow up to capacity as messages arrive. Logs idle for longer than idleMs
+ * are dropped by {@link #evictIdle}, least recently used first once there are more than maxLogs;
+ * the next message continues numbering from the database.
+ */
+public class ConversationLog {
+    private static final int INITIAL_RING_SIZE = 16;
+
+    private final MessageRepository messageRepository;
+    private final int capacity;
+    private final int maxLogs;
+    private final long idleNanos;
+    private final Map<String, Log> logs = new ConcurrentHashMap<>();
+    private final ServerMetrics metrics = ServerMetrics.getInstance();
+
+    public ConversationLog(MessageRepository messageRepository, int capacity) {
+        this(messageRepository, capacity, Integer.MAX_VALUE, Long.MAX_VALUE / 1_000_000);
+    }
+
+    public ConversationLog(MessageRepository messageRepository, int capacity, int maxLogs, long idleMs) {
+        this.messageRepository = messageRepository;
+        this.capacity = Math.max(1, capacity);
+        this.maxLogs = maxLogs;
+        this.idleNanos = Math.max(idleMs * 1_000_000L, Log.MIN_IDLE_NANOS);
+        metrics.gauge("resume.logs", logs::size);
+    }
+
+    /**
+     * Reserve the next sequence number of a conversation.
+     * The first call for a conversation continues from the highest sequence stored in the database.
+     */
+    public long nextSeq(String conversation) {
+        while (true) {
+            long seq = log(conversation).next();
+            if (seq > 0) {
+                return seq;
+            }
+            // The log was evicted between lookup and use: start again from a fresh one
+        }
+    }
+
+    /**
+     * Remember a sent message (with its conversation and seq set) for resuming clients
+     */
+    public void record(Message message) {
+        Log log = logs.get(message.getConversation());
+        if (log != null) {
+            log.record(message);
+        }
+    }
+
+    /**
+     * Get the messages of a conversation after the given sequence number, oldest first.
+     * Served from memory when the whole gap is still buffered, otherwise from the database.
+     * Messages whose sequence was reserved but that are still being saved are skipped;
+     * they reach the client through the normal broadcast.
+     */
+    public List<Message> messagesAfter(String conversation, long afterSeq, int limit) {
+        Log log = logs.get(conversation);
+        List<Message> messages = log != null ? log.after(afterSeq, limit) : null;
+        if (messages != null) {
+            metrics.increment("resume.memory");
+            return messages;
+        }
+        metrics.increment("resume.database");
+        return messageRepository.getMessagesAfterSeq(conversation, afterSeq, limit);
+    }
+
+    /**
+     * Get the last sequence number assigned in a conversation, 0 if it has none or the database
+     * cannot be read
+     */
+    public long lastSeq(String conversation) {
+        Log log = logs.get(conversation);
+        if (log != null) {
+            return log.lastSeq();
+        }
+        try {
+            return messageRepository.getMaxSeq(conversation);
+        } catch (SQLException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Drop the logs idle for longer than idleMs (at least a minute, so saves of their last messages
+     * have finished), then, while there are more than maxLogs, the least recently used ones idle for
+     * at least a minute. Nothing is dropped while writes wait in the spill log, since their sequence
+     * numbers are not in the database yet.
+     */
+    public void evictIdle() {
+        if (SpillLog.getInstance().pending() > 0) {
+            return;
+        }
+        long now = System.nanoTime();
+        int evicted = 0;
+        for (Map.Entry<String, Log> entry : logs.entrySet()) {
+            Log log = entry.getValue();
+            long used = log.lastUsed();
+            if (now - used > idleNanos && log.evictIfUnusedSince(used)) {
+                logs.remove(entry.getKey(), log);
+                evicted++;
+            }
+        }
+        metrics.add("resume.logsEvicted", evicted);
+        if (logs.size() > maxLogs) {
+            evictLeastRecentlyUsed(logs.size() - maxLogs);
+        }
+    }
+
+    private void evictLeastRecentlyUsed(int count) {
+        List<Map.Entry<String, Log>> entries = new ArrayList<>(logs.entrySet());
+        entries.sort(Comparator.comparingLong(entry -> entry.getValue().lastUsed()));
+        long now = System.nanoTime();
+        int evicted = 0;
+        for (Map.Entry<String, Log> entry : entries) {
+            Log log = entry.getValue();
+            // Saves of recently numbered messages may still be running: a reload from the database
+            // would not see them yet
+            if (evicted >= count || now - log.lastUsed() < Log.MIN_IDLE_NANOS) {
+                break;
+            }
+            if (log.evictIfUnusedSince(log.lastUsed())) {
+                logs.remove(entry.getKey(), log);
+                evicted++;
+            }
+        }
+        metrics.add("resume.logsEvicted", evicted);
+    }
+
+    private Log log(String conversation) {
+        Log log = logs.get(conversation);
+        if (log == null) {
+            long start;
+            try {
+                start = messageRepository.getMaxSeq(conversation);
+            } catch (SQLException e) {
+                throw new IllegalStateException("Could not load sequence of " + conversation, e);
+            }
+            log = logs.computeIfAbsent(conversation, c -> new Log(start, capacity));
+        }
+        return log;
+    }
+
+    private static class Log {
+        /** Never evict a log used this recently, whatever maxLogs says */
+        static final long MIN_IDLE_NANOS = 60_000_000_000L;
+
+        private final int capacity;
+        private Message[] ring;
+        private final long firstSeq;
+        private long lastSeq;
+        private volatile long lastUsed = System.nanoTime();
+        private boolean evicted;
+
+        Log(long lastStoredSeq, int capacity) {
+            this.capacity = capacity;
+            this.ring = new Message[Math.min(INITIAL_RING_SIZE, capacity)];
+            this.firstSeq = lastStoredSeq + 1;
+            this.lastSeq = lastStoredSeq;
+        }
+
+        /**
+         * @return the next sequence number, or -1 if this log has been evicted
+         */
+        synchronized long next() {
+            if (evicted) {
+                return -1;
+            }
+            lastUsed = System.nanoTime();
+            long seq = ++lastSeq;
+            if (seq - firstSeq >= ring.length && ring.length < capacity) {
+                grow();
+            }
+            return seq;
+        }
+
+        /**
+         * Double the ring before it would start overwriting, so every message since firstSeq stays
+         * buffered until the ring has reached capacity
+         */
+        private void grow() {
+            Message[] grown = new Message[Math.min(capacity, ring.length * 2)];
+            for (Message message : ring) {
+                if (message != null) {
+                    grown[(int) (message.getSeq() % grown.length)] = message;
+                }
+            }
+            ring = grown;
+        }
+
+        synchronized long lastSeq() {
+            return lastSeq;
+        }
+
+        long lastUsed() {
+            return lastUsed;
+        }
+
+        synchronized boolean evictIfUnusedSince(long used) {
+            if (lastUsed != used) {
+                return false;
+            }
+            evicted = true;
+            return true;
+        }
+
+        synchronized void record(Message message) {
+            long seq = message.getSeq();
+            int slot = (int) (seq % ring.length);
+            Message current = ring[slot];
+            if (current == null || current.getSeq() < seq) {
+                ring[slot] = message;
+            }
+        }
+
+        /**
+         * @return the buffered messages after afterSeq, or null if part of the gap is no longer buffered
+         */
+        synchronized List<Message> after(long afterSeq, int limit) {
+            long from = afterSeq + 1;
+            if (from < firstSeq || from <= lastSeq - ring.length) {
+                return null;
+            }
+            List<Message> messages = new ArrayList<>();
+            for (long seq = from; seq <= lastSeq && messages.size() < limit; seq++) {
+                Message message = ring[(int) (seq % ring.length)];
+                if (message != null && message.getSeq() == seq) {
+                    messages.add(message);
+                }
+            }
+            return messages;
+        }
+    }
+}
@@ -0,0 +1,182 @@
+package com.chatapp.server;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Remembers the client message ids recently submitted by each sender so resent frames
+ * can be acknowledged again instead of being saved and broadcast twice.
+ *
+ * Each sender gets a small fixed-size ring of 64-bit id hashes with the result of the
+ * original submission; entries leave the window when the ring wraps or after the time limit.
+ */
+public class DedupWindow {
+    private final int size;
+    private final long windowNanos;
+    private final Map<String, SenderRing> rings = new ConcurrentHashMap<>();
+
+    public DedupWindow(int size, long window, TimeUnit unit) {
+        this.size = size;
+        this.windowNanos = unit.toNanos(window);
+        ServerMetrics.getInstance().gauge("dedup.senders", rings::size);
+    }
+
+    /**
+     * Claim a client message id for processing.
+     * @return null if the id is new (the caller must then call {@link #complete}),
+     *         otherwise the result of the earlier submission
+     */
+    public Result claim(String sender, String clientMsgId) {
+        SenderRing ring = rings.computeIfAbsent(sender, s -> new SenderRing(size));
+        return ring.claim(hash(clientMsgId), System.nanoTime(), windowNanos);
+    }
+
+    /**
+     * Record the outcome of a claimed submission so duplicates can be acknowledged with it
+     */
+    public void complete(String sender, String clientMsgId, String conversation, long seq, int messageId) {
+        SenderRing ring = rings.get(sender);
+        if (ring != null) {
+            ring.complete(hash(clientMsgId), conversation, seq, messageId);
+        }
+    }
+
+    /**
+     * Forget a claimed submission that could not be processed, so a resend is processed anew
+     * instead of being acknowledged as pending. Completed submissions are kept.
+     */
+    public void release(String sender, String clientMsgId) {
+        SenderRing ring = rings.get(sender);
+        if (ring != null) {
+            ring.release(hash(clientMsgId));
+        }
+    }
+
+    /**
+     * Drop rings of senders that have not submitted anything within the window
+     */
+    public void purgeExpired() {
+        long now = System.nanoTime();
+        Iterator<SenderRing> it = rings.values().iterator();
+        while (it.hasNext()) {
+            if (it.next().isIdle(now, windowNanos)) {
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * 64-bit FNV-1a hash of the id; collisions within one sender's window are practically impossible
+     */
+    private static long hash(String id) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < id.length(); i++) {
+            h ^= id.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        return h;
+    }
+
+    /**
+     * Outcome of an earlier submission; seq is 0 while it is still being processed
+     */
+    public static class Result {
+        public final String conversation;
+        public final long seq;
+        public final int messageId;
+
+        Result(String conversation, long seq, int messageId) {
+            this.conversation = conversation;
+            this.seq = seq;
+            this.messageId = messageId;
+        }
+
+        public boolean isPending() {
+            return seq == 0;
+        }
+    }
+
+    private static class SenderRing {
+        /** Hash of a released slot; an id hashing to it is practically impossible */
+        private static final long RELEASED = 0;
+
+        private final long[] hashes;
+        private final long[] times;
+        private final long[] seqs;
+        private final int[] messageIds;
+        private final String[] conversations;
+        private int next;
+        private int count;
+        private long lastUsed;
+
+        SenderRing(int size) {
+            hashes = new long[size];
+            times = new long[size];
+            seqs = new long[size];
+            messageIds = new int[size];
+            conversations = new String[size];
+        }
+
+        synchronized Result claim(long hash, long now, long windowNanos) {
+            lastUsed = now;
+            int index = find(hash, now, windowNanos);
+            if (index >= 0) {
+                return new Result(conversations[index], seqs[index], messageIds[index]);
+            }
+            hashes[next] = hash;
+            times[next] = now;
+            seqs[next] = 0;
+            messageIds[next] = -1;
+            conversations[next] = null;
+            next = (next + 1) % hashes.length;
+            count = Math.min(count + 1, hashes.length);
+            return null;
+        }
+
+        synchronized void complete(long hash, String conversation, long seq, int messageId) {
+            for (int i = 1; i <= count; i++) {
+                int index = (next - i + hashes.length) % hashes.length;
+                if (hashes[index] == hash) {
+                    conversations[index] = conversation;
+                    seqs[index] = seq;
+                    messageIds[index] = messageId;
+                    return;
+                }
+            }
+        }
+
+        synchronized void release(long hash) {
+            for (int i = 1; i <= count; i++) {
+                int index = (next - i + hashes.length) % hashes.length;
+                if (hashes[index] == hash) {
+                    if (seqs[index] == 0) {
+                        hashes[index] = RELEASED;
+                    }
+                    return;
+                }
+            }
+        }
+
+        synchronized boolean isIdle(long now, long windowNanos) {
+            return now - lastUsed > windowNanos;
+        }
+
+        /**
+         * Search newest to oldest, stopping at the first entry older than the window
+         */
+        private int find(long hash, long now, long windowNanos) {
+            for (int i = 1; i <= count; i++) {
+                int index = (next - i + hashes.length) % hashes.length;
+                if (now - times[index] > windowNanos) {
+                    return -1;
+                }
+                if (hashes[index] == hash) {
+                    return index;
+                }
+            }
+            return -1;
+        }
+    }
+}
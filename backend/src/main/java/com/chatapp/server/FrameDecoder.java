@@ -0,0 +1,160 @@
+package com.chatapp.server;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Splits a connection's inbound bytes into newline-delimited UTF-8 frames.
+ *
+ * Bytes are read into a buffer from the {@link BufferPool}, and each complete frame is decoded
+ * straight from it into its String, so the only allocation per frame is the frame itself.
+ * While no bytes are buffered the buffer goes back to the pool and the decoder waits for the
+ * first byte of the next frame on its own, so idle connections hold no buffer; a connection
+ * holds one only while part of a frame has arrived. This costs one extra read per burst.
+ * A frame longer than the pooled buffer is collected in a temporary array, which is dropped again
+ * once the frame is complete. As soon as more than maxFrameBytes arrive without a newline the
+ * decoder gives up with {@link FrameTooLargeException}, without reading the rest.
+ *
+ * Not thread-safe: only the connection's reader thread may use it.
+ */
+final class FrameDecoder {
+    private final InputStream in;
+    private final BufferPool pool;
+    private final int maxFrameBytes;
+
+    private final byte[] first = new byte[1];
+    private byte[] buffer; // null while waiting for a frame
+    private int start; // first unconsumed byte
+    private int end; // end of the bytes read so far
+    private int scanned; // bytes before this index are known not to be newlines
+    private byte[] overflow; // head of a frame longer than the buffer, null if none
+    private int overflowLength;
+
+    static final class FrameTooLargeException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        FrameTooLargeException(int maxFrameBytes) {
+            super("Frame exceeds " + maxFrameBytes + " bytes");
+        }
+    }
+
+    FrameDecoder(InputStream in, BufferPool pool, int maxFrameBytes) {
+        this.in = in;
+        this.pool = pool;
+        this.maxFrameBytes = maxFrameBytes;
+    }
+
+    /**
+     * Read the next frame, without its line terminator ("\n" or "\r\n")
+     *
+     * @return the frame, or null at the end of the stream
+     */
+    String readFrame() throws IOException {
+        while (true) {
+            for (int i = scanned; i < end; i++) {
+                if (buffer[i] == '\n') {
+                    String frame = decode(i);
+                    start = i + 1;
+                    scanned = start;
+                    return frame;
+                }
+            }
+            scanned = end;
+
+            if (start == end && overflow == null) {
+                // Nothing buffered: wait for the next frame without holding a buffer
+                if (buffer != null) {
+                    pool.release(buffer);
+                    buffer = null;
+                }
+                start = 0;
+                end = 0;
+                scanned = 0;
+                int read = in.read(first, 0, 1);
+                if (read < 0) {
+                    return null;
+                }
+                buffer = pool.acquire();
+                buffer[end++] = first[0];
+                continue;
+            }
+
+            if (end == buffer.length) {
+                if (start > 0) {
+                    // Make room by moving the partial frame to the front
+                    System.arraycopy(buffer, start, buffer, 0, end - start);
+                    end -= start;
+                } else {
+                    // The partial frame fills the whole buffer: set it aside
+                    appendOverflow(0, end);
+                    end = 0;
+                }
+                start = 0;
+                scanned = end;
+            }
+            if (overflowLength + end - start > maxFrameBytes) {
+                throw new FrameTooLargeException(maxFrameBytes);
+            }
+
+            int read = in.read(buffer, end, buffer.length - end);
+            if (read < 0) {
+                return null;
+            }
+            end += read;
+        }
+    }
+
+    /**
+     * Decode the frame ending before the newline at index newline
+     */
+    private String decode(int newline) throws FrameTooLargeException {
+        if (overflow == null) {
+            int length = newline - start;
+            if (length > 0 && buffer[newline - 1] == '\r') {
+                length--;
+            }
+            if (length > maxFrameBytes) {
+                throw new FrameTooLargeException(maxFrameBytes);
+            }
+            return new String(buffer, start, length, StandardCharsets.UTF_8);
+        }
+
+        appendOverflow(start, newline);
+        int length = overflowLength;
+        if (length > 0 && overflow[length - 1] == '\r') {
+            length--;
+        }
+        if (length > maxFrameBytes) {
+            throw new FrameTooLargeException(maxFrameBytes);
+        }
+        String frame = new String(overflow, 0, length, StandardCharsets.UTF_8);
+        overflow = null;
+        overflowLength = 0;
+        return frame;
+    }
+
+    private void appendOverflow(int from, int to) {
+        int length = to - from;
+        if (overflow == null) {
+            overflow = new byte[Math.max(length, buffer.length) * 2];
+        } else if (overflowLength + length > overflow.length) {
+            overflow = Arrays.copyOf(overflow, Math.max(overflowLength + length, overflow.length * 2));
+        }
+        System.arraycopy(buffer, from, overflow, overflowLength, length);
+        overflowLength += length;
+    }
+
+    /**
+     * Give the buffer (if any) back to the pool; call once, from the reader thread, when the
+     * connection is done
+     */
+    void release() {
+        if (buffer != null) {
+            pool.release(buffer);
+            buffer = null;
+        }
+        overflow = null;
+    }
+}
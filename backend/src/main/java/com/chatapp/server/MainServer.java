@@ -1,34 +1,147 @@
 package com.chatapp.server;
 
+import com.chatapp.archive.ArchiveJob;
+import com.chatapp.archive.MessageArchive;
+import com.chatapp.attachment.AttachmentStore;
+import com.chatapp.auth.ResumeTokens;
 import com.chatapp.auth.UserAuthService;
+import com.chatapp.auth.UserDirectory;
 import com.chatapp.database.DatabaseManager;
+import com.chatapp.database.MessageRepository;
+import com.chatapp.database.SpillLog;
+import com.chatapp.filter.ContentFilter;
+import com.chatapp.jfr.FanOutEvent;
+import com.chatapp.jfr.FrameTrace;
+import com.chatapp.model.Conversation;
 import com.chatapp.model.Message;
 import com.chatapp.model.User;
+import com.chatapp.search.MessageIndex;
+import com.chatapp.search.UserIndex;
 import com.google.gson.Gson;
 
 import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.net.StandardSocketOptions;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 public class MainServer {
-    private static final int PORT = 8081;
-    private final Map<String, ClientHandler> connectedClients;
+    private static final int INDEX_CHUNK_SIZE = 50_000;
+    private static final byte[] REJECTED_PREFIX = "{\"type\":\"error\",\"content\":\"".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] REJECTED_SUFFIX = "\"}\n".getBytes(StandardCharsets.UTF_8);
+    private final int port;
+    private final SessionRegistry sessions;
     private final ExecutorService threadPool;
-    private ServerSocket serverSocket;
+    private final int acceptorCount;
+    private final int acceptBacklog;
+    private volatile ServerSocket[] listeners = new ServerSocket[0];
     private final UserAuthService authService;
+    private final UserDirectory userDirectory;
+    private final MessageRepository messageRepository;
+    private final UserIndex userIndex;
     private final Gson gson;
+    private final MessageIndex messageIndex;
+    private final AdmissionController admissionController;
+    private final RateLimiter rateLimiter;
+    private final ConversationLog conversationLog;
+    private final HashedWheelTimer timer;
+    private final DedupWindow dedupWindow;
+    private final AttachmentStore attachmentStore;
+    private final TransferServer transferServer;
+    private final WriteBatcher writeBatcher; // null unless batched delivery is enabled
+    private final BufferPool bufferPool;
+    private final ContentFilter contentFilter; // null when message filtering is disabled
+    private final long filterReloadMs;
+    private final ReactionStore reactionStore;
+    private final long reactionFlushMs;
+    private final long reactionBroadcastMs;
+    private final long uploadExpiryMs;
+    private final ArchiveJob archiveJob; // null when archiving is disabled
+    private final long archiveIntervalMs;
+    private final ResumeTokens resumeTokens; // null when no resume secret is configured
+    private final long drainMs;
+    private final long spillReplayMs;
+    private final int spillReplayBatch;
+    private final AtomicBoolean spillReplaying = new AtomicBoolean();
     private volatile boolean running = false;
+    private volatile boolean draining = false;
 
     public MainServer() {
-        this.connectedClients = new ConcurrentHashMap<>();
+        this.sessions = new SessionRegistry();
         this.threadPool = Executors.newCachedThreadPool();
         this.authService = new UserAuthService();
+        this.userDirectory = new UserDirectory(authService);
+        this.userIndex = new UserIndex();
         this.gson = new Gson();
+        this.messageRepository = new MessageRepository();
+        this.messageIndex = new MessageIndex();
+
+        ServerConfig config = ServerConfig.getInstance();
+        this.port = config.getInt("server.port", 8081);
+        this.acceptorCount = Math.max(1, config.getInt("server.acceptors",
+                Math.min(4, Runtime.getRuntime().availableProcessors())));
+        this.acceptBacklog = config.getInt("server.acceptBacklog", 1024);
+        this.admissionController = new AdmissionController(
+                config.getInt("server.maxConnections", 10000),
+                config.getInt("server.maxConnectionsPerIp", 200),
+                config.getString("server.trustedProxies", "127.0.0.1,::1"));
+        this.rateLimiter = new RateLimiter(config);
+        this.conversationLog = new ConversationLog(messageRepository, config.getInt("resume.bufferSize", 1024),
+                config.getInt("resume.maxLogs", 10000), config.getLong("resume.idleMs", 300_000));
+        this.timer = new HashedWheelTimer("timer", config.getLong("timer.tickMs", 100), TimeUnit.MILLISECONDS,
+                config.getInt("timer.wheelSize", 512));
+        this.dedupWindow = new DedupWindow(config.getInt("dedup.windowSize", 64),
+                config.getLong("dedup.windowMs", 300_000), TimeUnit.MILLISECONDS);
+        try {
+            this.attachmentStore = new AttachmentStore(Paths.get(config.getString("attachments.dir", "attachments")),
+                    config.getLong("attachments.maxSize", 25L * 1024 * 1024),
+                    config.getInt("attachments.maxUploadsPerUser", 10),
+                    config.getLong("attachments.maxUploadBytesPerUser", 100L * 1024 * 1024));
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not create the attachment store", e);
+        }
+        this.transferServer = new TransferServer(this, attachmentStore, config);
+        this.uploadExpiryMs = config.getLong("attachments.uploadExpiryMs", 86_400_000);
+        this.archiveJob = config.getBoolean("archive.enabled", true)
+                ? new ArchiveJob(new MessageRepository(), MessageArchive.getInstance(),
+                        (long) (config.getDouble("archive.maxAgeDays", 180) * TimeUnit.DAYS.toMillis(1)),
+                        config.getInt("archive.batchSize", 10_000))
+                : null;
+        this.archiveIntervalMs = config.getLong("archive.intervalMs", 3_600_000);
+        if (config.getBoolean("filter.enabled", true)) {
+            this.contentFilter = new ContentFilter(Paths.get(config.getString("filter.termsFile", "banned_terms.txt")),
+                    ContentFilter.Mode.valueOf(config.getString("filter.mode", "mask").toUpperCase()));
+            contentFilter.reloadIfChanged();
+        } else {
+            this.contentFilter = null;
+        }
+        this.filterReloadMs = config.getLong("filter.reloadMs", 5000);
+        this.reactionStore = new ReactionStore(messageRepository, this::publish,
+                config.getInt("reactions.cacheMessages", 10_000), config.getInt("reactions.maxKindsPerMessage", 20));
+        this.reactionFlushMs = config.getLong("reactions.flushMs", 1000);
+        this.reactionBroadcastMs = config.getLong("reactions.broadcastMs", 250);
+        String resumeSecret = config.getString("session.resumeSecret", "");
+        this.resumeTokens = resumeSecret.isEmpty() ? null
+                : new ResumeTokens(resumeSecret, config.getLong("session.resumeTokenTtlMs", 60_000));
+        this.drainMs = config.getLong("shutdown.drainMs", 10_000);
+        this.spillReplayMs = config.getLong("db.spill.replayMs", 1000);
+        this.spillReplayBatch = config.getInt("db.spill.replayBatch", 500);
+        this.bufferPool = new BufferPool(config.getInt("inbound.bufferBytes", 8192), config.getInt("inbound.pooledBuffers", 1024));
+        this.writeBatcher = config.getBoolean("delivery.batching", false)
+                ? new WriteBatcher(config.getLong("delivery.tickMs", 2), config.getInt("delivery.batchBytes", 16 * 1024), threadPool)
+                : null;
     }
 
     public void start() {
@@ -43,99 +156,571 @@ public class MainServer {
                 System.err.println("3. Run the schema.sql file to create tables");
                 return;
             }
+            // Writes spilled during an outage before the last shutdown; their sequence numbers must be
+            // in the database before any conversation continues numbering from it
+            replaySpill();
+
+            // Build the search index in the background; messages saved meanwhile are queued
+            Thread indexBuilder = new Thread(() -> messageIndex.rebuild(new MessageRepository(),
+                    Runtime.getRuntime().availableProcessors(), INDEX_CHUNK_SIZE), "search-index-rebuild");
+            indexBuilder.setDaemon(true);
+            indexBuilder.start();
+            Thread userIndexLoader = new Thread(this::loadUserIndex, "user-index-load");
+            userIndexLoader.setDaemon(true);
+            userIndexLoader.start();
 
-            serverSocket = new ServerSocket(PORT);
+            scheduleDedupPurge();
+            scheduleConversationLogEviction();
+            scheduleUploadPurge();
+            if (archiveJob != null) {
+                scheduleArchive();
+            }
+            if (contentFilter != null) {
+                scheduleFilterReload();
+            }
+            scheduleReactionFlush();
+            scheduleReactionBroadcast();
+            scheduleSpillReplay();
+            transferServer.start();
+
+            // Opened as channels so accepted sockets have a SocketChannel for gathering writes.
+            // With SO_REUSEPORT each acceptor gets a listening socket of its own and the kernel spreads
+            // new connections over them; otherwise all acceptors take turns on a single one.
+            List<ServerSocket> opened = new ArrayList<>();
+            boolean shared;
+            do {
+                ServerSocketChannel serverChannel = ServerSocketChannel.open();
+                serverChannel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+                shared = allowPortSharing(serverChannel);
+                serverChannel.bind(new InetSocketAddress(port), acceptBacklog);
+                opened.add(serverChannel.socket());
+            } while (shared && opened.size() < acceptorCount);
+            listeners = opened.toArray(new ServerSocket[0]);
             running = true;
 
             System.out.println("╔════════════════════════════════════════╗");
             System.out.println("║   🚀 Chat Server Started Successfully  ║");
             System.out.println("╚════════════════════════════════════════╝");
-            System.out.println("📡 Server listening on port: " + PORT);
+            System.out.println("📡 Server listening on port: " + port + " (" + acceptorCount + " acceptors, "
+                    + listeners.length + (listeners.length == 1 ? " socket)" : " sockets)"));
             System.out.println("💾 Database: Connected");
             System.out.println("🔐 Authentication: Enabled");
             System.out.println("⏳ Waiting for clients...\n");
 
-            // Accept client connections
-            while (running) {
-                try {
-                    Socket clientSocket = serverSocket.accept();
-                    System.out.println("🔌 New client connected: " + clientSocket.getInetAddress());
+            // Accept client connections: this thread is the first acceptor
+            for (int i = 1; i < acceptorCount; i++) {
+                ServerSocket listener = listeners[i % listeners.length];
+                Thread acceptor = new Thread(() -> acceptLoop(listener), "acceptor-" + i);
+                acceptor.setDaemon(true);
+                acceptor.start();
+            }
+            acceptLoop(listeners[0]);
 
-                    ClientHandler clientHandler = new ClientHandler(clientSocket, this);
-                    threadPool.execute(clientHandler);
+        } catch (IOException e) {
+            System.err.println("❌ Could not start server on port " + port);
+            e.printStackTrace();
+        } finally {
+            // A draining server is shut down by whoever started the drain, once it is complete
+            if (!draining) {
+                shutdown();
+            }
+        }
+    }
+
+    /**
+     * Accept connections until the server stops. Per connection this only checks the admission
+     * limits and hands a new ClientHandler to the pool; nothing is logged.
+     */
+    private void acceptLoop(ServerSocket listener) {
+        while (running && !draining) {
+            try {
+                Socket clientSocket = listener.accept();
+
+                String rejection = admissionController.tryAdmit(clientSocket.getInetAddress());
+                if (rejection != null) {
+                    reject(clientSocket, rejection);
+                    continue;
+                }
+                threadPool.execute(new ClientHandler(clientSocket, this));
 
-                } catch (IOException e) {
-                    if (running) {
-                        System.err.println("❌ Error accepting client connection: " + e.getMessage());
-                    }
+            } catch (IOException e) {
+                if (running && !draining) {
+                    System.err.println("❌ Error accepting client connection: " + e.getMessage());
                 }
             }
+        }
+    }
+
+    /**
+     * Let other sockets bind the same port while this one is open, where the platform supports it
+     * (SO_REUSEPORT): the next server process during a restart, or this server's other acceptors.
+     * New connections are spread over all of them.
+     * @return true if the option was set
+     */
+    static boolean allowPortSharing(ServerSocketChannel channel) throws IOException {
+        if (ServerConfig.getInstance().getBoolean("server.reusePort", true)
+                && channel.supportedOptions().contains(StandardSocketOptions.SO_REUSEPORT)) {
+            channel.setOption(StandardSocketOptions.SO_REUSEPORT, true);
+            return true;
+        }
+        return false;
+    }
+
+    private void closeListeners() {
+        for (ServerSocket listener : listeners) {
+            try {
+                listener.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
 
+    /**
+     * Hand the connected clients over to the next server process on the same port.
+     *
+     * Stops accepting, so new connections go to the other process, writes everything still held
+     * in memory, marks all connected users offline in one statement and sends every session a
+     * "reconnect" hint, with a resume token if configured. The hints tell the clients to come back
+     * at moments spread over the first half of shutdown.drainMs, so the next process is not hit by
+     * all of them at once; sessions still connected when the window ends are closed.
+     * Chat writes are refused meanwhile (see {@link #isDraining()}).
+     */
+    public void drain() {
+        if (!running || draining || drainMs <= 0) {
+            return;
+        }
+        draining = true;
+        long start = System.currentTimeMillis();
+        closeListeners();
+        transferServer.stop();
+
+        ClientHandler[] handlers = sessions.all();
+        System.out.println("🚰 Draining " + handlers.length + " sessions over " + drainMs + " ms");
+        reactionStore.flush();
+        reactionStore.publishChanges();
+        // The next process marks users online again as they log in there
+        authService.setOffline(sessions.onlineUserIds());
+
+        for (int i = 0; i < handlers.length; i++) {
+            handlers[i].sendReconnect(drainMs / 2 * i / handlers.length);
+        }
+
+        long deadline = start + drainMs;
+        try {
+            while (sessions.sessionCount() > 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(50);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        ClientHandler[] remaining = sessions.all();
+        for (ClientHandler handler : remaining) {
+            handler.disconnect();
+        }
+        System.out.println("🚰 Drain complete after " + (System.currentTimeMillis() - start) + " ms, "
+                + (handlers.length - remaining.length) + " sessions left by themselves, " + remaining.length + " closed");
+    }
+
+    /**
+     * Check whether the server is handing its clients over to another process
+     */
+    public boolean isDraining() {
+        return draining;
+    }
+
+    /**
+     * Check whether the server is draining or shutting down; sessions closing now leave
+     * presence updates to the server
+     */
+    public boolean isStopping() {
+        return draining || !running;
+    }
+
+    /**
+     * Get the resume token issuer, or null if resume tokens are disabled
+     */
+    public ResumeTokens getResumeTokens() {
+        return resumeTokens;
+    }
+
+    /**
+     * Turn away a connection over the admission limits with a single error frame
+     */
+    private void reject(Socket socket, String reason) {
+        try (Socket s = socket) {
+            OutputStream out = s.getOutputStream();
+            out.write(REJECTED_PREFIX);
+            out.write(reason.getBytes(StandardCharsets.UTF_8));
+            out.write(REJECTED_SUFFIX);
         } catch (IOException e) {
-            System.err.println("❌ Could not start server on port " + PORT);
+            // Nothing to do, the connection is being dropped anyway
+        }
+    }
+
+    /**
+     * Called once by a client handler when its connection is closed
+     */
+    void connectionClosed(Socket socket) {
+        admissionController.release(socket.getInetAddress());
+    }
+
+    /**
+     * Whether connections from this address may forward the address of the client behind them
+     */
+    boolean isTrustedProxy(InetAddress address) {
+        return admissionController.isTrustedProxy(address);
+    }
+
+    /**
+     * Apply the per-IP connection limit to a client address forwarded by a trusted proxy
+     * @return null if admitted (release with {@link #releaseForwarded}), otherwise the rejection reason
+     */
+    String admitForwarded(InetAddress client) {
+        return admissionController.tryAdmitForwarded(client);
+    }
+
+    /**
+     * Called once by a client handler whose forwarded address was admitted, when its connection is closed
+     */
+    void releaseForwarded(InetAddress client) {
+        admissionController.releaseForwarded(client);
+    }
+
+    private void loadUserIndex() {
+        long start = System.currentTimeMillis();
+        try {
+            authService.loadIndex(userIndex);
+        } catch (SQLException e) {
+            System.err.println("❌ Failed to load the user index:");
             e.printStackTrace();
-        } finally {
-            shutdown();
         }
+        userIndex.finishLoad();
+        System.out.println("👥 User index built: " + userIndex.size() + " users ("
+                + (System.currentTimeMillis() - start) + " ms)");
+    }
+
+    public RateLimiter getRateLimiter() {
+        return rateLimiter;
     }
 
     /**
-     * Add a client to the connected clients map
+     * Register a logged-in session
+     * @return true if it is the user's first session
      */
-    public void addClient(String email, ClientHandler handler) {
-        connectedClients.put(email, handler);
-        System.out.println("👤 Client added: " + email + " (Total: " + connectedClients.size() + ")");
+    public boolean addClient(int userId, ClientHandler handler) {
+        boolean first = sessions.add(userId, handler);
+        System.out.println("👤 Client added: " + handler.getUserEmail() + " (Total: " + sessions.sessionCount() + ")");
+        return first;
     }
 
     /**
-     * Remove a client from connected clients
+     * Unregister a session
+     * @return true if it was the user's last session
      */
-    public void removeClient(String email) {
-        connectedClients.remove(email);
-        System.out.println("👋 Client removed: " + email + " (Total: " + connectedClients.size() + ")");
+    public boolean removeClient(int userId, ClientHandler handler) {
+        boolean last = sessions.remove(userId, handler);
+        System.out.println("👋 Client removed: " + handler.getUserEmail() + " (Total: " + sessions.sessionCount() + ")");
+        return last;
     }
 
     /**
-     * Broadcast message to all connected clients except the sender
+     * Broadcast message to all connected sessions except those of one user
+     * @param excludeUserId the user not to send to, 0 to send to everyone
      */
-    public void broadcast(String message, String senderEmail) {
-        for (Map.Entry<String, ClientHandler> entry : connectedClients.entrySet()) {
-            if (senderEmail == null || !entry.getKey().equals(senderEmail)) {
-                entry.getValue().sendMessage(message);
+    public void broadcast(String message, int excludeUserId) {
+        FanOutEvent event = new FanOutEvent();
+        event.begin();
+        int recipients = 0;
+        for (ClientHandler handler : sessions.all()) {
+            if (handler.getUserId() != excludeUserId) {
+                handler.sendMessage(message);
+                recipients++;
             }
         }
+        commit(event, "broadcast", recipients);
     }
 
     /**
-     * Send message to a specific user
+     * Send message to every session of a user
      */
-    public void sendToUser(String email, String message) {
-        ClientHandler handler = connectedClients.get(email);
-        if (handler != null) {
+    public void sendToUser(int userId, String message) {
+        FanOutEvent event = new FanOutEvent();
+        event.begin();
+        ClientHandler[] handlers = sessions.sessions(userId);
+        if (handlers.length == 0) {
+            System.err.println("❌ User not online: " + userId);
+        }
+        for (ClientHandler handler : handlers) {
             handler.sendMessage(message);
-        } else {
-            System.err.println("❌ User not found: " + email);
+        }
+        commit(event, "user", handlers.length);
+    }
+
+    private static void commit(FanOutEvent event, String target, int recipients) {
+        if (event.shouldCommit()) {
+            event.frameId = FrameTrace.current();
+            event.target = target;
+            event.recipients = recipients;
+            event.commit();
+        }
+    }
+
+    /**
+     * Send a frame to everyone who can see a conversation: all sessions for public chat,
+     * otherwise the sessions of its two participants (once, for a conversation with oneself)
+     */
+    public void publish(String conversation, String message) {
+        int[] participants = Conversation.participants(conversation);
+        if (participants == null) {
+            broadcast(message, 0);
+            return;
+        }
+        if (isOnline(participants[0])) {
+            sendToUser(participants[0], message);
+        }
+        if (participants[1] != participants[0] && isOnline(participants[1])) {
+            sendToUser(participants[1], message);
         }
     }
 
+    /**
+     * Get the online users from the database, or, while it is unavailable, the users with a session
+     * on this server
+     */
+    public List<User> getOnlineUsers() {
+        List<User> onlineUsers = DatabaseManager.getInstance().isAvailable() ? authService.getOnlineUsers() : null;
+        if (onlineUsers != null) {
+            return onlineUsers;
+        }
+        onlineUsers = new ArrayList<>();
+        for (int userId : sessions.onlineUserIds()) {
+            User interned = userDirectory.get(userId);
+            if (interned != null) {
+                User user = new User();
+                user.setId(interned.getId());
+                user.setEmail(interned.getEmail());
+                user.setUsername(interned.getUsername());
+                user.setStatus("online");
+                onlineUsers.add(user);
+            }
+        }
+        ServerMetrics.getInstance().increment("users.fromMemory");
+        return onlineUsers;
+    }
+
     /**
      * Broadcast updated user list to all clients
      */
     public void broadcastUserList() {
-        List<User> onlineUsers = authService.getOnlineUsers();
+        List<User> onlineUsers = getOnlineUsers();
         
         Message userListMsg = new Message();
         userListMsg.setType("user_list");
         userListMsg.setContent(gson.toJson(onlineUsers));
         
-        broadcast(userListMsg.toJson(), null);
+        broadcast(userListMsg.toJson(), 0);
+    }
+
+    private void scheduleDedupPurge() {
+        timer.schedule(() -> {
+            if (running) {
+                threadPool.execute(dedupWindow::purgeExpired);
+                scheduleDedupPurge();
+            }
+        }, 1, TimeUnit.MINUTES);
+    }
+
+    private void scheduleConversationLogEviction() {
+        timer.schedule(() -> {
+            if (running) {
+                threadPool.execute(conversationLog::evictIdle);
+                scheduleConversationLogEviction();
+            }
+        }, 1, TimeUnit.MINUTES);
+    }
+
+    private void scheduleUploadPurge() {
+        timer.schedule(() -> {
+            if (running) {
+                threadPool.execute(() -> attachmentStore.purgeStaleUploads(uploadExpiryMs));
+                scheduleUploadPurge();
+            }
+        }, 1, TimeUnit.HOURS);
+    }
+
+    private void scheduleArchive() {
+        timer.schedule(() -> {
+            if (running) {
+                threadPool.execute(archiveJob);
+                scheduleArchive();
+            }
+        }, archiveIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    private void scheduleFilterReload() {
+        timer.schedule(() -> {
+            if (running) {
+                threadPool.execute(contentFilter::reloadIfChanged);
+                scheduleFilterReload();
+            }
+        }, filterReloadMs, TimeUnit.MILLISECONDS);
+    }
+
+    private void scheduleReactionFlush() {
+        timer.schedule(() -> {
+            if (running) {
+                threadPool.execute(reactionStore::flush);
+                scheduleReactionFlush();
+            }
+        }, reactionFlushMs, TimeUnit.MILLISECONDS);
+    }
+
+    private void scheduleSpillReplay() {
+        timer.schedule(() -> {
+            if (running) {
+                if ((!DatabaseManager.getInstance().isAvailable() || SpillLog.getInstance().pending() > 0)
+                        && spillReplaying.compareAndSet(false, true)) {
+                    threadPool.execute(() -> {
+                        try {
+                            replaySpill();
+                        } finally {
+                            spillReplaying.set(false);
+                        }
+                    });
+                }
+                scheduleSpillReplay();
+            }
+        }, spillReplayMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * While the database circuit is open, probe the database; once it is back, write the spilled
+     * messages and status changes to it and index the replayed messages
+     */
+    private void replaySpill() {
+        DatabaseManager dbManager = DatabaseManager.getInstance();
+        if (!dbManager.isAvailable() && !dbManager.testConnection()) {
+            return;
+        }
+        if (SpillLog.getInstance().pending() == 0) {
+            return;
+        }
+        try {
+            int replayed = messageRepository.replaySpill(spillReplayBatch, message -> {
+                if (running) { // at startup the index rebuild picks them up from the database
+                    messageIndex.add(message.getId(), message.getConversation(), message.getContent(), message.getTimestamp());
+                }
+            });
+            System.out.println("💾 Replayed " + replayed + " spilled database writes");
+            if (running) {
+                broadcastUserList();
+            }
+        } catch (SQLException e) {
+            System.err.println("❌ Replaying spilled database writes stopped: " + e.getMessage());
+        }
+    }
+
+    private void scheduleReactionBroadcast() {
+        timer.schedule(() -> {
+            if (running) {
+                threadPool.execute(reactionStore::publishChanges);
+                scheduleReactionBroadcast();
+            }
+        }, reactionBroadcastMs, TimeUnit.MILLISECONDS);
+    }
+
+    public ReactionStore getReactionStore() {
+        return reactionStore;
+    }
+
+    /**
+     * Get the banned-term filter, or null if filtering is disabled
+     */
+    public ContentFilter getContentFilter() {
+        return contentFilter;
+    }
+
+    public AttachmentStore getAttachmentStore() {
+        return attachmentStore;
+    }
+
+    /**
+     * Get the pool of connection read buffers
+     */
+    BufferPool getBufferPool() {
+        return bufferPool;
+    }
+
+    /**
+     * Get the batcher for batched delivery, or null when frames are written one by one
+     */
+    WriteBatcher getWriteBatcher() {
+        return writeBatcher;
+    }
+
+    public TransferServer getTransferServer() {
+        return transferServer;
+    }
+
+    public DedupWindow getDedupWindow() {
+        return dedupWindow;
+    }
+
+    public HashedWheelTimer getTimer() {
+        return timer;
+    }
+
+    /**
+     * Run a task on the server's worker pool
+     */
+    void execute(Runnable task) {
+        threadPool.execute(task);
+    }
+
+    /**
+     * Services shared by all connections; they keep no per-connection state
+     */
+    public UserAuthService getAuthService() {
+        return authService;
+    }
+
+    public MessageRepository getMessageRepository() {
+        return messageRepository;
+    }
+
+    public Gson getGson() {
+        return gson;
+    }
+
+    public UserDirectory getUserDirectory() {
+        return userDirectory;
+    }
+
+    public UserIndex getUserIndex() {
+        return userIndex;
+    }
+
+    /**
+     * Check whether a user has at least one session
+     */
+    public boolean isOnline(int userId) {
+        return sessions.sessions(userId).length > 0;
+    }
+
+    public ConversationLog getConversationLog() {
+        return conversationLog;
+    }
+
+    public MessageIndex getMessageIndex() {
+        return messageIndex;
     }
 
     /**
      * Get number of connected clients
      */
     public int getConnectedClientsCount() {
-        return connectedClients.size();
+        return sessions.sessionCount();
     }
 
     /**
@@ -146,40 +731,39 @@ public class MainServer {
         
         System.out.println("\n🛑 Shutting down server...");
 
-        // Close all client connections
-        for (ClientHandler handler : connectedClients.values()) {
-            try {
-                if (handler.getUserEmail() != null) {
-                    authService.updateUserStatus(handler.getUserEmail(), "offline");
-                }
-            } catch (Exception e) {
-                e.printStackTrace();
-            }
+        // Mark everyone still connected as offline, in one statement; a drain did that already
+        if (!draining) {
+            authService.setOffline(sessions.onlineUserIds());
+        }
+        for (ClientHandler handler : sessions.all()) {
+            handler.disconnect();
         }
+        sessions.clear();
 
-        connectedClients.clear();
+        // Write reactions still waiting for the next periodic flush
+        reactionStore.flush();
 
-        // Shutdown thread pool
+        // Shutdown thread pool and timer
         threadPool.shutdown();
-
-        // Close server socket
-        try {
-            if (serverSocket != null && !serverSocket.isClosed()) {
-                serverSocket.close();
-            }
-        } catch (IOException e) {
-            e.printStackTrace();
+        timer.stop();
+        transferServer.stop();
+        if (writeBatcher != null) {
+            writeBatcher.stop();
         }
 
+        // Close the listening sockets
+        closeListeners();
+
         System.out.println("✅ Server shutdown complete");
     }
 
     public static void main(String[] args) {
         MainServer server = new MainServer();
         
-        // Add shutdown hook for graceful shutdown
+        // Add shutdown hook for graceful shutdown: hand the clients over first (shutdown.drainMs)
         Runtime.getRuntime().addShutdownHook(new Thread(() -> {
             System.out.println("\n⚠️  Shutdown signal received");
+            server.drain();
             server.shutdown();
         }));
 
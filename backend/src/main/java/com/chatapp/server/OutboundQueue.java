@@ -0,0 +1,110 @@
+package com.chatapp.server;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Outgoing frames of one connection in batched delivery mode.
+ *
+ * Frames are queued instead of written one by one. The {@link WriteBatcher} flushes the queue
+ * once per tick, or the sender does right away once batchBytes are pending, with a single
+ * gathering write of all queued frames. Flushes of one connection never overlap.
+ */
+final class OutboundQueue {
+    private final SocketChannel channel;
+    private final WriteBatcher batcher;
+    private final int batchBytes;
+    private final Object writeLock = new Object();
+    private final LongAdder frames = ServerMetrics.getInstance().counter("delivery.frames");
+    private final LongAdder writes = ServerMetrics.getInstance().counter("delivery.writes");
+
+    private List<ByteBuffer> pending = new ArrayList<>(); // guarded by this
+    private int pendingBytes; // guarded by this
+    private boolean dirty; // guarded by this: registered with the batcher for the next tick
+    private boolean closed; // guarded by this
+
+    OutboundQueue(SocketChannel channel, WriteBatcher batcher, int batchBytes) {
+        this.channel = channel;
+        this.batcher = batcher;
+        this.batchBytes = batchBytes;
+    }
+
+    /**
+     * Queue one frame; the newline delimiter is added here
+     */
+    void enqueue(String frame) {
+        byte[] data = (frame + "\n").getBytes(StandardCharsets.UTF_8);
+        boolean flushNow;
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            pending.add(ByteBuffer.wrap(data));
+            pendingBytes += data.length;
+            flushNow = pendingBytes >= batchBytes;
+            if (!flushNow && !dirty) {
+                dirty = true;
+                batcher.register(this);
+            }
+        }
+        frames.increment();
+        if (flushNow) {
+            flush();
+        }
+    }
+
+    /**
+     * Write everything queued so far. Blocks while the peer's receive window is full.
+     */
+    void flush() {
+        synchronized (writeLock) {
+            ByteBuffer[] batch;
+            synchronized (this) {
+                dirty = false;
+                if (pending.isEmpty()) {
+                    return;
+                }
+                batch = pending.toArray(new ByteBuffer[0]);
+                pending = new ArrayList<>(batch.length);
+                pendingBytes = 0;
+            }
+
+            try {
+                long remaining = 0;
+                for (ByteBuffer buffer : batch) {
+                    remaining += buffer.remaining();
+                }
+                int offset = 0;
+                while (remaining > 0) {
+                    long written = channel.write(batch, offset, batch.length - offset);
+                    writes.increment();
+                    remaining -= written;
+                    while (offset < batch.length && !batch[offset].hasRemaining()) {
+                        offset++;
+                    }
+                }
+            } catch (IOException e) {
+                // The reader thread sees the closed socket and cleans up the connection
+                close();
+                try {
+                    channel.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+
+    /**
+     * Drop anything still queued and refuse new frames
+     */
+    synchronized void close() {
+        closed = true;
+        pending.clear();
+        pendingBytes = 0;
+    }
+}
@@ -0,0 +1,82 @@
+package com.chatapp.server;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Token-bucket rate limiting of inbound requests, per user and per user and message type.
+ * Unauthenticated connections are limited per client IP instead of per user.
+ * Buckets are reference counted so they are shared by all sessions of a user and
+ * dropped when the last session goes away.
+ */
+public class RateLimiter {
+    private final ServerConfig config;
+    private final Map<String, Buckets> bucketsByKey = new ConcurrentHashMap<>();
+    private final Map<String, double[]> typeLimits = new HashMap<>();
+    private final ServerMetrics metrics = ServerMetrics.getInstance();
+
+    public RateLimiter(ServerConfig config) {
+        this.config = config;
+        // Only the listed message types get their own bucket, so clients cannot create buckets at will
+        for (String type : config.getString("ratelimit.types", "").split(",")) {
+            type = type.trim();
+            double perSecond = config.getDouble("ratelimit.type." + type + ".perSecond", -1);
+            if (!type.isEmpty() && perSecond >= 0) {
+                double burst = config.getDouble("ratelimit.type." + type + ".burst", Math.max(1, perSecond));
+                typeLimits.put(type, new double[] { burst, perSecond });
+            }
+        }
+    }
+
+    /**
+     * Get the buckets for a user or IP key, incrementing its reference count
+     */
+    public Buckets acquire(String key) {
+        return bucketsByKey.compute(key, (k, existing) -> {
+            Buckets buckets = existing != null ? existing : new Buckets(k);
+            buckets.references++;
+            return buckets;
+        });
+    }
+
+    /**
+     * Drop a reference obtained from {@link #acquire}
+     */
+    public void release(Buckets buckets) {
+        bucketsByKey.computeIfPresent(buckets.key, (k, existing) -> --existing.references <= 0 ? null : existing);
+    }
+
+    /**
+     * Check whether a request of the given type may be processed now
+     */
+    public boolean tryAcquire(Buckets buckets, String type) {
+        if (!buckets.total.tryAcquire()) {
+            metrics.increment("ratelimit.rejected.user");
+            return false;
+        }
+        double[] limit = typeLimits.get(type);
+        if (limit == null) {
+            return true;
+        }
+        TokenBucket typeBucket = buckets.byType.computeIfAbsent(type, t -> new TokenBucket(limit[0], limit[1]));
+        if (!typeBucket.tryAcquire()) {
+            metrics.increment("ratelimit.rejected.type." + type);
+            return false;
+        }
+        return true;
+    }
+
+    public class Buckets {
+        private final String key;
+        private final TokenBucket total;
+        private final Map<String, TokenBucket> byType = new ConcurrentHashMap<>();
+        private int references;
+
+        private Buckets(String key) {
+            this.key = key;
+            this.total = new TokenBucket(config.getDouble("ratelimit.user.burst", 40),
+                    config.getDouble("ratelimit.user.perSecond", 20));
+        }
+    }
+}
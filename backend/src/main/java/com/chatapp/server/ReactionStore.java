@@ -0,0 +1,303 @@
+package com.chatapp.server;
+
+import com.chatapp.database.MessageRepository;
+import com.chatapp.model.Conversation;
+import com.chatapp.model.Message;
+import com.chatapp.model.Reaction;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiConsumer;
+
+/**
+ * Message reactions, aggregated in memory.
+ *
+ * Reacting only updates the in-memory state of the message. Changes are written to the database
+ * by {@link #flush()}, where all changes a user made to one reaction since the previous flush
+ * collapse into a single row write, and announced by {@link #publishChanges()}, which sends each
+ * conversation one frame with the new counts of everything that changed since the previous call.
+ * Both run periodically, so a burst of clicks on a popular message costs one batch and one
+ * frame per period rather than a write and a broadcast per click.
+ *
+ * Messages with changes that are not written or announced yet always stay in memory; the others
+ * are evicted least recently used first once more than maxMessages are held.
+ */
+public class ReactionStore {
+    private static final int MAX_EMOJI_LENGTH = 16;
+
+    public enum Result { APPLIED, UNCHANGED, INVALID, UNKNOWN_MESSAGE, TOO_MANY_KINDS, FAILED }
+
+    private final MessageRepository messageRepository;
+    private final BiConsumer<String, String> publisher; // (conversation, frame)
+    private final int maxMessages;
+    private final int maxKindsPerMessage;
+    private final ServerMetrics metrics = ServerMetrics.getInstance();
+    private final Object flushLock = new Object();
+
+    // All guarded by this
+    private final LinkedHashMap<Integer, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final Set<Integer> unflushed = new HashSet<>();
+    private final Set<Integer> unpublished = new HashSet<>();
+    private long evictions;
+
+    private static final class Entry {
+        final String conversation;
+        final Map<String, Set<Integer>> users = new HashMap<>(); // emoji -> ids of the users who reacted with it
+        Map<Reaction, Boolean> pending = new HashMap<>(); // latest unwritten change per reaction: true = added
+        final Set<String> changed = new HashSet<>(); // emojis whose count was not announced yet
+
+        Entry(String conversation) {
+            this.conversation = conversation;
+        }
+
+        boolean isClean() {
+            return pending.isEmpty() && changed.isEmpty();
+        }
+
+        Map<String, Integer> counts() {
+            if (users.isEmpty()) {
+                return null;
+            }
+            Map<String, Integer> counts = new HashMap<>();
+            for (Map.Entry<String, Set<Integer>> emoji : users.entrySet()) {
+                counts.put(emoji.getKey(), emoji.getValue().size());
+            }
+            return counts;
+        }
+    }
+
+    public ReactionStore(MessageRepository messageRepository, BiConsumer<String, String> publisher,
+                         int maxMessages, int maxKindsPerMessage) {
+        this.messageRepository = messageRepository;
+        this.publisher = publisher;
+        this.maxMessages = maxMessages;
+        this.maxKindsPerMessage = maxKindsPerMessage;
+        metrics.gauge("reactions.cachedMessages", () -> {
+            synchronized (this) {
+                return entries.size();
+            }
+        });
+    }
+
+    /**
+     * Add (or with add false, remove) a user's reaction to a message
+     */
+    public Result react(int userId, int messageId, String emoji, boolean add) {
+        if (emoji == null || emoji.isBlank() || emoji.length() > MAX_EMOJI_LENGTH) {
+            return Result.INVALID;
+        }
+        while (true) {
+            long generation;
+            synchronized (this) {
+                Entry entry = entries.get(messageId);
+                if (entry != null) {
+                    return apply(entry, messageId, userId, emoji, add);
+                }
+                generation = evictions;
+            }
+
+            Entry loaded;
+            try {
+                loaded = load(messageId);
+            } catch (SQLException e) {
+                e.printStackTrace();
+                return Result.FAILED;
+            }
+            if (loaded == null) {
+                return Result.UNKNOWN_MESSAGE;
+            }
+
+            synchronized (this) {
+                Entry entry = entries.get(messageId);
+                if (entry == null && generation == evictions) {
+                    // Nothing was evicted meanwhile, so the loaded state is still current
+                    entries.put(messageId, loaded);
+                    entry = loaded;
+                }
+                if (entry != null) {
+                    return apply(entry, messageId, userId, emoji, add);
+                }
+            }
+        }
+    }
+
+    private Entry load(int messageId) throws SQLException {
+        List<Message> messages = messageRepository.getMessagesByIds(List.of(messageId));
+        if (messages.isEmpty() || messages.get(0).getConversation() == null) {
+            return null;
+        }
+        Entry entry = new Entry(messages.get(0).getConversation());
+        for (Reaction reaction : messageRepository.getReactions(messageId)) {
+            entry.users.computeIfAbsent(reaction.getEmoji(), e -> new HashSet<>()).add(reaction.getUserId());
+        }
+        metrics.increment("reactions.loads");
+        return entry;
+    }
+
+    private Result apply(Entry entry, int messageId, int userId, String emoji, boolean add) {
+        // Reactions to other people's private messages look the same as reactions to missing ones
+        if (!Conversation.isParticipant(entry.conversation, userId)) {
+            return Result.UNKNOWN_MESSAGE;
+        }
+        Set<Integer> users = entry.users.get(emoji);
+        if (add) {
+            if (users == null) {
+                if (entry.users.size() >= maxKindsPerMessage) {
+                    return Result.TOO_MANY_KINDS;
+                }
+                users = new HashSet<>();
+                entry.users.put(emoji, users);
+            }
+            if (!users.add(userId)) {
+                return Result.UNCHANGED;
+            }
+        } else {
+            if (users == null || !users.remove(userId)) {
+                return Result.UNCHANGED;
+            }
+            if (users.isEmpty()) {
+                entry.users.remove(emoji);
+            }
+        }
+
+        entry.pending.put(new Reaction(messageId, userId, emoji), add);
+        entry.changed.add(emoji);
+        unflushed.add(messageId);
+        unpublished.add(messageId);
+        metrics.increment("reactions.applied");
+        return Result.APPLIED;
+    }
+
+    /**
+     * Set the reaction counts of messages about to be sent to a client
+     */
+    public void attachCounts(List<Message> messages) {
+        List<Integer> uncached = new ArrayList<>();
+        Map<Integer, Message> byId = new HashMap<>();
+        synchronized (this) {
+            for (Message message : messages) {
+                if (message.getId() == null) {
+                    continue;
+                }
+                Entry entry = entries.get(message.getId());
+                if (entry != null) {
+                    message.setReactions(entry.counts());
+                } else {
+                    uncached.add(message.getId());
+                    byId.put(message.getId(), message);
+                }
+            }
+        }
+        if (uncached.isEmpty()) {
+            return;
+        }
+        for (Map.Entry<Integer, Map<String, Integer>> counts : messageRepository.getReactionCounts(uncached).entrySet()) {
+            byId.get(counts.getKey()).setReactions(counts.getValue());
+        }
+    }
+
+    /**
+     * Write all changes made since the previous flush, then evict clean messages over the limit.
+     * A failed write keeps the changes for the next flush.
+     */
+    public void flush() {
+        synchronized (flushLock) {
+            Map<Integer, Map<Reaction, Boolean>> batch = new HashMap<>();
+            synchronized (this) {
+                for (Integer messageId : unflushed) {
+                    Entry entry = entries.get(messageId);
+                    batch.put(messageId, entry.pending);
+                    entry.pending = new HashMap<>();
+                }
+                unflushed.clear();
+            }
+
+            if (!batch.isEmpty()) {
+                List<Reaction> added = new ArrayList<>();
+                List<Reaction> removed = new ArrayList<>();
+                for (Map<Reaction, Boolean> changes : batch.values()) {
+                    for (Map.Entry<Reaction, Boolean> change : changes.entrySet()) {
+                        (change.getValue() ? added : removed).add(change.getKey());
+                    }
+                }
+                try {
+                    messageRepository.saveReactions(added, removed);
+                    metrics.add("reactions.rowsWritten", added.size() + removed.size());
+                } catch (SQLException e) {
+                    metrics.increment("reactions.flushFailures");
+                    System.err.println("❌ Failed to save reactions, retrying on the next flush:");
+                    e.printStackTrace();
+                    synchronized (this) {
+                        // Eviction only happens at the end of a flush, so all of these are still here
+                        for (Map.Entry<Integer, Map<Reaction, Boolean>> changes : batch.entrySet()) {
+                            Entry entry = entries.get(changes.getKey());
+                            for (Map.Entry<Reaction, Boolean> change : changes.getValue().entrySet()) {
+                                entry.pending.putIfAbsent(change.getKey(), change.getValue());
+                            }
+                            unflushed.add(changes.getKey());
+                        }
+                    }
+                    return;
+                }
+            }
+
+            synchronized (this) {
+                Iterator<Map.Entry<Integer, Entry>> eldest = entries.entrySet().iterator();
+                while (entries.size() > maxMessages && eldest.hasNext()) {
+                    Map.Entry<Integer, Entry> entry = eldest.next();
+                    if (entry.getValue().isClean() && !unflushed.contains(entry.getKey())) {
+                        eldest.remove();
+                        evictions++;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Send each conversation the new counts of the reactions that changed since the previous call,
+     * as one "reactions" frame: [{"messageId": id, "counts": {emoji: users, ...}}, ...].
+     * A count of 0 means the last user took that reaction back.
+     */
+    public void publishChanges() {
+        Map<String, JsonArray> updates = new HashMap<>();
+        synchronized (this) {
+            if (unpublished.isEmpty()) {
+                return;
+            }
+            for (Integer messageId : unpublished) {
+                Entry entry = entries.get(messageId);
+                JsonObject counts = new JsonObject();
+                for (String emoji : entry.changed) {
+                    Set<Integer> users = entry.users.get(emoji);
+                    counts.addProperty(emoji, users != null ? users.size() : 0);
+                }
+                entry.changed.clear();
+
+                JsonObject update = new JsonObject();
+                update.addProperty("messageId", messageId);
+                update.add("counts", counts);
+                updates.computeIfAbsent(entry.conversation, c -> new JsonArray()).add(update);
+            }
+            unpublished.clear();
+        }
+
+        for (Map.Entry<String, JsonArray> update : updates.entrySet()) {
+            Message frame = new Message();
+            frame.setType("reactions");
+            frame.setConversation(update.getKey());
+            frame.setContent(update.getValue().toString());
+            publisher.accept(update.getKey(), frame.toJson());
+            metrics.increment("reactions.frames");
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package com.chatapp.server;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Properties;
+
+/**
+ * Server tuning settings loaded from server.properties.
+ * Any setting can be overridden with a JVM system property of the same name, e.g. -Dserver.port=9090
+ */
+public class ServerConfig {
+    private static ServerConfig instance;
+    private final Properties props = new Properties();
+
+    private ServerConfig() {
+        try (InputStream input = getClass().getClassLoader().getResourceAsStream("server.properties")) {
+            if (input != null) {
+                props.load(input);
+            } else {
+                System.err.println("Unable to find server.properties, using defaults");
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    public static synchronized ServerConfig getInstance() {
+        if (instance == null) {
+            instance = new ServerConfig();
+        }
+        return instance;
+    }
+
+    public String getString(String key, String defaultValue) {
+        String value = System.getProperty(key, props.getProperty(key));
+        return value != null ? value.trim() : defaultValue;
+    }
+
+    public int getInt(String key, int defaultValue) {
+        String value = getString(key, null);
+        return value != null ? Integer.parseInt(value) : defaultValue;
+    }
+
+    public long getLong(String key, long defaultValue) {
+        String value = getString(key, null);
+        return value != null ? Long.parseLong(value) : defaultValue;
+    }
+
+    public double getDouble(String key, double defaultValue) {
+        String value = getString(key, null);
+        return value != null ? Double.parseDouble(value) : defaultValue;
+    }
+
+    public boolean getBoolean(String key, boolean defaultValue) {
+        String value = getString(key, null);
+        return value != null ? Boolean.parseBoolean(value) : defaultValue;
+    }
+}
@@ -0,0 +1,129 @@
+package com.chatapp.server;
+
+import com.chatapp.util.IntObjectHashMap;
+
+import java.util.Arrays;
+
+/**
+ * Connected sessions keyed by user id. A user may be logged in on several connections at once.
+ *
+ * Writes (login/logout) take a lock and invalidate the snapshot array of all sessions; the next
+ * broadcast rebuilds it once, and later broadcasts iterate the plain array without locking or
+ * allocation. A login storm therefore costs one rebuild per broadcast, not one copy per login.
+ */
+public class SessionRegistry {
+    private static final ClientHandler[] NONE = new ClientHandler[0];
+
+    private final IntObjectHashMap<ClientHandler[]> sessionsByUser = new IntObjectHashMap<>(1024);
+    private int sessionCount;
+    private volatile ClientHandler[] all = NONE; // null when it needs rebuilding
+
+    public SessionRegistry() {
+        ServerMetrics metrics = ServerMetrics.getInstance();
+        metrics.gauge("sessions.users", this::userCount);
+        metrics.gauge("sessions.active", this::sessionCount);
+    }
+
+    /**
+     * Register a session; registering it again has no effect
+     * @return true if this is the user's first session
+     */
+    public synchronized boolean add(int userId, ClientHandler handler) {
+        ClientHandler[] sessions = sessionsByUser.get(userId);
+        if (sessions != null && Arrays.asList(sessions).contains(handler)) {
+            return false;
+        }
+        if (sessions == null) {
+            sessionsByUser.put(userId, new ClientHandler[] { handler });
+        } else {
+            ClientHandler[] grown = Arrays.copyOf(sessions, sessions.length + 1);
+            grown[sessions.length] = handler;
+            sessionsByUser.put(userId, grown);
+        }
+        sessionCount++;
+        all = null;
+        return sessions == null;
+    }
+
+    /**
+     * Unregister a session
+     * @return true if it was the user's last session
+     */
+    public synchronized boolean remove(int userId, ClientHandler handler) {
+        ClientHandler[] sessions = sessionsByUser.get(userId);
+        if (sessions == null) {
+            return false;
+        }
+        ClientHandler[] remaining = without(sessions, handler);
+        if (remaining == sessions) {
+            return false;
+        }
+        sessionCount--;
+        all = null;
+        if (remaining.length == 0) {
+            sessionsByUser.remove(userId);
+            return true;
+        }
+        sessionsByUser.put(userId, remaining);
+        return false;
+    }
+
+    /**
+     * Get the sessions of a user (empty if offline). The returned array must not be modified.
+     */
+    public synchronized ClientHandler[] sessions(int userId) {
+        ClientHandler[] sessions = sessionsByUser.get(userId);
+        return sessions != null ? sessions : NONE;
+    }
+
+    /**
+     * Get all sessions. The returned array must not be modified.
+     */
+    public ClientHandler[] all() {
+        ClientHandler[] snapshot = all;
+        return snapshot != null ? snapshot : rebuildSnapshot();
+    }
+
+    private synchronized ClientHandler[] rebuildSnapshot() {
+        if (all == null) {
+            ClientHandler[] snapshot = new ClientHandler[sessionCount];
+            int[] index = new int[1];
+            sessionsByUser.forEachValue(sessions -> {
+                System.arraycopy(sessions, 0, snapshot, index[0], sessions.length);
+                index[0] += sessions.length;
+            });
+            all = snapshot;
+        }
+        return all;
+    }
+
+    public synchronized int[] onlineUserIds() {
+        return sessionsByUser.keys();
+    }
+
+    public synchronized int userCount() {
+        return sessionsByUser.size();
+    }
+
+    public synchronized int sessionCount() {
+        return sessionCount;
+    }
+
+    public synchronized void clear() {
+        sessionsByUser.clear();
+        sessionCount = 0;
+        all = NONE;
+    }
+
+    private static ClientHandler[] without(ClientHandler[] handlers, ClientHandler handler) {
+        for (int i = 0; i < handlers.length; i++) {
+            if (handlers[i] == handler) {
+                ClientHandler[] result = new ClientHandler[handlers.length - 1];
+                System.arraycopy(handlers, 0, result, 0, i);
+                System.arraycopy(handlers, i + 1, result, i, handlers.length - i - 1);
+                return result;
+            }
+        }
+        return handlers;
+    }
+}
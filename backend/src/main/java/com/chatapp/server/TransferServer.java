@@ -0,0 +1,477 @@
+package com.chatapp.server;
+
+import com.chatapp.attachment.AttachmentStore;
+import com.chatapp.database.MessageRepository;
+import com.chatapp.model.Attachment;
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.SecureRandom;
+import java.sql.SQLException;
+import java.util.Base64;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Attachment transfers on their own port, so file bytes never go through the JSON chat connection.
+ *
+ * Every request is one JSON line carrying the transfer token handed out at login, optionally
+ * followed by raw bytes:
+ *   {"op":"begin","name":..,"size":..,"sha256":..}   start an upload; if the content is already
+ *                                                    stored, answered with a "challenge" instead
+ *   {"op":"prove","sha256":..,"proof":..}            answer the challenge with the SHA-256 of the
+ *                                                    challenge followed by the content; answered
+ *                                                    with the attachment
+ *   {"op":"status","uploadId":..}                    bytes received so far, to resume an upload
+ *   {"op":"upload","uploadId":..,"offset":..,"length":..} + length bytes
+ *   {"op":"complete","uploadId":..,"sha256":..}      finish an upload, sha256 is optional
+ *   {"op":"download","id":..,"offset":..}            answered with a header line, then the bytes
+ * Replies are JSON lines with "ok" and either the result or "error".
+ *
+ * A user may download or send an attachment they uploaded (or proved to have), or that was sent
+ * to them or to public chat; see {@link MessageRepository#canReadAttachment}. Connections are
+ * admitted under limits of their own, like the chat port's.
+ *
+ * Downloads go from the file to the socket with FileChannel.transferTo, and the bytes being
+ * sent by all downloads together are bounded by a semaphore.
+ */
+public class TransferServer {
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int MAX_HEADER = 4096;
+    private static final int DOWNLOAD_CHUNK = 256 * 1024;
+
+    private final MainServer server;
+    private final AttachmentStore store;
+    private final MessageRepository messageRepository;
+    private final AdmissionController admissionController;
+    private int port;
+    private final long idleTimeoutMs;
+    private final Semaphore inFlightBytes;
+    private final int maxInFlightBytes;
+    private final Map<String, Integer> tokens = new ConcurrentHashMap<>();
+    private final SecureRandom random = new SecureRandom();
+    private final Gson gson = new Gson();
+    private final ServerMetrics metrics = ServerMetrics.getInstance();
+    private ServerSocketChannel serverChannel;
+    private volatile boolean running;
+
+    public TransferServer(MainServer server, AttachmentStore store, ServerConfig config) {
+        this.server = server;
+        this.store = store;
+        this.messageRepository = server.getMessageRepository();
+        this.admissionController = new AdmissionController(config.getInt("attachments.maxConnections", 1000),
+                config.getInt("attachments.maxConnectionsPerIp", 20), "", "attachments.connections");
+        this.port = config.getInt("attachments.port", 8083);
+        this.idleTimeoutMs = config.getLong("attachments.idleTimeoutMs", 60_000);
+        this.maxInFlightBytes = Math.max(DOWNLOAD_CHUNK, config.getInt("attachments.maxInFlightBytes", 64 * 1024 * 1024));
+        this.inFlightBytes = new Semaphore(maxInFlightBytes, true);
+        metrics.gauge("attachments.download.inFlightBytes", () -> maxInFlightBytes - inFlightBytes.availablePermits());
+    }
+
+    public void start() throws IOException {
+        serverChannel = ServerSocketChannel.open();
+        MainServer.allowPortSharing(serverChannel);
+        serverChannel.bind(new InetSocketAddress(port));
+        port = serverChannel.socket().getLocalPort(); // the actual port when configured as 0
+        running = true;
+        Thread acceptor = new Thread(this::acceptLoop, "attachment-acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+        System.out.println("📎 Attachment transfers on port: " + port);
+    }
+
+    public void stop() {
+        running = false;
+        try {
+            if (serverChannel != null) {
+                serverChannel.close();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    /**
+     * Issue a token that lets a logged-in session use the transfer port
+     */
+    public String issueToken(int userId) {
+        byte[] bytes = new byte[24];
+        random.nextBytes(bytes);
+        String token = Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+        tokens.put(token, userId);
+        return token;
+    }
+
+    public void revokeToken(String token) {
+        if (token != null) {
+            tokens.remove(token);
+        }
+    }
+
+    private void acceptLoop() {
+        while (running) {
+            try {
+                SocketChannel channel = serverChannel.accept();
+                InetAddress address = channel.socket().getInetAddress();
+                String rejection = admissionController.tryAdmit(address);
+                if (rejection != null) {
+                    reject(channel, rejection);
+                    continue;
+                }
+                server.execute(new Connection(channel, address));
+            } catch (IOException e) {
+                if (running) {
+                    System.err.println("❌ Error accepting transfer connection: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    private void reject(SocketChannel channel, String reason) {
+        try (SocketChannel rejected = channel) {
+            rejected.write(ByteBuffer.wrap((error(reason).toString() + "\n").getBytes(StandardCharsets.UTF_8)));
+        } catch (IOException e) {
+            // The client is gone already
+        }
+    }
+
+    private class Connection implements Runnable {
+        private final SocketChannel channel;
+        private final InetAddress address;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        private final AtomicBoolean closed = new AtomicBoolean();
+        private volatile long progress; // bumped on every request and chunk, watched by the idle check
+        private long lastCheckedProgress = -1;
+        private String challenge; // of the last begin that found stored content, null if none
+        private String challengedId;
+        private String challengedName;
+
+        Connection(SocketChannel channel, InetAddress address) {
+            this.channel = channel;
+            this.address = address;
+            buffer.flip(); // start empty, in read mode
+        }
+
+        @Override
+        public void run() {
+            scheduleIdleCheck();
+            try {
+                String header;
+                while ((header = readLine()) != null) {
+                    progress++;
+                    if (!handle(JsonParser.parseString(header).getAsJsonObject())) {
+                        break;
+                    }
+                }
+            } catch (ClosedChannelException e) {
+                // Closed by the idle check or shutdown
+            } catch (Exception e) {
+                reply(error(e.getMessage() != null ? e.getMessage() : "Invalid request"));
+            } finally {
+                close();
+            }
+        }
+
+        /**
+         * @return false if the connection has to be closed (the byte stream is out of step)
+         */
+        private boolean handle(JsonObject request) throws IOException {
+            Integer userId = request.has("token") ? tokens.get(request.get("token").getAsString()) : null;
+            if (userId == null) {
+                reply(error("Invalid transfer token"));
+                return false;
+            }
+            String op = request.has("op") ? request.get("op").getAsString() : "";
+            switch (op) {
+                case "begin":
+                    return begin(userId, request);
+                case "prove":
+                    return prove(userId, request);
+                case "status":
+                    return status(userId, request);
+                case "upload":
+                    return upload(userId, request);
+                case "complete":
+                    return complete(userId, request);
+                case "download":
+                    return download(userId, request);
+                default:
+                    reply(error("Unknown op: " + op));
+                    return true;
+            }
+        }
+
+        private boolean begin(int userId, JsonObject request) throws IOException {
+            String name = request.has("name") ? request.get("name").getAsString() : null;
+            if (request.has("sha256")) {
+                Attachment existing = store.find(request.get("sha256").getAsString(), name);
+                if (existing != null) {
+                    metrics.increment("attachments.dedup");
+                    if (messageRepository.canReadAttachment(existing.getId(), userId)) {
+                        JsonObject response = ok();
+                        response.add("attachment", gson.toJsonTree(existing));
+                        reply(response);
+                        return true;
+                    }
+                    challenge = store.newChallenge();
+                    challengedId = existing.getId();
+                    challengedName = name;
+                    JsonObject response = ok();
+                    response.addProperty("challenge", challenge);
+                    reply(response);
+                    return true;
+                }
+            }
+            try {
+                AttachmentStore.Upload upload = store.begin(userId, name, request.get("size").getAsLong());
+                JsonObject response = ok();
+                response.addProperty("uploadId", upload.id());
+                response.addProperty("offset", 0);
+                reply(response);
+            } catch (IllegalArgumentException e) {
+                reply(error(e.getMessage()));
+            }
+            return true;
+        }
+
+        /**
+         * Reuse stored content once the client has shown it has the bytes too
+         */
+        private boolean prove(int userId, JsonObject request) throws IOException {
+            String id = stringOf(request, "sha256");
+            String expected = challenge;
+            challenge = null; // one attempt per challenge
+            if (expected == null || id == null || !id.equalsIgnoreCase(challengedId)
+                    || !store.proves(challengedId, expected, stringOf(request, "proof"))) {
+                metrics.increment("attachments.proofsFailed");
+                reply(error("Proof does not match, upload the file instead"));
+                return true;
+            }
+            if (!grant(challengedId, userId)) {
+                return true;
+            }
+            JsonObject response = ok();
+            response.add("attachment", gson.toJsonTree(store.find(challengedId, challengedName)));
+            reply(response);
+            return true;
+        }
+
+        /**
+         * Let the user read and share an attachment, answering with an error if that cannot be recorded
+         */
+        private boolean grant(String attachmentId, int userId) {
+            try {
+                messageRepository.grantAttachment(attachmentId, userId);
+                return true;
+            } catch (SQLException e) {
+                e.printStackTrace();
+                reply(error("Could not record the attachment, please try again later"));
+                return false;
+            }
+        }
+
+        private boolean status(int userId, JsonObject request) {
+            AttachmentStore.Upload upload = store.getUpload(stringOf(request, "uploadId"), userId);
+            if (upload == null) {
+                reply(error("Unknown upload"));
+                return true;
+            }
+            JsonObject response = ok();
+            response.addProperty("offset", upload.received());
+            response.addProperty("size", upload.size());
+            reply(response);
+            return true;
+        }
+
+        private boolean upload(int userId, JsonObject request) throws IOException {
+            AttachmentStore.Upload upload = store.getUpload(stringOf(request, "uploadId"), userId);
+            if (upload == null) {
+                // The chunk bytes that follow cannot be skipped reliably
+                reply(error("Unknown upload"));
+                return false;
+            }
+            long offset = request.get("offset").getAsLong();
+            long length = request.get("length").getAsLong();
+            long received;
+            try {
+                received = store.receive(upload, offset, length, buffer, channel);
+            } catch (IOException e) {
+                reply(error(e.getMessage()));
+                return false;
+            }
+            progress++;
+            JsonObject response = ok();
+            response.addProperty("offset", received);
+            reply(response);
+            return true;
+        }
+
+        private boolean complete(int userId, JsonObject request) throws IOException {
+            AttachmentStore.Upload upload = store.getUpload(stringOf(request, "uploadId"), userId);
+            if (upload == null) {
+                reply(error("Unknown upload"));
+                return true;
+            }
+            try {
+                Attachment attachment = store.complete(upload, stringOf(request, "sha256"));
+                if (!grant(attachment.getId(), userId)) {
+                    return true;
+                }
+                JsonObject response = ok();
+                response.add("attachment", gson.toJsonTree(attachment));
+                reply(response);
+            } catch (IOException e) {
+                reply(error(e.getMessage()));
+            }
+            return true;
+        }
+
+        private boolean download(int userId, JsonObject request) throws IOException {
+            String id = stringOf(request, "id");
+            Path path = store.resolve(id);
+            if (path == null || !messageRepository.canReadAttachment(id.toLowerCase(), userId)) {
+                reply(error("Unknown attachment"));
+                return true;
+            }
+            long offset = request.has("offset") ? request.get("offset").getAsLong() : 0;
+            try (FileChannel file = FileChannel.open(path, StandardOpenOption.READ)) {
+                long size = file.size();
+                if (offset < 0 || offset > size) {
+                    reply(error("Offset out of range"));
+                    return true;
+                }
+                JsonObject response = ok();
+                response.addProperty("size", size);
+                response.addProperty("offset", offset);
+                reply(response);
+
+                long position = offset;
+                while (position < size) {
+                    int chunk = (int) Math.min(DOWNLOAD_CHUNK, size - position);
+                    try {
+                        inFlightBytes.acquire(chunk);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return false;
+                    }
+                    try {
+                        long end = position + chunk;
+                        while (position < end) {
+                            position += file.transferTo(position, end - position, channel);
+                            progress++;
+                        }
+                    } finally {
+                        inFlightBytes.release(chunk);
+                    }
+                }
+                metrics.add("attachments.download.bytes", size - offset);
+            }
+            return true;
+        }
+
+        /**
+         * Read one header line, leaving any bytes after it in the buffer
+         */
+        private String readLine() throws IOException {
+            while (true) {
+                for (int i = buffer.position(); i < buffer.limit(); i++) {
+                    if (buffer.get(i) == '\n') {
+                        byte[] line = new byte[i - buffer.position()];
+                        buffer.get(line);
+                        buffer.get(); // the newline
+                        return new String(line, StandardCharsets.UTF_8).trim();
+                    }
+                }
+                if (buffer.remaining() >= MAX_HEADER) {
+                    throw new IOException("Header line too long");
+                }
+                buffer.compact();
+                int read = channel.read(buffer);
+                buffer.flip();
+                if (read < 0) {
+                    return null;
+                }
+            }
+        }
+
+        private void reply(JsonObject response) {
+            ByteBuffer bytes = ByteBuffer.wrap((response.toString() + "\n").getBytes(StandardCharsets.UTF_8));
+            try {
+                while (bytes.hasRemaining()) {
+                    channel.write(bytes);
+                }
+            } catch (IOException e) {
+                close();
+            }
+        }
+
+        private void scheduleIdleCheck() {
+            server.getTimer().schedule(this::checkIdle, idleTimeoutMs, TimeUnit.MILLISECONDS);
+        }
+
+        /**
+         * Runs on the timer thread; closing the channel unblocks a stuck read or write
+         */
+        private void checkIdle() {
+            if (!channel.isOpen()) {
+                return;
+            }
+            long current = progress;
+            if (current == lastCheckedProgress) {
+                metrics.increment("attachments.idleClosed");
+                server.execute(this::close);
+            } else {
+                lastCheckedProgress = current;
+                scheduleIdleCheck();
+            }
+        }
+
+        private void close() {
+            if (!closed.compareAndSet(false, true)) {
+                return;
+            }
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // Already closed
+            }
+            admissionController.release(address);
+        }
+    }
+
+    private static String stringOf(JsonObject request, String key) {
+        return request.has(key) && !request.get(key).isJsonNull() ? request.get(key).getAsString() : null;
+    }
+
+    private static JsonObject ok() {
+        JsonObject response = new JsonObject();
+        response.addProperty("ok", true);
+        return response;
+    }
+
+    private static JsonObject error(String message) {
+        JsonObject response = new JsonObject();
+        response.addProperty("ok", false);
+        response.addProperty("error", message);
+        return response;
+    }
+}
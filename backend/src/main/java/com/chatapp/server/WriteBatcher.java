@@ -0,0 +1,71 @@
+package com.chatapp.server;
+
+import java.nio.channels.SocketChannel;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Drives batched delivery: every tick, the connections that queued frames since the previous
+ * tick are flushed. The flushes run on the executor, so a peer that stops reading only blocks
+ * its own flush and never the tick.
+ */
+final class WriteBatcher {
+    private final long tickNanos;
+    private final int batchBytes;
+    private final Executor executor;
+    private final Queue<OutboundQueue> dirty = new ConcurrentLinkedQueue<>();
+    private final Thread worker;
+    private volatile boolean running = true;
+
+    WriteBatcher(long tickMs, int batchBytes, Executor executor) {
+        this.tickNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, tickMs));
+        this.batchBytes = batchBytes;
+        this.executor = executor;
+        this.worker = new Thread(this::runWorker, "write-batcher");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    /**
+     * Create the outbound queue of a new connection
+     */
+    OutboundQueue newQueue(SocketChannel channel) {
+        return new OutboundQueue(channel, this, batchBytes);
+    }
+
+    /**
+     * Flush the queue on the next tick; called once per batch by the queue itself
+     */
+    void register(OutboundQueue queue) {
+        dirty.add(queue);
+    }
+
+    void stop() {
+        running = false;
+        worker.interrupt();
+    }
+
+    private void runWorker() {
+        long next = System.nanoTime() + tickNanos;
+        while (running) {
+            long sleepNanos = next - System.nanoTime();
+            if (sleepNanos > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(sleepNanos);
+                } catch (InterruptedException e) {
+                    if (!running) {
+                        return;
+                    }
+                }
+            }
+            next += tickNanos;
+
+            OutboundQueue queue;
+            while ((queue = dirty.poll()) != null) {
+                executor.execute(queue::flush);
+            }
+        }
+    }
+}
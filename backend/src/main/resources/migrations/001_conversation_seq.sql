@@ -0,0 +1,19 @@
+-- Adds per-conversation sequence numbers to an existing chat_app database.
+-- New installations get these columns from schema.sql.
+USE chat_app;
+
+ALTER TABLE messages
+    ADD COLUMN conversation VARCHAR(511) NULL,
+    ADD COLUMN seq BIGINT NULL;
+
+UPDATE messages
+SET conversation = IF(receiver IS NULL, 'public',
+                      CONCAT('dm:', LEAST(sender, receiver), '|', GREATEST(sender, receiver)));
+
+-- Number existing messages in id order within each conversation (MySQL 8+)
+UPDATE messages m
+JOIN (SELECT id, ROW_NUMBER() OVER (PARTITION BY conversation ORDER BY id) AS rn FROM messages) r
+  ON m.id = r.id
+SET m.seq = r.rn;
+
+CREATE INDEX idx_conversation_seq ON messages(conversation, seq);
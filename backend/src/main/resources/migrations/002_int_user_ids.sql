@@ -0,0 +1,32 @@
+-- Switches messages from email foreign keys to users.id and re-keys private conversations by id.
+-- Run after 001_conversation_seq.sql. New installations get this layout from schema.sql.
+USE chat_app;
+
+ALTER TABLE messages
+    ADD COLUMN sender_id INT NULL AFTER id,
+    ADD COLUMN receiver_id INT NULL AFTER sender_id;
+
+UPDATE messages m JOIN users s ON m.sender = s.email SET m.sender_id = s.id;
+UPDATE messages m JOIN users r ON m.receiver = r.email SET m.receiver_id = r.id;
+
+UPDATE messages
+SET conversation = IF(receiver_id IS NULL, 'public',
+                      CONCAT('dm:', LEAST(sender_id, receiver_id), ':', GREATEST(sender_id, receiver_id)));
+
+-- Default names MySQL gave the foreign keys of the original schema
+ALTER TABLE messages DROP FOREIGN KEY messages_ibfk_1, DROP FOREIGN KEY messages_ibfk_2;
+DROP INDEX idx_sender ON messages;
+DROP INDEX idx_receiver ON messages;
+DROP INDEX idx_conversation_seq ON messages;
+
+ALTER TABLE messages
+    DROP COLUMN sender,
+    DROP COLUMN receiver,
+    MODIFY sender_id INT NOT NULL,
+    MODIFY conversation VARCHAR(64) NULL,
+    ADD FOREIGN KEY (sender_id) REFERENCES users(id) ON DELETE CASCADE,
+    ADD FOREIGN KEY (receiver_id) REFERENCES users(id) ON DELETE CASCADE;
+
+CREATE INDEX idx_sender ON messages(sender_id);
+CREATE INDEX idx_receiver ON messages(receiver_id);
+CREATE INDEX idx_conversation_seq ON messages(conversation, seq);
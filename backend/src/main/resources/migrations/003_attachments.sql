@@ -0,0 +1,8 @@
+-- Adds attachment references to an existing chat_app database.
+-- New installations get these columns from schema.sql.
+USE chat_app;
+
+ALTER TABLE messages
+    ADD COLUMN attachment_id CHAR(64) NULL,
+    ADD COLUMN attachment_name VARCHAR(255) NULL,
+    ADD COLUMN attachment_size BIGINT NULL;
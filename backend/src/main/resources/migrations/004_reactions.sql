@@ -0,0 +1,12 @@
+-- Adds message reactions to an existing chat_app database.
+-- New installations get this table from schema.sql.
+USE chat_app;
+
+CREATE TABLE IF NOT EXISTS reactions (
+    message_id INT NOT NULL,
+    emoji VARCHAR(32) NOT NULL,
+    user_id INT NOT NULL,
+    created_at DATETIME DEFAULT CURRENT_TIMESTAMP,
+    PRIMARY KEY (message_id, emoji, user_id),
+    FOREIGN KEY (user_id) REFERENCES users(id) ON DELETE CASCADE
+);
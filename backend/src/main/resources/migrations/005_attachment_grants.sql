@@ -0,0 +1,18 @@
+-- Adds attachment grants to an existing chat_app database and grants the attachments
+-- already sent to their senders, receivers and (for public messages) everyone.
+-- New installations get this table from schema.sql.
+USE chat_app;
+
+CREATE TABLE IF NOT EXISTS attachment_grants (
+    attachment_id CHAR(64) NOT NULL,
+    user_id INT NOT NULL,
+    created_at DATETIME DEFAULT CURRENT_TIMESTAMP,
+    PRIMARY KEY (attachment_id, user_id)
+);
+
+INSERT IGNORE INTO attachment_grants (attachment_id, user_id)
+    SELECT DISTINCT attachment_id, sender_id FROM messages WHERE attachment_id IS NOT NULL;
+INSERT IGNORE INTO attachment_grants (attachment_id, user_id)
+    SELECT DISTINCT attachment_id, receiver_id FROM messages WHERE attachment_id IS NOT NULL AND receiver_id IS NOT NULL;
+INSERT IGNORE INTO attachment_grants (attachment_id, user_id)
+    SELECT DISTINCT attachment_id, 0 FROM messages WHERE attachment_id IS NOT NULL AND receiver_id IS NULL;
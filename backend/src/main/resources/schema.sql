@@ -17,16 +17,40 @@ CREATE TABLE IF NOT EXISTS users (
 -- Messages table
 CREATE TABLE IF NOT EXISTS messages (
     id INT PRIMARY KEY AUTO_INCREMENT,
-    sender VARCHAR(255) NOT NULL,
-    receiver VARCHAR(255) NULL,
+    sender_id INT NOT NULL,
+    receiver_id INT NULL,                    -- NULL for public messages
     message TEXT NOT NULL,
     timestamp DATETIME DEFAULT CURRENT_TIMESTAMP,
     is_read BOOLEAN DEFAULT FALSE,
-    FOREIGN KEY (sender) REFERENCES users(email) ON DELETE CASCADE,
-    FOREIGN KEY (receiver) REFERENCES users(email) ON DELETE CASCADE
+    conversation VARCHAR(64) NULL,           -- 'public' or 'dm:<lower user id>:<higher user id>'
+    seq BIGINT NULL,                         -- server-assigned sequence within the conversation
+    attachment_id CHAR(64) NULL,             -- SHA-256 of an attached file in the attachment store
+    attachment_name VARCHAR(255) NULL,
+    attachment_size BIGINT NULL,
+    FOREIGN KEY (sender_id) REFERENCES users(id) ON DELETE CASCADE,
+    FOREIGN KEY (receiver_id) REFERENCES users(id) ON DELETE CASCADE
+);
+
+-- Reactions table: one row per user, message and emoji
+CREATE TABLE IF NOT EXISTS reactions (
+    message_id INT NOT NULL,                 -- no foreign key: archived messages keep their reactions
+    emoji VARCHAR(32) NOT NULL,
+    user_id INT NOT NULL,
+    created_at DATETIME DEFAULT CURRENT_TIMESTAMP,
+    PRIMARY KEY (message_id, emoji, user_id),
+    FOREIGN KEY (user_id) REFERENCES users(id) ON DELETE CASCADE
+);
+
+-- Attachment grants: who may read or share an attachment; user_id 0 means every user (public messages)
+CREATE TABLE IF NOT EXISTS attachment_grants (
+    attachment_id CHAR(64) NOT NULL,         -- SHA-256 of the file in the attachment store
+    user_id INT NOT NULL,                    -- no foreign key: 0 is not a user
+    created_at DATETIME DEFAULT CURRENT_TIMESTAMP,
+    PRIMARY KEY (attachment_id, user_id)
 );
 
 -- Index for faster queries
-CREATE INDEX idx_sender ON messages(sender);
-CREATE INDEX idx_receiver ON messages(receiver);
+CREATE INDEX idx_sender ON messages(sender_id);
+CREATE INDEX idx_receiver ON messages(receiver_id);
 CREATE INDEX idx_timestamp ON messages(timestamp);
+CREATE INDEX idx_conversation_seq ON messages(conversation, seq);
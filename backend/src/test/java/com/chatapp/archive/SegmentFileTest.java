@@ -0,0 +1,86 @@
+package com.chatapp.archive;
+
+import com.chatapp.model.Attachment;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SegmentFileTest {
+    @TempDir
+    Path dir;
+
+    @Test
+    void readsBackWhatWasWritten() throws IOException {
+        List<ArchivedMessage> batch = new ArrayList<>();
+        batch.add(new ArchivedMessage(3, 2, 0, "public", 2, 3000, false, "second", null));
+        batch.add(new ArchivedMessage(1, 2, 5, "private_2_5", 1, 1000, true, "héllo 👋",
+                new Attachment("abc123", "photo.png", 4096)));
+        batch.add(new ArchivedMessage(2, 1, 0, "public", 1, 2000, false, "first", null));
+
+        SegmentInfo written = SegmentFile.write(dir.resolve("segment-1.seg"), batch);
+        assertEquals(3, written.getRowCount());
+        assertEquals(1, written.getMinId());
+        assertEquals(3, written.getMaxId());
+        assertEquals(3000, written.getMaxTimestamp());
+
+        SegmentInfo info = SegmentFile.readInfo(dir.resolve("segment-1.seg"));
+        assertEquals(3, info.getRowCount());
+        assertEquals(1, info.getMinId());
+        assertEquals(3, info.getMaxId());
+
+        ArchivedMessage[] rows = SegmentFile.read(info);
+        assertEquals(3, rows.length);
+        // Rows are ordered by conversation, then seq
+        ArchivedMessage privateMessage = rows[0];
+        assertEquals("private_2_5", privateMessage.conversation);
+        assertEquals(1, privateMessage.id);
+        assertEquals(5, privateMessage.receiverId);
+        assertTrue(privateMessage.read);
+        assertEquals("héllo 👋", privateMessage.content);
+        assertEquals("abc123", privateMessage.attachment.getId());
+        assertEquals("photo.png", privateMessage.attachment.getName());
+        assertEquals(4096, privateMessage.attachment.getSize());
+
+        assertEquals("first", rows[1].content);
+        assertEquals(1, rows[1].seq);
+        assertEquals("second", rows[2].content);
+        assertEquals(2, rows[2].seq);
+        assertFalse(rows[2].read);
+        assertNull(rows[2].attachment);
+    }
+
+    @Test
+    void indexesRowsPerConversation() throws IOException {
+        List<ArchivedMessage> batch = new ArrayList<>();
+        for (int seq = 1; seq <= 100; seq++) {
+            batch.add(new ArchivedMessage(seq * 2, 1, 0, "public", seq, seq, false, "p" + seq, null));
+            batch.add(new ArchivedMessage(seq * 2 + 1, 1, 2, "private_1_2", seq + 10, seq, false, "q" + seq, null));
+        }
+        SegmentInfo info = SegmentFile.readInfo(SegmentFile.write(dir.resolve("segment-2.seg"), batch).path);
+
+        SegmentInfo.ConversationRange publicRange = info.conversations.get("public");
+        assertEquals(1, publicRange.minSeq);
+        assertEquals(100, publicRange.maxSeq);
+        assertEquals(100, publicRange.rows);
+        SegmentInfo.ConversationRange privateRange = info.conversations.get("private_1_2");
+        assertEquals(11, privateRange.minSeq);
+        assertEquals(110, privateRange.maxSeq);
+        assertEquals(100, privateRange.rows);
+
+        ArchivedMessage[] rows = SegmentFile.read(info);
+        for (int i = 0; i < publicRange.rows; i++) {
+            ArchivedMessage row = rows[publicRange.firstRow + i];
+            assertEquals("public", row.conversation);
+            assertEquals(i + 1, row.seq);
+        }
+    }
+}
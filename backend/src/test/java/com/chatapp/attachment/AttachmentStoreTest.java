@@ -0,0 +1,52 @@
+package com.chatapp.attachment;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class AttachmentStoreTest {
+    @TempDir
+    Path dir;
+
+    @Test
+    void limitsUnfinishedUploadsPerOwner() throws IOException {
+        AttachmentStore store = new AttachmentStore(dir, 1000, 2, 10_000);
+        store.begin(1, "a.txt", 10);
+        store.begin(1, "b.txt", 10);
+        assertThrows(IllegalArgumentException.class, () -> store.begin(1, "c.txt", 10));
+        assertNotNull(store.begin(2, "d.txt", 10));
+    }
+
+    @Test
+    void limitsDeclaredBytesPerOwner() throws IOException {
+        AttachmentStore store = new AttachmentStore(dir, 1000, 10, 1500);
+        store.begin(1, "a.bin", 1000);
+        assertThrows(IllegalArgumentException.class, () -> store.begin(1, "b.bin", 600));
+        assertNotNull(store.begin(1, "c.bin", 500));
+    }
+
+    @Test
+    void completedAndExpiredUploadsFreeTheirReservation() throws IOException {
+        AttachmentStore store = new AttachmentStore(dir, 1000, 1, 1000);
+        byte[] content = "hello".getBytes(StandardCharsets.UTF_8);
+        AttachmentStore.Upload upload = store.begin(1, "hello.txt", content.length);
+        ByteBuffer buffer = ByteBuffer.allocate(64).flip();
+        store.receive(upload, 0, content.length, buffer, Channels.newChannel(new ByteArrayInputStream(content)));
+        assertEquals(content.length, store.complete(upload, null).getSize());
+
+        store.begin(1, "stale.txt", 10);
+        assertThrows(IllegalArgumentException.class, () -> store.begin(1, "next.txt", 10));
+        store.purgeStaleUploads(-1);
+        assertNotNull(store.begin(1, "next.txt", 10));
+    }
+}
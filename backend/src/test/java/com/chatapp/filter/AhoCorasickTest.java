@@ -0,0 +1,60 @@
+package com.chatapp.filter;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AhoCorasickTest {
+
+    @Test
+    void matchesAnyTermIgnoringCase() {
+        AhoCorasick automaton = AhoCorasick.compile(List.of("spam", "Scam"));
+        assertTrue(automaton.matches("buy SPAM now"));
+        assertTrue(automaton.matches("a scAm"));
+        assertFalse(automaton.matches("spa m and sca"));
+        assertEquals(2, automaton.getTermCount());
+    }
+
+    @Test
+    void masksEveryOccurrence() {
+        AhoCorasick automaton = AhoCorasick.compile(List.of("bad", "worse"));
+        assertEquals("*** and ***** and *** again", automaton.mask("bad and WORSE and Bad again", '*'));
+    }
+
+    @Test
+    void masksOverlappingAndNestedTerms() {
+        AhoCorasick automaton = AhoCorasick.compile(List.of("he", "she", "hers", "his"));
+        assertEquals("u*****", automaton.mask("ushers", '*'));
+        assertEquals("***h", automaton.mask("hish", '*'));
+        assertEquals("a***b", automaton.mask("ahisb", '*'));
+    }
+
+    @Test
+    void followsFailureLinks() {
+        AhoCorasick automaton = AhoCorasick.compile(List.of("abcd", "bc"));
+        assertEquals("a**e", automaton.mask("abce", '*'));
+        assertTrue(automaton.matches("xxabx bcx"));
+    }
+
+    @Test
+    void returnsTheSameTextWhenNothingMatches() {
+        AhoCorasick automaton = AhoCorasick.compile(List.of("spam"));
+        String text = "hello there";
+        assertSame(text, automaton.mask(text, '*'));
+    }
+
+    @Test
+    void ignoresBlankTerms() {
+        AhoCorasick automaton = AhoCorasick.compile(List.of(" ", "", "  spam  "));
+        assertEquals(1, automaton.getTermCount());
+        assertTrue(automaton.matches("spam"));
+        AhoCorasick none = AhoCorasick.compile(List.of(" "));
+        assertSame(AhoCorasick.empty(), none);
+        assertFalse(none.matches("anything"));
+    }
+}
@@ -0,0 +1,48 @@
+package com.chatapp.search;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+import java.util.TreeSet;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class PostingListTest {
+
+    @Test
+    void keepsAppendedIdsInOrder() {
+        PostingList list = new PostingList();
+        int[] ids = { 1, 2, 130, 20_000, 3_000_000, Integer.MAX_VALUE };
+        for (int id : ids) {
+            list.add(id);
+        }
+        assertEquals(ids.length, list.size());
+        assertArrayEquals(ids, list.toArray());
+    }
+
+    @Test
+    void insertsOutOfOrderIdsAndIgnoresDuplicates() {
+        PostingList list = new PostingList();
+        for (int id : new int[] { 10, 20, 30, 15, 20, 5, 30, 25 }) {
+            list.add(id);
+        }
+        assertArrayEquals(new int[] { 5, 10, 15, 20, 25, 30 }, list.toArray());
+        assertEquals(6, list.size());
+    }
+
+    @Test
+    void matchesASortedSetUnderRandomInserts() {
+        PostingList list = new PostingList();
+        TreeSet<Integer> expected = new TreeSet<>();
+        Random random = new Random(7);
+        int next = 1;
+        for (int i = 0; i < 10_000; i++) {
+            // Mostly increasing, sometimes slightly behind, like concurrent saves
+            int id = random.nextInt(10) == 0 ? Math.max(1, next - random.nextInt(50)) : next++;
+            list.add(id);
+            expected.add(id);
+        }
+        assertArrayEquals(expected.stream().mapToInt(Integer::intValue).toArray(), list.toArray());
+    }
+}
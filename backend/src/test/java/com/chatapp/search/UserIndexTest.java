@@ -0,0 +1,83 @@
+package com.chatapp.search;
+
+import com.chatapp.model.User;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class UserIndexTest {
+
+    private static List<Integer> ids(List<User> users) {
+        return users.stream().map(User::getId).collect(Collectors.toList());
+    }
+
+    private static UserIndex loaded() {
+        UserIndex index = new UserIndex();
+        index.load(1, "alice@example.com", "Alice Smith");
+        index.load(2, "bob@example.com", "bob_jones");
+        index.load(3, "carol@example.org", "Carol");
+        index.finishLoad();
+        return index;
+    }
+
+    @Test
+    void findsUsersByEmailUsernameAndLaterWordsIgnoringCase() {
+        UserIndex index = loaded();
+        assertEquals(List.of(1), ids(index.search("ALI", 10)));
+        assertEquals(List.of(1), ids(index.search("smi", 10)));
+        assertEquals(List.of(2), ids(index.search("jones", 10)));
+        assertEquals(List.of(3), ids(index.search("carol@", 10)));
+        assertTrue(index.search("zed", 10).isEmpty());
+        assertTrue(index.search("  ", 10).isEmpty());
+    }
+
+    @Test
+    void returnsEachUserOnceWithItsDetails() {
+        UserIndex index = loaded();
+        List<User> results = index.search("bob", 10);
+        assertEquals(1, results.size());
+        assertEquals("bob@example.com", results.get(0).getEmail());
+        assertEquals("bob_jones", results.get(0).getUsername());
+    }
+
+    @Test
+    void ordersResultsByMatchingTextAndHonoursTheLimit() {
+        UserIndex index = new UserIndex();
+        index.load(1, "c@example.com", "sam c");
+        index.load(2, "a@example.com", "sam a");
+        index.load(3, "b@example.com", "sam b");
+        index.finishLoad();
+        assertEquals(List.of(2, 3, 1), ids(index.search("sam", 10)));
+        assertEquals(List.of(2, 3), ids(index.search("sam", 2)));
+    }
+
+    @Test
+    void keepsRegistrationsMadeWhileLoading() {
+        UserIndex index = new UserIndex();
+        index.load(1, "alice@example.com", "alice");
+        index.add(2, "dave@example.com", "dave");
+        assertFalse(index.isReady());
+        index.finishLoad();
+        assertTrue(index.isReady());
+        assertEquals(2, index.size());
+        assertEquals(List.of(2), ids(index.search("dave", 10)));
+    }
+
+    @Test
+    void findsUsersAddedAfterTheLoadBeforeAndAfterTheMerge() {
+        UserIndex index = loaded();
+        for (int id = 4; id < 1004; id++) {
+            index.add(id, "user" + id + "@example.com", "user " + id);
+        }
+        assertEquals(1003, index.size());
+        assertEquals(List.of(500), ids(index.search("user500@", 10)));
+        assertEquals(List.of(1003), ids(index.search("1003", 10)));
+        assertEquals(UserIndex.MAX_RESULTS, index.search("user", 1000).size());
+        assertEquals(List.of(1), ids(index.search("alice", 10)));
+    }
+}
@@ -0,0 +1,77 @@
+package com.chatapp.server;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DedupWindowTest {
+
+    @Test
+    void duplicateOfPendingSubmissionIsPending() {
+        DedupWindow window = new DedupWindow(8, 1, TimeUnit.MINUTES);
+        assertNull(window.claim("alice", "m1"));
+        DedupWindow.Result duplicate = window.claim("alice", "m1");
+        assertNotNull(duplicate);
+        assertTrue(duplicate.isPending());
+    }
+
+    @Test
+    void duplicateOfCompletedSubmissionCarriesItsResult() {
+        DedupWindow window = new DedupWindow(8, 1, TimeUnit.MINUTES);
+        assertNull(window.claim("alice", "m1"));
+        window.complete("alice", "m1", "public", 12, 345);
+        DedupWindow.Result duplicate = window.claim("alice", "m1");
+        assertFalse(duplicate.isPending());
+        assertEquals("public", duplicate.conversation);
+        assertEquals(12, duplicate.seq);
+        assertEquals(345, duplicate.messageId);
+    }
+
+    @Test
+    void idsArePerSender() {
+        DedupWindow window = new DedupWindow(8, 1, TimeUnit.MINUTES);
+        assertNull(window.claim("alice", "m1"));
+        assertNull(window.claim("bob", "m1"));
+    }
+
+    @Test
+    void releasedClaimCanBeClaimedAgain() {
+        DedupWindow window = new DedupWindow(8, 1, TimeUnit.MINUTES);
+        assertNull(window.claim("alice", "m1"));
+        window.release("alice", "m1");
+        assertNull(window.claim("alice", "m1"));
+    }
+
+    @Test
+    void releaseKeepsCompletedSubmissions() {
+        DedupWindow window = new DedupWindow(8, 1, TimeUnit.MINUTES);
+        assertNull(window.claim("alice", "m1"));
+        window.complete("alice", "m1", "public", 3, 4);
+        window.release("alice", "m1");
+        assertEquals(3, window.claim("alice", "m1").seq);
+    }
+
+    @Test
+    void idsLeaveTheWindowWhenTheRingWraps() {
+        DedupWindow window = new DedupWindow(4, 1, TimeUnit.MINUTES);
+        for (int i = 0; i < 5; i++) {
+            assertNull(window.claim("alice", "m" + i));
+        }
+        assertNull(window.claim("alice", "m0"));
+        assertNotNull(window.claim("alice", "m4"));
+    }
+
+    @Test
+    void idsLeaveTheWindowAfterTheTimeLimit() throws InterruptedException {
+        DedupWindow window = new DedupWindow(8, 20, TimeUnit.MILLISECONDS);
+        assertNull(window.claim("alice", "m1"));
+        Thread.sleep(50);
+        assertNull(window.claim("alice", "m1"));
+    }
+}
@@ -0,0 +1,45 @@
+package com.chatapp.server;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TokenBucketTest {
+
+    @Test
+    void allowsABurstOfCapacityThenRefuses() {
+        TokenBucket bucket = new TokenBucket(5, 0.001);
+        for (int i = 0; i < 5; i++) {
+            assertTrue(bucket.tryAcquire());
+        }
+        assertFalse(bucket.tryAcquire());
+    }
+
+    @Test
+    void refusesMorePermitsThanAvailable() {
+        TokenBucket bucket = new TokenBucket(10, 0.001);
+        assertTrue(bucket.tryAcquire(7));
+        assertFalse(bucket.tryAcquire(4));
+        assertTrue(bucket.tryAcquire(3));
+    }
+
+    @Test
+    void refillsOverTime() throws InterruptedException {
+        TokenBucket bucket = new TokenBucket(1, 100);
+        assertTrue(bucket.tryAcquire());
+        assertFalse(bucket.tryAcquire());
+        Thread.sleep(50);
+        assertTrue(bucket.tryAcquire());
+    }
+
+    @Test
+    void acquireWaitsForTheRefill() throws InterruptedException {
+        TokenBucket bucket = new TokenBucket(10, 200);
+        assertTrue(bucket.tryAcquire(10));
+        long start = System.nanoTime();
+        bucket.acquire(10);
+        long waitedMillis = (System.nanoTime() - start) / 1_000_000;
+        assertTrue(waitedMillis >= 40, "waited " + waitedMillis + " ms");
+    }
+}
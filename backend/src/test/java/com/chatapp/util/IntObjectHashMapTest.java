@@ -0,0 +1,86 @@
+package com.chatapp.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class IntObjectHashMapTest {
+
+    @Test
+    void putGetAndReplace() {
+        IntObjectHashMap<String> map = new IntObjectHashMap<>();
+        assertNull(map.put(7, "a"));
+        assertEquals("a", map.put(7, "b"));
+        assertEquals("b", map.get(7));
+        assertTrue(map.containsKey(7));
+        assertFalse(map.containsKey(8));
+        assertNull(map.get(8));
+        assertEquals(1, map.size());
+    }
+
+    @Test
+    void rejectsNonPositiveKeys() {
+        IntObjectHashMap<String> map = new IntObjectHashMap<>();
+        assertThrows(IllegalArgumentException.class, () -> map.put(0, "zero"));
+        assertThrows(IllegalArgumentException.class, () -> map.put(-1, "negative"));
+    }
+
+    @Test
+    void removeKeepsCollidingKeysReachable() {
+        IntObjectHashMap<Integer> map = new IntObjectHashMap<>(4);
+        for (int key = 1; key <= 1000; key++) {
+            map.put(key, key);
+        }
+        for (int key = 1; key <= 1000; key += 2) {
+            assertEquals(key, map.remove(key));
+        }
+        assertEquals(500, map.size());
+        for (int key = 1; key <= 1000; key++) {
+            assertEquals(key % 2 == 0 ? Integer.valueOf(key) : null, map.get(key));
+        }
+        assertNull(map.remove(1));
+    }
+
+    @Test
+    void matchesHashMapUnderRandomOperations() {
+        IntObjectHashMap<Integer> map = new IntObjectHashMap<>();
+        Map<Integer, Integer> expected = new HashMap<>();
+        Random random = new Random(42);
+        for (int i = 0; i < 100_000; i++) {
+            int key = 1 + random.nextInt(2000);
+            if (random.nextInt(3) == 0) {
+                assertEquals(expected.remove(key), map.remove(key));
+            } else {
+                assertEquals(expected.put(key, i), map.put(key, i));
+            }
+        }
+        assertEquals(expected.size(), map.size());
+        int[] keys = map.keys();
+        Arrays.sort(keys);
+        assertArrayEquals(expected.keySet().stream().mapToInt(Integer::intValue).sorted().toArray(), keys);
+        int[] sum = new int[1];
+        map.forEachValue(value -> sum[0] += value);
+        assertEquals(expected.values().stream().mapToInt(Integer::intValue).sum(), sum[0]);
+    }
+
+    @Test
+    void clearEmptiesTheMap() {
+        IntObjectHashMap<String> map = new IntObjectHashMap<>();
+        map.put(1, "a");
+        map.put(2, "b");
+        map.clear();
+        assertTrue(map.isEmpty());
+        assertNull(map.get(1));
+        assertEquals(0, map.keys().length);
+    }
+}
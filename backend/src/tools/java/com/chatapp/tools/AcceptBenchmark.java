@@ -0,0 +1,176 @@
+package com.chatapp.tools;
+
+import com.chatapp.server.MainServer;
+import com.chatapp.server.ServerMetrics;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Measures how many connections per second the server accepts, as in a reconnect storm: client
+ * threads connect, optionally wait for one round trip (ping/pong), and reset the connection, as
+ * fast as they can. The server runs in this process on the stand-in database (needs -Ploadtest).
+ *
+ * Usage (options are --key=value):
+ *   java -cp target/chat-server-1.0-SNAPSHOT-jar-with-dependencies.jar com.chatapp.tools.AcceptBenchmark \
+ *        --acceptors=1 --threads=32
+ *
+ *   --acceptors  server.acceptors of the server (default 4)
+ *   --threads    connecting client threads (default 16)
+ *   --duration   measured seconds, after one second of warmup (default 5)
+ *   --ping       wait for the server to answer a ping on every connection (default false)
+ *   --port       server port (default 18110)
+ *
+ * On Linux the kernel's listen queue overflows during the run are reported as well.
+ */
+public class AcceptBenchmark {
+    private static final Path NETSTAT = Paths.get("/proc/net/netstat");
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            if (arg.startsWith("--") && arg.contains("=")) {
+                options.put(arg.substring(2, arg.indexOf('=')), arg.substring(arg.indexOf('=') + 1));
+            } else {
+                System.err.println("Ignoring argument: " + arg);
+            }
+        }
+        int port = Integer.parseInt(options.getOrDefault("port", "18110"));
+        int threads = Integer.parseInt(options.getOrDefault("threads", "16"));
+        int duration = Integer.parseInt(options.getOrDefault("duration", "5"));
+        boolean ping = Boolean.parseBoolean(options.getOrDefault("ping", "false"));
+
+        StandInDatabase.start();
+        System.setProperty("server.port", Integer.toString(port));
+        System.setProperty("server.acceptors", options.getOrDefault("acceptors", "4"));
+        System.setProperty("server.maxConnections", "1000000");
+        System.setProperty("server.maxConnectionsPerIp", "1000000");
+        System.setProperty("ratelimit.user.perSecond", "1000000");
+        System.setProperty("ratelimit.user.burst", "1000000");
+        System.setProperty("attachments.port", "0");
+        System.setProperty("attachments.dir", Files.createTempDirectory("chat-attachments").toString());
+        System.setProperty("archive.dir", Files.createTempDirectory("chat-archive").toString());
+
+        PrintStream report = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        System.setErr(new PrintStream(OutputStream.nullOutputStream()));
+        Thread serverThread = new Thread(() -> new MainServer().start(), "embedded-server");
+        serverThread.setDaemon(true);
+        serverThread.start();
+        waitForPort(port);
+
+        LongAdder connected = new LongAdder();
+        LongAdder failed = new LongAdder();
+        long end = System.nanoTime() + (duration + 1) * 1_000_000_000L;
+        List<Thread> clients = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            Thread client = new Thread(() -> {
+                while (System.nanoTime() < end) {
+                    try {
+                        connectOnce(port, ping);
+                        connected.increment();
+                    } catch (IOException e) {
+                        failed.increment();
+                    }
+                }
+            }, "client-" + i);
+            client.start();
+            clients.add(client);
+        }
+
+        Thread.sleep(1000); // warmup
+        LongAdder accepted = ServerMetrics.getInstance().counter("connections.accepted");
+        long acceptedBefore = accepted.sum();
+        long connectedBefore = connected.sum();
+        long failedBefore = failed.sum();
+        long[] overflowsBefore = listenOverflows();
+        long start = System.nanoTime();
+        for (Thread client : clients) {
+            client.join();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        long[] overflowsAfter = listenOverflows();
+
+        report.printf("🔌 %s acceptors, %d client threads%s: %.0f connections/s accepted, %.0f/s completed by clients, %d failed%n",
+                System.getProperty("server.acceptors"), threads, ping ? " (with ping)" : "",
+                (accepted.sum() - acceptedBefore) / seconds, (connected.sum() - connectedBefore) / seconds,
+                failed.sum() - failedBefore);
+        if (overflowsBefore != null && overflowsAfter != null) {
+            report.printf("   listen queue overflows: %d, dropped SYNs: %d%n",
+                    overflowsAfter[0] - overflowsBefore[0], overflowsAfter[1] - overflowsBefore[1]);
+        }
+        System.exit(0);
+    }
+
+    private static void connectOnce(int port, boolean ping) throws IOException {
+        try (Socket socket = new Socket()) {
+            // Reset instead of a normal close, so no TIME_WAIT entries pile up on the client side
+            socket.setSoLinger(true, 0);
+            socket.connect(new InetSocketAddress("localhost", port), 5000);
+            if (ping) {
+                socket.setSoTimeout(5000);
+                PrintWriter out = new PrintWriter(socket.getOutputStream(), true, StandardCharsets.UTF_8);
+                BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+                out.println("{\"type\":\"ping\",\"content\":\"\"}");
+                if (in.readLine() == null) {
+                    throw new IOException("Connection closed before the pong");
+                }
+            }
+        }
+    }
+
+    private static void waitForPort(int port) throws Exception {
+        long deadline = System.currentTimeMillis() + 30_000;
+        while (System.currentTimeMillis() < deadline) {
+            try (Socket socket = new Socket()) {
+                socket.connect(new InetSocketAddress("localhost", port), 100);
+                return;
+            } catch (IOException e) {
+                Thread.sleep(50);
+            }
+        }
+        throw new IOException("Server did not start on port " + port);
+    }
+
+    /**
+     * Read TcpExt ListenOverflows and ListenDrops, or null where /proc/net/netstat does not exist
+     */
+    private static long[] listenOverflows() {
+        try {
+            List<String> lines = Files.readAllLines(NETSTAT);
+            for (int i = 0; i + 1 < lines.size(); i++) {
+                if (lines.get(i).startsWith("TcpExt:") && lines.get(i + 1).startsWith("TcpExt:")) {
+                    String[] names = lines.get(i).split("\\s+");
+                    String[] values = lines.get(i + 1).split("\\s+");
+                    long[] result = new long[2];
+                    for (int j = 1; j < names.length && j < values.length; j++) {
+                        if (names[j].equals("ListenOverflows")) {
+                            result[0] = Long.parseLong(values[j]);
+                        } else if (names[j].equals("ListenDrops")) {
+                            result[1] = Long.parseLong(values[j]);
+                        }
+                    }
+                    return result;
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            // Not Linux, or not readable
+        }
+        return null;
+    }
+}
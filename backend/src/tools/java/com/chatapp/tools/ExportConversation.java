@@ -0,0 +1,141 @@
+package com.chatapp.tools;
+
+import com.chatapp.auth.UserAuthService;
+import com.chatapp.auth.UserDirectory;
+import com.chatapp.database.DatabaseManager;
+import com.chatapp.database.MessageRepository;
+import com.chatapp.export.ConversationExporter;
+import com.chatapp.model.Conversation;
+import com.chatapp.server.ServerConfig;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Exports one conversation, archived messages included, as JSON Lines (gzip if the output ends in ".gz").
+ *
+ * Usage (options are --key=value):
+ *   java -cp target/chat-server-1.0-SNAPSHOT-jar-with-dependencies.jar com.chatapp.tools.ExportConversation \
+ *        --conversation=public --out=public.jsonl.gz
+ *
+ *   --conversation   conversation key: public or dm:&lt;id&gt;:&lt;id&gt; (default public)
+ *   --between        two comma separated emails, instead of --conversation, to export their private messages
+ *   --out            output file (required)
+ *   --rowsPerSecond  throttle, 0 for none (default export.rowsPerSecond)
+ *   --standin        export from a stand-in H2 file database instead of MySQL (needs -Ploadtest)
+ *   --seed           with --standin, number of public messages to fill it with first (default 1000000)
+ *
+ * Checking that the export runs in constant memory:
+ *   java -Xmx32m -cp ... com.chatapp.tools.ExportConversation --standin=true --seed=2000000 \
+ *        --rowsPerSecond=0 --out=/tmp/public.jsonl.gz
+ */
+public class ExportConversation {
+    private static final int SEED_BATCH = 10_000;
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            if (arg.startsWith("--") && arg.contains("=")) {
+                options.put(arg.substring(2, arg.indexOf('=')), arg.substring(arg.indexOf('=') + 1));
+            } else {
+                System.err.println("Ignoring argument: " + arg);
+            }
+        }
+        if (!options.containsKey("out")) {
+            System.err.println("Missing --out=<file>");
+            System.exit(2);
+        }
+
+        if (Boolean.parseBoolean(options.getOrDefault("standin", "false"))) {
+            prepareStandInDatabase(Integer.parseInt(options.getOrDefault("seed", "1000000")));
+        }
+
+        String conversation = options.getOrDefault("conversation", Conversation.PUBLIC);
+        if (options.containsKey("between")) {
+            String[] emails = options.get("between").split(",");
+            UserDirectory users = new UserDirectory(new UserAuthService());
+            int first = users.idOf(emails[0].trim());
+            int second = emails.length > 1 ? users.idOf(emails[1].trim()) : 0;
+            if (first <= 0 || second <= 0) {
+                System.err.println("❌ Unknown user in --between=" + options.get("between"));
+                System.exit(1);
+            }
+            conversation = Conversation.privateKey(first, second);
+        }
+
+        int rowsPerSecond = Integer.parseInt(options.getOrDefault("rowsPerSecond",
+                Integer.toString(ServerConfig.getInstance().getInt("export.rowsPerSecond", 5000))));
+        Path out = Paths.get(options.get("out"));
+
+        System.out.println("📤 Exporting " + conversation + " to " + out
+                + (rowsPerSecond > 0 ? " at up to " + rowsPerSecond + " rows/s" : ""));
+        long start = System.nanoTime();
+        long rows = new ConversationExporter(new MessageRepository(), rowsPerSecond).export(conversation, out);
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        System.out.printf("✅ %d messages, %.1f MB in %.1f s (%.0f rows/s)%n",
+                rows, Files.size(out) / 1e6, seconds, rows / Math.max(seconds, 1e-9));
+        System.out.printf("   heap limit %.1f MB, live after the last GC %.1f MB%n",
+                Runtime.getRuntime().maxMemory() / 1e6, heapAfterLastGc() / 1e6);
+    }
+
+    /**
+     * Create a file database (so the seeded rows are not on the heap) with two users and
+     * the given number of public messages
+     */
+    private static void prepareStandInDatabase(int messages) throws Exception {
+        File dir = Files.createTempDirectory("chat-export").toFile();
+        dir.deleteOnExit();
+        new File(dir, "chat_app.mv.db").deleteOnExit();
+        StandInDatabase.start("jdbc:h2:file:" + new File(dir, "chat_app").getAbsolutePath()
+                + ";MODE=MySQL;DATABASE_TO_LOWER=TRUE;CACHE_SIZE=8192");
+        System.setProperty("archive.dir", Files.createTempDirectory("chat-archive").toString());
+
+        long start = System.nanoTime();
+        try (Connection conn = DatabaseManager.getInstance().getConnection()) {
+            try (Statement stmt = conn.createStatement()) {
+                stmt.execute("INSERT INTO users (email, password, username) VALUES "
+                        + "('export-a@export.local', '-', 'Export A'), ('export-b@export.local', '-', 'Export B')");
+            }
+            conn.setAutoCommit(false);
+            try (PreparedStatement pstmt = conn.prepareStatement(
+                    "INSERT INTO messages (sender_id, message, conversation, seq) VALUES (?, ?, ?, ?)")) {
+                for (int i = 1; i <= messages; i++) {
+                    pstmt.setInt(1, 1 + i % 2);
+                    pstmt.setString(2, "seeded message " + i + " for the export check");
+                    pstmt.setString(3, Conversation.PUBLIC);
+                    pstmt.setLong(4, i);
+                    pstmt.addBatch();
+                    if (i % SEED_BATCH == 0 || i == messages) {
+                        pstmt.executeBatch();
+                        conn.commit();
+                    }
+                }
+            }
+        }
+        System.out.printf("💾 Seeded %d messages in %.1f s%n", messages, (System.nanoTime() - start) / 1e9);
+    }
+
+    /**
+     * Heap retained after the most recent collection of each pool, i.e. what the export keeps alive
+     */
+    private static long heapAfterLastGc() {
+        long used = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP && pool.getCollectionUsage() != null) {
+                used += pool.getCollectionUsage().getUsed();
+            }
+        }
+        return used;
+    }
+}
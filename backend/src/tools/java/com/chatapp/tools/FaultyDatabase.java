@@ -0,0 +1,149 @@
+package com.chatapp.tools;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.Driver;
+import java.sql.DriverManager;
+import java.sql.DriverPropertyInfo;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.SQLNonTransientConnectionException;
+import java.sql.SQLTimeoutException;
+import java.sql.Statement;
+import java.util.Properties;
+import java.util.logging.Logger;
+
+/**
+ * The stand-in database behind a JDBC driver that injects faults, to rehearse database outages
+ * offline (needs -Ploadtest). URLs are "jdbc:faulty:" followed by the H2 URL.
+ *
+ * DOWN refuses every connection and statement at once, like a stopped server. SLOW delays them
+ * by delayMs, but never past the login timeout or a statement's query timeout, which end the wait
+ * with an {@link SQLTimeoutException}, like a database that stopped answering.
+ */
+public final class FaultyDatabase implements Driver {
+    public static final String PREFIX = "jdbc:faulty:";
+
+    public enum Fault { NONE, DOWN, SLOW }
+
+    private static volatile Fault fault = Fault.NONE;
+    private static volatile long delayMs;
+
+    static {
+        try {
+            DriverManager.registerDriver(new FaultyDatabase());
+        } catch (SQLException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    /**
+     * Create the stand-in database and point DatabaseManager at it through this driver.
+     * Must be called before DatabaseManager is first used.
+     */
+    public static void start() throws SQLException, IOException {
+        StandInDatabase.start();
+        System.setProperty("db.url", PREFIX + StandInDatabase.URL);
+        System.setProperty("db.driver", FaultyDatabase.class.getName());
+    }
+
+    /**
+     * Change the fault injected from now on
+     * @param delay how long SLOW delays each call, ignored otherwise
+     */
+    public static void inject(Fault newFault, long delay) {
+        delayMs = delay;
+        fault = newFault;
+    }
+
+    @Override
+    public Connection connect(String url, Properties info) throws SQLException {
+        if (!acceptsURL(url)) {
+            return null;
+        }
+        injectFault(DriverManager.getLoginTimeout());
+        Connection connection = DriverManager.getConnection(url.substring(PREFIX.length()), info);
+        InvocationHandler handler = (proxy, method, args) -> {
+            Object result = invoke(connection, method, args);
+            return result instanceof Statement ? faulty((Statement) result, method.getReturnType()) : result;
+        };
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                new Class<?>[] {Connection.class}, handler);
+    }
+
+    private static Object faulty(Statement statement, Class<?> type) {
+        InvocationHandler handler = (proxy, method, args) -> {
+            if (method.getName().startsWith("execute")) {
+                injectFault(statement.getQueryTimeout());
+            }
+            return invoke(statement, method, args);
+        };
+        return Proxy.newProxyInstance(Statement.class.getClassLoader(), new Class<?>[] {type}, handler);
+    }
+
+    /**
+     * @param timeoutSeconds the caller's timeout, 0 for none
+     */
+    private static void injectFault(int timeoutSeconds) throws SQLException {
+        switch (fault) {
+            case DOWN:
+                throw new SQLNonTransientConnectionException("Injected fault: connection refused", "08001");
+            case SLOW:
+                long delay = delayMs;
+                long timeoutMs = timeoutSeconds * 1000L;
+                try {
+                    Thread.sleep(timeoutMs > 0 ? Math.min(delay, timeoutMs) : delay);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                if (timeoutMs > 0 && delay > timeoutMs) {
+                    throw new SQLTimeoutException("Injected fault: timed out after " + timeoutMs + " ms");
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    @Override
+    public boolean acceptsURL(String url) {
+        return url != null && url.startsWith(PREFIX);
+    }
+
+    @Override
+    public DriverPropertyInfo[] getPropertyInfo(String url, Properties info) {
+        return new DriverPropertyInfo[0];
+    }
+
+    @Override
+    public int getMajorVersion() {
+        return 1;
+    }
+
+    @Override
+    public int getMinorVersion() {
+        return 0;
+    }
+
+    @Override
+    public boolean jdbcCompliant() {
+        return false;
+    }
+
+    @Override
+    public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+        throw new SQLFeatureNotSupportedException();
+    }
+}
@@ -0,0 +1,120 @@
+package com.chatapp.tools;
+
+import com.chatapp.filter.AhoCorasick;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Measures the per-message cost of the banned-term filter: the {@link AhoCorasick} automaton
+ * against the naive approach of searching the message once per term.
+ *
+ * Usage (options are --key=value):
+ *   java -cp target/chat-server-1.0-SNAPSHOT-jar-with-dependencies.jar com.chatapp.tools.FilterBenchmark \
+ *        --terms=5000 --length=200
+ *
+ *   --terms      number of random banned terms (default 5000)
+ *   --length     message length in chars (default 200)
+ *   --messages   distinct messages, cycled through (default 10000)
+ *   --hitRate    fraction of messages containing a banned term (default 0.05)
+ *   --seconds    measuring time per variant, after as much again of warmup (default 3)
+ *   --seed       random seed (default 42)
+ */
+public class FilterBenchmark {
+    private static final String WORD_CHARS = "abcdefghijklmnopqrstuvwxyz";
+
+    public static void main(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            if (arg.startsWith("--") && arg.contains("=")) {
+                options.put(arg.substring(2, arg.indexOf('=')), arg.substring(arg.indexOf('=') + 1));
+            } else {
+                System.err.println("Ignoring argument: " + arg);
+            }
+        }
+        int termCount = Integer.parseInt(options.getOrDefault("terms", "5000"));
+        int length = Integer.parseInt(options.getOrDefault("length", "200"));
+        int messageCount = Integer.parseInt(options.getOrDefault("messages", "10000"));
+        double hitRate = Double.parseDouble(options.getOrDefault("hitRate", "0.05"));
+        long seconds = Long.parseLong(options.getOrDefault("seconds", "3"));
+        Random random = new Random(Long.parseLong(options.getOrDefault("seed", "42")));
+
+        List<String> terms = new ArrayList<>(termCount);
+        for (int i = 0; i < termCount; i++) {
+            terms.add(word(random, 4 + random.nextInt(6)));
+        }
+        String[] messages = new String[messageCount];
+        for (int i = 0; i < messageCount; i++) {
+            StringBuilder text = new StringBuilder(length + 16);
+            while (text.length() < length) {
+                text.append(word(random, 2 + random.nextInt(8))).append(' ');
+            }
+            if (random.nextDouble() < hitRate) {
+                text.insert(random.nextInt(length), " " + terms.get(random.nextInt(termCount)).toUpperCase(Locale.ROOT) + " ");
+            }
+            messages[i] = text.toString();
+        }
+
+        long start = System.nanoTime();
+        AhoCorasick automaton = AhoCorasick.compile(terms);
+        System.out.printf("🚫 Compiled %d terms into %d states in %d ms%n", automaton.getTermCount(),
+                automaton.getStateCount(), (System.nanoTime() - start) / 1_000_000);
+
+        String[] lowerTerms = terms.toArray(new String[0]);
+        measure("aho-corasick mask", seconds, messages, text -> automaton.mask(text, '*') != text);
+        measure("aho-corasick match", seconds, messages, automaton::matches);
+        measure("naive contains", seconds, messages, text -> {
+            String lower = text.toLowerCase(Locale.ROOT);
+            for (String term : lowerTerms) {
+                if (lower.contains(term)) {
+                    return true;
+                }
+            }
+            return false;
+        });
+    }
+
+    private interface Filter {
+        boolean test(String text);
+    }
+
+    private static void measure(String name, long seconds, String[] messages, Filter filter) {
+        run(seconds, messages, filter); // warmup
+        long[] result = run(seconds, messages, filter);
+        System.out.printf("   %-20s %10.0f ns/message, %.1f%% matched%n", name,
+                (double) result[0] / result[1], 100.0 * result[2] / result[1]);
+    }
+
+    /**
+     * @return elapsed nanos, messages filtered, messages matched
+     */
+    private static long[] run(long seconds, String[] messages, Filter filter) {
+        long deadline = System.nanoTime() + seconds * 1_000_000_000L;
+        long start = System.nanoTime();
+        long count = 0;
+        long matched = 0;
+        long now;
+        do {
+            for (String message : messages) {
+                if (filter.test(message)) {
+                    matched++;
+                }
+            }
+            count += messages.length;
+            now = System.nanoTime();
+        } while (now < deadline);
+        return new long[] { now - start, count, matched };
+    }
+
+    private static String word(Random random, int length) {
+        char[] chars = new char[length];
+        for (int i = 0; i < length; i++) {
+            chars[i] = WORD_CHARS.charAt(random.nextInt(WORD_CHARS.length()));
+        }
+        return new String(chars);
+    }
+}
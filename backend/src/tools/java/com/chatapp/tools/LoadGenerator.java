@@ -0,0 +1,494 @@
+package com.chatapp.tools;
+
+import com.chatapp.server.MainServer;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Load and soak test client for the chat protocol.
+ *
+ * Opens many concurrent connections, registers and logs in a user on each, then sends a
+ * configurable mix of requests at a fixed rate per client. Every generated message carries its
+ * send time ("lg|&lt;nanoTime&gt;|...") so receivers can measure end-to-end delivery latency.
+ *
+ * Usage (options are --key=value):
+ *   mvn -Ploadtest package
+ *   java -cp target/chat-server-1.0-SNAPSHOT-jar-with-dependencies.jar com.chatapp.tools.LoadGenerator \
+ *        --embedded=true --clients=1000 --rate=0.5 --duration=60
+ *
+ *   --embedded   start a MainServer in this process on a stand-in H2 database (default true)
+ *   --host/--port server to connect to when not embedded (default localhost:8081)
+ *   --clients    number of connections (default 500)
+ *   --rate       requests per second per client (default 0.5)
+ *   --mix        weighted request mix (default message:70,private_message:20,typing:10,get_history:0)
+ *   --duration   measured run time in seconds, after warm-up (default 60)
+ *   --warmup     seconds of load before measuring starts (default 5)
+ *   --interval   seconds between interim reports, useful for soak tests (default 10)
+ *   --payload    extra characters added to each message (default 32)
+ *   --serverLog  keep the embedded server's console output (default false)
+ *
+ * The summary includes the server's socket writes per second and frames per write, to compare
+ * delivery modes (e.g. -Ddelivery.batching=true). With an embedded server it also reports CPU per
+ * delivered frame; that is the CPU time of the whole process, so it includes the simulated clients.
+ */
+public class LoadGenerator {
+    private static final String MARKER = "lg|";
+
+    private final Map<String, String> options;
+    private final PrintStream report;
+    private final List<SimClient> clients = new ArrayList<>();
+    private final String[] mixTypes;
+    private final int[] mixWeights;
+    private final String payload;
+    private final String runId = Long.toString(System.currentTimeMillis(), 36);
+
+    private final LatencyHistogram deliveryTotal = new LatencyHistogram();
+    private final LatencyHistogram deliveryInterval = new LatencyHistogram();
+    private final LatencyHistogram historyTotal = new LatencyHistogram();
+    private final Map<String, LongAdder> sentByType = new LinkedHashMap<>();
+    private final LongAdder sentInterval = new LongAdder();
+    private final LongAdder deliveredInterval = new LongAdder();
+    private final LongAdder delivered = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private volatile boolean measuring = false;
+    private boolean embedded = false;
+
+    public LoadGenerator(Map<String, String> options, PrintStream report) {
+        this.options = options;
+        this.report = report;
+
+        String[] entries = option("mix", "message:70,private_message:20,typing:10,get_history:0").split(",");
+        this.mixTypes = new String[entries.length];
+        this.mixWeights = new int[entries.length];
+        for (int i = 0; i < entries.length; i++) {
+            String[] parts = entries[i].trim().split(":");
+            mixTypes[i] = parts[0];
+            mixWeights[i] = Integer.parseInt(parts[1]);
+            sentByType.put(parts[0], new LongAdder());
+        }
+        this.payload = "x".repeat(Integer.parseInt(option("payload", "32")));
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            if (arg.startsWith("--") && arg.contains("=")) {
+                options.put(arg.substring(2, arg.indexOf('=')), arg.substring(arg.indexOf('=') + 1));
+            } else {
+                System.err.println("Ignoring argument: " + arg);
+            }
+        }
+
+        PrintStream console = System.out;
+        LoadGenerator generator = new LoadGenerator(options, console);
+        if (Boolean.parseBoolean(generator.option("embedded", "true"))) {
+            generator.embedded = true;
+            generator.startEmbeddedServer();
+        }
+        generator.run();
+        System.exit(0);
+    }
+
+    String option(String key, String defaultValue) {
+        return options.getOrDefault(key, defaultValue);
+    }
+
+    /**
+     * Start a MainServer in this JVM on the stand-in database, with limits raised for the test
+     */
+    private void startEmbeddedServer() throws Exception {
+        int clientCount = Integer.parseInt(option("clients", "500"));
+        StandInDatabase.start();
+        System.setProperty("server.port", option("port", "8081"));
+        System.setProperty("server.maxConnections", Integer.toString(clientCount + 100));
+        System.setProperty("server.maxConnectionsPerIp", Integer.toString(clientCount + 100));
+        System.setProperty("ratelimit.user.perSecond", "1000000");
+        System.setProperty("ratelimit.user.burst", "1000000");
+        System.setProperty("ratelimit.types", "");
+        System.setProperty("attachments.port", "0");
+        System.setProperty("attachments.dir", Files.createTempDirectory("chat-attachments").toString());
+        System.setProperty("archive.dir", Files.createTempDirectory("chat-archive").toString());
+
+        if (!Boolean.parseBoolean(option("serverLog", "false"))) {
+            System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        }
+
+        Thread serverThread = new Thread(() -> new MainServer().start(), "embedded-server");
+        serverThread.setDaemon(true);
+        serverThread.start();
+        waitForPort(option("host", "localhost"), Integer.parseInt(option("port", "8081")), 30_000);
+        report.println("🚀 Embedded server started");
+    }
+
+    public void run() throws Exception {
+        String host = option("host", "localhost");
+        int port = Integer.parseInt(option("port", "8081"));
+        int clientCount = Integer.parseInt(option("clients", "500"));
+        double rate = Double.parseDouble(option("rate", "0.5"));
+        int warmup = Integer.parseInt(option("warmup", "5"));
+        int duration = Integer.parseInt(option("duration", "60"));
+        int interval = Integer.parseInt(option("interval", "10"));
+
+        report.println("🔌 Connecting " + clientCount + " clients to " + host + ":" + port + " ...");
+        long connectStart = System.nanoTime();
+        ExecutorService connectPool = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors() * 2);
+        List<Future<SimClient>> pending = new ArrayList<>();
+        for (int i = 0; i < clientCount; i++) {
+            int index = i;
+            pending.add(connectPool.submit(() -> connect(host, port, index)));
+        }
+        for (Future<SimClient> future : pending) {
+            try {
+                clients.add(future.get());
+            } catch (Exception e) {
+                errors.increment();
+                report.println("❌ Client failed to connect: " + e.getCause());
+            }
+        }
+        connectPool.shutdown();
+        report.printf("✅ %d clients logged in after %.1f s%n", clients.size(), (System.nanoTime() - connectStart) / 1e9);
+        if (clients.isEmpty()) {
+            return;
+        }
+
+        ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(Runtime.getRuntime().availableProcessors());
+        long periodMicros = (long) (1_000_000 / rate);
+        for (SimClient client : clients) {
+            long initialDelay = ThreadLocalRandom.current().nextLong(periodMicros);
+            scheduler.scheduleAtFixedRate(() -> sendNext(client), initialDelay, periodMicros, TimeUnit.MICROSECONDS);
+        }
+
+        report.println("🔥 Warming up for " + warmup + " s ...");
+        Thread.sleep(warmup * 1000L);
+        resetInterval();
+        sentByType.values().forEach(LongAdder::reset);
+        delivered.reset();
+        Map<String, Long> statsStart = requestStats();
+        long cpuStart = processCpuNanos();
+        measuring = true;
+        long measureStart = System.nanoTime();
+
+        long deadline = measureStart + TimeUnit.SECONDS.toNanos(duration);
+        long intervalStart = measureStart;
+        while (System.nanoTime() < deadline) {
+            Thread.sleep(Math.min(interval * 1000L, Math.max(1, (deadline - System.nanoTime()) / 1_000_000)));
+            long now = System.nanoTime();
+            printInterval((now - intervalStart) / 1e9);
+            intervalStart = now;
+        }
+        measuring = false;
+        double elapsed = (System.nanoTime() - measureStart) / 1e9;
+        scheduler.shutdownNow();
+
+        long cpuUsed = cpuStart >= 0 ? processCpuNanos() - cpuStart : -1;
+        Map<String, Long> statsEnd = requestStats();
+
+        printSummary(elapsed);
+        printDeliveryCost(statsStart, statsEnd, cpuUsed, elapsed);
+        printServerStats(statsEnd);
+        for (SimClient client : clients) {
+            client.close();
+        }
+    }
+
+    private SimClient connect(String host, int port, int index) throws Exception {
+        SimClient client = new SimClient("lg-" + runId + "-" + index + "@load.test");
+        client.open(host, port);
+
+        JsonObject credentials = new JsonObject();
+        credentials.addProperty("email", client.email);
+        credentials.addProperty("password", "load-test-password");
+        credentials.addProperty("username", "Load " + index);
+
+        client.send(frame("register", credentials.toString(), null));
+        client.registered.get(30, TimeUnit.SECONDS);
+        client.send(frame("login", credentials.toString(), null));
+        JsonObject login = client.loggedIn.get(30, TimeUnit.SECONDS);
+        if (!login.get("success").getAsBoolean()) {
+            client.close();
+            throw new IllegalStateException("Login failed for " + client.email);
+        }
+        return client;
+    }
+
+    private void sendNext(SimClient client) {
+        String type = pickType();
+        String content = MARKER + System.nanoTime() + "|" + payload;
+        String receiver = null;
+
+        try {
+            switch (type) {
+                case "private_message":
+                    SimClient peer = clients.get(ThreadLocalRandom.current().nextInt(clients.size()));
+                    receiver = peer.email;
+                    break;
+                case "get_history":
+                    client.historyRequestedAt = System.nanoTime();
+                    content = "";
+                    break;
+                default:
+                    break;
+            }
+            client.send(frame(type, content, receiver));
+            sentByType.get(type).increment();
+            sentInterval.increment();
+        } catch (IOException e) {
+            errors.increment();
+        }
+    }
+
+    private String pickType() {
+        int total = 0;
+        for (int weight : mixWeights) {
+            total += weight;
+        }
+        int pick = ThreadLocalRandom.current().nextInt(Math.max(1, total));
+        for (int i = 0; i < mixTypes.length; i++) {
+            pick -= mixWeights[i];
+            if (pick < 0) {
+                return mixTypes[i];
+            }
+        }
+        return mixTypes[0];
+    }
+
+    private static String frame(String type, String content, String receiver) {
+        JsonObject frame = new JsonObject();
+        frame.addProperty("type", type);
+        frame.addProperty("content", content);
+        if (receiver != null) {
+            frame.addProperty("receiver", receiver);
+        }
+        return frame.toString();
+    }
+
+    private void onFrame(SimClient client, String line) {
+        JsonObject frame = JsonParser.parseString(line).getAsJsonObject();
+        String type = frame.has("type") ? frame.get("type").getAsString() : "";
+        long now = System.nanoTime();
+
+        switch (type) {
+            case "register_response":
+                client.registered.complete(frame);
+                break;
+            case "login_response":
+                client.loggedIn.complete(JsonParser.parseString(frame.get("content").getAsString()).getAsJsonObject());
+                break;
+            case "message":
+            case "private_message":
+            case "typing":
+                String sender = frame.has("sender") && !frame.get("sender").isJsonNull() ? frame.get("sender").getAsString() : "";
+                String content = frame.has("content") && !frame.get("content").isJsonNull() ? frame.get("content").getAsString() : "";
+                if (measuring && !sender.equals(client.email) && content.startsWith(MARKER)) {
+                    int end = content.indexOf('|', MARKER.length());
+                    long sentAt = Long.parseLong(content.substring(MARKER.length(), end));
+                    deliveryTotal.recordNanos(now - sentAt);
+                    deliveryInterval.recordNanos(now - sentAt);
+                    delivered.increment();
+                    deliveredInterval.increment();
+                }
+                break;
+            case "history":
+                long requestedAt = client.historyRequestedAt;
+                if (measuring && requestedAt > 0) {
+                    historyTotal.recordNanos(now - requestedAt);
+                }
+                client.historyRequestedAt = 0;
+                break;
+            case "stats":
+                client.stats.complete(frame);
+                break;
+            case "ping":
+                try {
+                    client.send(frame("pong", "", null));
+                } catch (IOException e) {
+                    errors.increment();
+                }
+                break;
+            case "error":
+                errors.increment();
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void resetInterval() {
+        deliveryInterval.reset();
+        sentInterval.reset();
+        deliveredInterval.reset();
+    }
+
+    private void printInterval(double seconds) {
+        report.printf("[interval %.0fs] sent %.1f/s, delivered %.1f/s, delivery p50=%s p99=%s p999=%s, errors=%d%n",
+                seconds, sentInterval.sum() / seconds, deliveredInterval.sum() / seconds,
+                millis(deliveryInterval.percentile(50)), millis(deliveryInterval.percentile(99)),
+                millis(deliveryInterval.percentile(99.9)), errors.sum());
+        resetInterval();
+    }
+
+    private void printSummary(double seconds) {
+        long sent = 0;
+        report.println();
+        report.println("══════════════ Load test summary ══════════════");
+        report.printf("Clients: %d, measured for %.1f s%n", clients.size(), seconds);
+        for (Map.Entry<String, LongAdder> entry : sentByType.entrySet()) {
+            sent += entry.getValue().sum();
+            report.printf("  sent %-16s %10d%n", entry.getKey(), entry.getValue().sum());
+        }
+        report.printf("Throughput: %.1f requests/s sent, %.1f messages/s delivered%n", sent / seconds, delivered.sum() / seconds);
+        report.printf("Delivery latency (ms): p50=%s p99=%s p999=%s max=%s (n=%d)%n",
+                millis(deliveryTotal.percentile(50)), millis(deliveryTotal.percentile(99)),
+                millis(deliveryTotal.percentile(99.9)), millis(deliveryTotal.max()), deliveryTotal.count());
+        if (historyTotal.count() > 0) {
+            report.printf("History round trip (ms): p50=%s p99=%s p999=%s max=%s (n=%d)%n",
+                    millis(historyTotal.percentile(50)), millis(historyTotal.percentile(99)),
+                    millis(historyTotal.percentile(99.9)), millis(historyTotal.max()), historyTotal.count());
+        }
+        report.println("Errors: " + errors.sum());
+    }
+
+    private void printDeliveryCost(Map<String, Long> start, Map<String, Long> end, long cpuNanos, double seconds) {
+        if (start == null || end == null) {
+            return;
+        }
+        long frames = end.getOrDefault("delivery.frames", 0L) - start.getOrDefault("delivery.frames", 0L);
+        long writes = end.getOrDefault("delivery.writes", 0L) - start.getOrDefault("delivery.writes", 0L);
+        report.printf("Delivery: %.1f frames/s in %.1f socket writes/s (%.2f frames per write)%n",
+                frames / seconds, writes / seconds, writes > 0 ? (double) frames / writes : 0.0);
+        if (embedded && cpuNanos >= 0 && frames > 0) {
+            report.printf("CPU: %.1f µs per delivered frame (process total, %.2f cores)%n",
+                    cpuNanos / 1000.0 / frames, cpuNanos / 1e9 / seconds);
+        }
+    }
+
+    private void printServerStats(Map<String, Long> stats) {
+        report.println("Server stats: " + (stats != null ? stats : "unavailable"));
+    }
+
+    /**
+     * Get the server's counters through the stats request, or null if it does not answer
+     */
+    private Map<String, Long> requestStats() {
+        SimClient client = clients.get(0);
+        try {
+            CompletableFuture<JsonObject> response = new CompletableFuture<>();
+            client.stats = response;
+            client.send(frame("stats", "", null));
+            JsonObject content = JsonParser.parseString(response.get(5, TimeUnit.SECONDS).get("content").getAsString())
+                    .getAsJsonObject();
+            Map<String, Long> stats = new LinkedHashMap<>();
+            for (Map.Entry<String, JsonElement> entry : content.entrySet()) {
+                stats.put(entry.getKey(), entry.getValue().getAsLong());
+            }
+            return stats;
+        } catch (Exception e) {
+            report.println("Server stats unavailable: " + e);
+            return null;
+        }
+    }
+
+    private static long processCpuNanos() {
+        if (ManagementFactory.getOperatingSystemMXBean() instanceof com.sun.management.OperatingSystemMXBean) {
+            return ((com.sun.management.OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean()).getProcessCpuTime();
+        }
+        return -1;
+    }
+
+    private static String millis(long micros) {
+        return String.format("%.3f", micros / 1000.0);
+    }
+
+    static void waitForPort(String host, int port, long timeoutMillis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        while (System.currentTimeMillis() < deadline) {
+            try (Socket socket = new Socket()) {
+                socket.connect(new InetSocketAddress(host, port), 500);
+                return;
+            } catch (IOException e) {
+                Thread.sleep(50);
+            }
+        }
+        throw new IllegalStateException("Server did not start listening on " + host + ":" + port);
+    }
+
+    /**
+     * One simulated user connection with its own reader thread
+     */
+    private class SimClient {
+        final String email;
+        final CompletableFuture<JsonObject> registered = new CompletableFuture<>();
+        final CompletableFuture<JsonObject> loggedIn = new CompletableFuture<>();
+        volatile CompletableFuture<JsonObject> stats = new CompletableFuture<>();
+        volatile long historyRequestedAt;
+        private Socket socket;
+        private Writer out;
+
+        SimClient(String email) {
+            this.email = email;
+        }
+
+        void open(String host, int port) throws IOException {
+            socket = new Socket();
+            socket.setTcpNoDelay(true);
+            socket.connect(new InetSocketAddress(host, port), 10_000);
+            out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8));
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+
+            Thread reader = new Thread(null, () -> {
+                try {
+                    String line;
+                    while ((line = in.readLine()) != null) {
+                        onFrame(this, line);
+                    }
+                } catch (Exception e) {
+                    // Connection closed
+                }
+            }, "lg-reader-" + email, 256 * 1024);
+            reader.setDaemon(true);
+            reader.start();
+        }
+
+        synchronized void send(String frame) throws IOException {
+            out.write(frame);
+            out.write('\n');
+            out.flush();
+        }
+
+        void close() {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // Ignore
+            }
+        }
+    }
+}
@@ -0,0 +1,321 @@
+package com.chatapp.tools;
+
+import com.chatapp.database.SpillLog;
+import com.chatapp.server.MainServer;
+import com.chatapp.server.ServerMetrics;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Rehearses a database outage against a server running in this process on the fault-injecting
+ * stand-in database (needs -Ploadtest).
+ *
+ * Clients log in and chat while the database is up. Then the database goes down (or slow) for
+ * a while: the clients keep chatting, one of them leaves, a newcomer tries to register and the
+ * user list is requested. Once the database is back the drill waits for the spilled writes to be
+ * replayed and checks that every acknowledged message and the presence change reached the database.
+ * Reports the acknowledgement latency before, during and after the outage.
+ *
+ * Usage (options are --key=value):
+ *   mvn -Ploadtest package -DskipTests
+ *   java -cp target/chat-server-1.0-SNAPSHOT-jar-with-dependencies.jar com.chatapp.tools.OutageDrill --fault=slow
+ *
+ *   --clients    chatting clients (default 10)
+ *   --fault      down or slow (default down)
+ *   --delayMs    delay of each database call with --fault=slow (default 30000, i.e. past every timeout)
+ *   --outageMs   how long the outage lasts (default 5000)
+ *   --port       server port (default 18140)
+ *   --serverLog  show the server's console output (default false)
+ */
+public class OutageDrill {
+    private static final int READ_TIMEOUT_MS = 30_000;
+    private static final long RECOVERY_TIMEOUT_MS = 30_000;
+
+    private final Map<String, String> options;
+    private final int port;
+
+    public OutageDrill(Map<String, String> options) {
+        this.options = options;
+        this.port = Integer.parseInt(options.getOrDefault("port", "18140"));
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            if (arg.startsWith("--") && arg.contains("=")) {
+                options.put(arg.substring(2, arg.indexOf('=')), arg.substring(arg.indexOf('=') + 1));
+            } else {
+                System.err.println("Ignoring argument: " + arg);
+            }
+        }
+        new OutageDrill(options).run();
+        System.exit(0);
+    }
+
+    public void run() throws Exception {
+        int clientCount = Integer.parseInt(options.getOrDefault("clients", "10"));
+        FaultyDatabase.Fault fault = FaultyDatabase.Fault.valueOf(options.getOrDefault("fault", "down").toUpperCase());
+        long delayMs = Long.parseLong(options.getOrDefault("delayMs", "30000"));
+        long outageMs = Long.parseLong(options.getOrDefault("outageMs", "5000"));
+
+        FaultyDatabase.start();
+        System.setProperty("server.port", Integer.toString(port));
+        System.setProperty("attachments.port", "0");
+        System.setProperty("attachments.dir", Files.createTempDirectory("chat-attachments").toString());
+        System.setProperty("archive.dir", Files.createTempDirectory("chat-archive").toString());
+        System.setProperty("db.spillFile", Files.createTempDirectory("chat-spill").resolve("db-spill.jsonl").toString());
+        System.setProperty("db.breaker.openMs", "1000");
+        System.setProperty("db.spill.replayMs", "250");
+        System.setProperty("ratelimit.user.perSecond", "1000");
+        System.setProperty("ratelimit.user.burst", "1000");
+        System.setProperty("ratelimit.type.message.perSecond", "1000");
+        System.setProperty("ratelimit.type.message.burst", "1000");
+        // All clients come from one address
+        System.setProperty("ratelimit.type.register.perSecond", "1000");
+        System.setProperty("ratelimit.type.register.burst", "1000");
+        System.setProperty("ratelimit.type.login.perSecond", "1000");
+        System.setProperty("ratelimit.type.login.burst", "1000");
+
+        PrintStream report = System.out;
+        if (!Boolean.parseBoolean(options.getOrDefault("serverLog", "false"))) {
+            System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+            System.setErr(new PrintStream(OutputStream.nullOutputStream()));
+        }
+        Thread serverThread = new Thread(() -> new MainServer().start(), "embedded-server");
+        serverThread.setDaemon(true);
+        serverThread.start();
+        waitForPort();
+
+        List<DrillClient> clients = new ArrayList<>();
+        for (int i = 0; i < clientCount; i++) {
+            DrillClient client = new DrillClient("outage" + i + "@example.com");
+            client.connect();
+            if (!client.register() || !client.login()) {
+                throw new IOException("Could not log in " + client.email);
+            }
+            clients.add(client);
+        }
+        report.println("👥 " + clientCount + " clients logged in");
+
+        long[] before = chat(clients, 20);
+        report.printf("💬 database up:   ack p50 %d ms, max %d ms%n", before[before.length / 2], before[before.length - 1]);
+
+        FaultyDatabase.inject(fault, delayMs);
+        report.println("💥 database " + fault.name().toLowerCase() + " for " + outageMs + " ms");
+        long outageEnd = System.currentTimeMillis() + outageMs;
+        long[] during = chat(clients, 20);
+        report.printf("💬 during outage: ack p50 %d ms, max %d ms%n", during[during.length / 2], during[during.length - 1]);
+
+        DrillClient leaver = clients.remove(clients.size() - 1);
+        leaver.close();
+        Thread.sleep(200); // let the server notice
+        DrillClient newcomer = new DrillClient("newcomer@example.com");
+        newcomer.connect();
+        report.println("   registration during the outage: " + (newcomer.register() ? "accepted" : "rejected") + " ("
+                + newcomer.lastResponse + ")");
+        int listed = clients.get(0).countOnlineUsers();
+        report.println("   user list during the outage: " + listed + " users (expected " + clients.size() + ")");
+        Thread.sleep(Math.max(0, outageEnd - System.currentTimeMillis()));
+
+        FaultyDatabase.inject(FaultyDatabase.Fault.NONE, 0);
+        long restored = System.nanoTime();
+        SpillLog spill = SpillLog.getInstance();
+        long spilled = ServerMetrics.getInstance().counter("db.spill.appended").sum();
+        while (spill.pending() > 0 && System.nanoTime() - restored < RECOVERY_TIMEOUT_MS * 1_000_000) {
+            Thread.sleep(20);
+        }
+        report.printf("🩹 database back: %d spilled writes replayed in %d ms, %d still pending%n",
+                spilled, (System.nanoTime() - restored) / 1_000_000, spill.pending());
+
+        long[] after = chat(clients, 20);
+        report.printf("💬 database up:   ack p50 %d ms, max %d ms%n", after[after.length / 2], after[after.length - 1]);
+
+        long acked = before.length + during.length + after.length;
+        try (Connection conn = DriverManager.getConnection(StandInDatabase.URL, "sa", "");
+             Statement stmt = conn.createStatement()) {
+            report.println("   messages in the database: " + count(stmt, "SELECT COUNT(*) FROM messages")
+                    + " (expected " + acked + ")");
+            report.println("   users online in the database: "
+                    + count(stmt, "SELECT COUNT(*) FROM users WHERE status = 'online'") + " (expected " + clients.size() + ")");
+        }
+        Map<String, Long> stats = ServerMetrics.getInstance().snapshot();
+        report.println("   breaker opened " + stats.getOrDefault("db.breaker.opened", 0L) + " times, rejected "
+                + stats.getOrDefault("db.breaker.rejected", 0L) + " calls, " + stats.getOrDefault("db.calls.failed", 0L)
+                + " failed calls");
+        for (DrillClient client : clients) {
+            client.close();
+        }
+        newcomer.close();
+    }
+
+    /**
+     * Each client sends the given number of public messages, one at a time
+     * @return the acknowledgement latencies in milliseconds, sorted
+     */
+    private long[] chat(List<DrillClient> clients, int messages) throws Exception {
+        List<Thread> threads = new ArrayList<>();
+        long[][] latencies = new long[clients.size()][];
+        for (int i = 0; i < clients.size(); i++) {
+            DrillClient client = clients.get(i);
+            int index = i;
+            Thread thread = new Thread(() -> {
+                try {
+                    latencies[index] = client.chat(messages);
+                } catch (IOException e) {
+                    System.err.println("❌ " + client.email + ": " + e.getMessage());
+                    latencies[index] = new long[0];
+                }
+            }, "chat-" + client.email);
+            thread.start();
+            threads.add(thread);
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        long[] all = Arrays.stream(latencies).flatMapToLong(Arrays::stream).sorted().toArray();
+        return all.length > 0 ? all : new long[] {0};
+    }
+
+    private static long count(Statement stmt, String sql) throws Exception {
+        try (ResultSet rs = stmt.executeQuery(sql)) {
+            rs.next();
+            return rs.getLong(1);
+        }
+    }
+
+    private void waitForPort() throws Exception {
+        long deadline = System.currentTimeMillis() + 30_000;
+        while (System.currentTimeMillis() < deadline) {
+            try (Socket socket = new Socket()) {
+                socket.connect(new InetSocketAddress("localhost", port), 100);
+                return;
+            } catch (IOException e) {
+                Thread.sleep(50);
+            }
+        }
+        throw new IOException("Server did not start on port " + port);
+    }
+
+    private static JsonObject parse(String frame) {
+        return JsonParser.parseString(frame).getAsJsonObject();
+    }
+
+    /**
+     * One simulated user, talking to the server synchronously
+     */
+    private class DrillClient {
+        private final String email;
+        private Socket socket;
+        private BufferedReader in;
+        private PrintWriter out;
+        private int sent;
+        String lastResponse;
+
+        DrillClient(String email) {
+            this.email = email;
+        }
+
+        void connect() throws IOException {
+            socket = new Socket("localhost", port);
+            socket.setSoTimeout(READ_TIMEOUT_MS);
+            in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            out = new PrintWriter(socket.getOutputStream(), true, StandardCharsets.UTF_8);
+        }
+
+        boolean register() throws IOException {
+            send("register", credentials().toString(), null);
+            return succeeded(await("register_response"));
+        }
+
+        boolean login() throws IOException {
+            send("login", credentials().toString(), null);
+            return succeeded(await("login_response"));
+        }
+
+        long[] chat(int messages) throws IOException {
+            long[] latencies = new long[messages];
+            for (int i = 0; i < messages; i++) {
+                String clientMsgId = email + "-" + sent++;
+                long start = System.nanoTime();
+                send("message", "drill message " + clientMsgId, clientMsgId);
+                await("ack");
+                latencies[i] = (System.nanoTime() - start) / 1_000_000;
+            }
+            return latencies;
+        }
+
+        int countOnlineUsers() throws IOException {
+            send("get_users", "", null);
+            JsonArray users = JsonParser.parseString(await("user_list").get("content").getAsString()).getAsJsonArray();
+            return users.size();
+        }
+
+        private JsonObject credentials() {
+            JsonObject credentials = new JsonObject();
+            credentials.addProperty("email", email);
+            credentials.addProperty("password", "drill-password");
+            credentials.addProperty("username", email.substring(0, email.indexOf('@')));
+            return credentials;
+        }
+
+        private boolean succeeded(JsonObject response) {
+            JsonObject content = parse(response.get("content").getAsString());
+            lastResponse = content.get("message").getAsString();
+            return content.get("success").getAsBoolean();
+        }
+
+        private void send(String type, String content, String clientMsgId) {
+            JsonObject frame = new JsonObject();
+            frame.addProperty("type", type);
+            frame.addProperty("content", content);
+            if (clientMsgId != null) {
+                frame.addProperty("clientMsgId", clientMsgId);
+            }
+            out.println(frame);
+        }
+
+        /**
+         * Read frames until one of the given type arrives
+         */
+        private JsonObject await(String type) throws IOException {
+            String line;
+            while ((line = in.readLine()) != null) {
+                JsonObject frame = parse(line);
+                if (type.equals(frame.get("type").getAsString())) {
+                    return frame;
+                }
+                if ("error".equals(frame.get("type").getAsString())) {
+                    throw new IOException("Server error while waiting for " + type + ": " + frame.get("content").getAsString());
+                }
+            }
+            throw new IOException("Connection closed while waiting for " + type);
+        }
+
+        void close() throws IOException {
+            if (socket != null) {
+                socket.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,295 @@
+package com.chatapp.tools;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.SecureRandom;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rehearses a zero-downtime restart with two local server processes on one port.
+ *
+ * Starts server A, connects and logs in the clients, starts server B on the same port (SO_REUSEPORT)
+ * and sends A a SIGTERM. A drains: each client receives a "reconnect" hint, comes back after the
+ * hinted delay, lands on B and logs in with its resume token. Reports how many clients made it,
+ * how long the handover took, and the presence recorded in the database afterwards.
+ * Both servers share a stand-in H2 file database that this process hosts (needs -Ploadtest).
+ *
+ * Usage (options are --key=value):
+ *   mvn -Ploadtest package -DskipTests
+ *   java -cp target/chat-server-1.0-SNAPSHOT-jar-with-dependencies.jar com.chatapp.tools.RestartDrill --clients=100
+ *
+ *   --clients  connected clients to hand over (default 50)
+ *   --port     port both servers listen on (default 18100)
+ *   --drainMs  drain window of the old server (default 4000)
+ *   --jar      fat jar to run the servers from (default target/chat-server-1.0-SNAPSHOT-jar-with-dependencies.jar)
+ *   --logs     directory for the servers' console output (default a temporary directory)
+ */
+public class RestartDrill {
+    private static final long START_TIMEOUT_MS = 60_000;
+    private static final int READ_TIMEOUT_MS = 10_000;
+
+    private final Map<String, String> options;
+    private final int port;
+    private final List<String> serverProperties = new ArrayList<>();
+
+    public RestartDrill(Map<String, String> options) {
+        this.options = options;
+        this.port = Integer.parseInt(options.getOrDefault("port", "18100"));
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            if (arg.startsWith("--") && arg.contains("=")) {
+                options.put(arg.substring(2, arg.indexOf('=')), arg.substring(arg.indexOf('=') + 1));
+            } else {
+                System.err.println("Ignoring argument: " + arg);
+            }
+        }
+        new RestartDrill(options).run();
+        System.exit(0);
+    }
+
+    public void run() throws Exception {
+        int clientCount = Integer.parseInt(options.getOrDefault("clients", "50"));
+        long drainMs = Long.parseLong(options.getOrDefault("drainMs", "4000"));
+        File logs = options.containsKey("logs") ? new File(options.get("logs"))
+                : Files.createTempDirectory("chat-restart").toFile();
+
+        // Keeping a connection open makes this process the database host for both servers
+        String url = "jdbc:h2:file:" + new File(logs, "chat_app").getAbsolutePath()
+                + ";MODE=MySQL;DATABASE_TO_LOWER=TRUE;AUTO_SERVER=TRUE";
+        StandInDatabase.start(url);
+        try (Connection database = DriverManager.getConnection(url, "sa", "")) {
+            byte[] secret = new byte[32];
+            new SecureRandom().nextBytes(secret);
+            serverProperties.addAll(Arrays.asList(
+                    "-Ddb.url=" + url, "-Ddb.username=sa", "-Ddb.password=", "-Ddb.driver=org.h2.Driver",
+                    "-Dserver.port=" + port,
+                    "-Dattachments.port=0",
+                    "-Darchive.dir=" + new File(logs, "archive").getAbsolutePath(),
+                    "-Dsession.resumeSecret=" + Base64.getEncoder().encodeToString(secret),
+                    "-Dshutdown.drainMs=" + drainMs,
+                    // All clients come from one address
+                    "-Dratelimit.type.register.perSecond=1000", "-Dratelimit.type.register.burst=1000",
+                    "-Dratelimit.type.login.perSecond=1000", "-Dratelimit.type.login.burst=1000"));
+
+            Process oldServer = startServer("A", new File(logs, "server-a.log"));
+            Process newServer = null;
+            try {
+                List<DrillClient> clients = new ArrayList<>();
+                for (int i = 0; i < clientCount; i++) {
+                    DrillClient client = new DrillClient("drill" + i + "@example.com");
+                    client.connectAndRegister();
+                    clients.add(client);
+                }
+                System.out.println("👥 " + clientCount + " clients logged in on server A");
+
+                newServer = startServer("B", new File(logs, "server-b.log"));
+                CountDownLatch reconnected = new CountDownLatch(clientCount);
+                for (DrillClient client : clients) {
+                    client.awaitHandover(reconnected);
+                }
+
+                long signalled = System.nanoTime();
+                oldServer.destroy(); // SIGTERM: the shutdown hook drains
+                boolean allBack = reconnected.await(drainMs + READ_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+                boolean oldExited = oldServer.waitFor(drainMs + READ_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+
+                long[] millis = clients.stream().filter(c -> c.reconnectedNanos > 0)
+                        .mapToLong(c -> (c.reconnectedNanos - signalled) / 1_000_000).sorted().toArray();
+                long withToken = clients.stream().filter(c -> c.loggedInWithToken).count();
+                System.out.printf("🔁 %d/%d clients reconnected to server B (%d with a resume token)%s%n",
+                        millis.length, clientCount, withToken, allBack ? "" : " before the timeout");
+                if (millis.length > 0) {
+                    System.out.printf("   after SIGTERM: first %d ms, median %d ms, last %d ms%n",
+                            millis[0], millis[millis.length / 2], millis[millis.length - 1]);
+                }
+                System.out.println("   server A " + (oldExited ? "exited with code " + oldServer.exitValue() : "did not exit"));
+                printDrainLog(new File(logs, "server-a.log"));
+
+                try (Statement stmt = database.createStatement();
+                     ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM users WHERE status = 'online'")) {
+                    rs.next();
+                    System.out.println("   users online in the database: " + rs.getInt(1) + " (expected " + clientCount + ")");
+                }
+                for (DrillClient client : clients) {
+                    client.close();
+                }
+            } finally {
+                oldServer.destroyForcibly();
+                if (newServer != null) {
+                    newServer.destroyForcibly();
+                    newServer.waitFor();
+                }
+            }
+        }
+        System.out.println("📄 Server logs in " + logs);
+    }
+
+    private Process startServer(String name, File log) throws Exception {
+        String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        List<String> command = new ArrayList<>();
+        command.add(java);
+        command.addAll(serverProperties);
+        command.add("-cp");
+        command.add(options.getOrDefault("jar", "target/chat-server-1.0-SNAPSHOT-jar-with-dependencies.jar"));
+        command.add("com.chatapp.server.MainServer");
+        Process process = new ProcessBuilder(command).redirectErrorStream(true)
+                .redirectOutput(log).start();
+
+        long deadline = System.currentTimeMillis() + START_TIMEOUT_MS;
+        while (System.currentTimeMillis() < deadline) {
+            if (!process.isAlive()) {
+                throw new IOException("Server " + name + " exited with code " + process.exitValue() + ", see " + log);
+            }
+            if (log.exists() && new String(Files.readAllBytes(log.toPath()), StandardCharsets.UTF_8)
+                    .contains("Server listening on port")) {
+                System.out.println("🚀 Server " + name + " listening on port " + port);
+                return process;
+            }
+            Thread.sleep(20);
+        }
+        process.destroyForcibly();
+        throw new IOException("Server " + name + " did not start within " + START_TIMEOUT_MS + " ms");
+    }
+
+    private static void printDrainLog(File log) throws IOException {
+        for (String line : Files.readAllLines(log.toPath(), StandardCharsets.UTF_8)) {
+            if (line.contains("Drain")) {
+                System.out.println("   server A: " + line.trim());
+            }
+        }
+    }
+
+    private static JsonObject parse(String frame) {
+        return JsonParser.parseString(frame).getAsJsonObject();
+    }
+
+    /**
+     * One simulated user: logs in with a password on the old server, then follows the reconnect hint
+     */
+    private class DrillClient {
+        private final String email;
+        private Socket socket;
+        private BufferedReader in;
+        private PrintWriter out;
+        private long lastSeq;
+        volatile long reconnectedNanos;
+        volatile boolean loggedInWithToken;
+
+        DrillClient(String email) {
+            this.email = email;
+        }
+
+        void connectAndRegister() throws IOException {
+            connect();
+            JsonObject credentials = new JsonObject();
+            credentials.addProperty("email", email);
+            credentials.addProperty("password", "drill-password");
+            credentials.addProperty("username", email.substring(0, email.indexOf('@')));
+            send("register", credentials.toString());
+            await("register_response");
+            send("login", credentials.toString());
+            if (!content(await("login_response")).get("success").getAsBoolean()) {
+                throw new IOException("Login failed for " + email);
+            }
+        }
+
+        /**
+         * Follow the reconnect hint on a background thread, counting down once logged in again
+         */
+        void awaitHandover(CountDownLatch reconnected) {
+            Thread thread = new Thread(() -> {
+                try {
+                    JsonObject hint = content(await("reconnect"));
+                    Thread.sleep(hint.get("afterMs").getAsLong());
+                    close();
+                    connect();
+
+                    JsonObject login = new JsonObject();
+                    if (hint.has("resumeToken")) {
+                        login.addProperty("resumeToken", hint.get("resumeToken").getAsString());
+                    } else {
+                        login.addProperty("email", email);
+                        login.addProperty("password", "drill-password");
+                    }
+                    JsonObject resume = new JsonObject();
+                    resume.addProperty("public", lastSeq);
+                    login.add("resume", resume);
+                    send("login", login.toString());
+                    if (content(await("login_response")).get("success").getAsBoolean()) {
+                        loggedInWithToken = hint.has("resumeToken");
+                        reconnectedNanos = System.nanoTime();
+                        reconnected.countDown();
+                    }
+                } catch (Exception e) {
+                    System.err.println("❌ " + email + " could not reconnect: " + e.getMessage());
+                }
+            }, "drill-" + email);
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        private void connect() throws IOException {
+            socket = new Socket("localhost", port);
+            socket.setSoTimeout(READ_TIMEOUT_MS + (int) Long.parseLong(options.getOrDefault("drainMs", "4000")));
+            in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            out = new PrintWriter(socket.getOutputStream(), true, StandardCharsets.UTF_8);
+        }
+
+        private void send(String type, String content) {
+            JsonObject frame = new JsonObject();
+            frame.addProperty("type", type);
+            frame.addProperty("content", content);
+            out.println(frame);
+        }
+
+        /**
+         * Read frames until one of the given type arrives, noting the latest public seq on the way
+         */
+        private JsonObject await(String type) throws IOException {
+            String line;
+            while ((line = in.readLine()) != null) {
+                JsonObject frame = parse(line);
+                if (frame.has("seq") && "public".equals(frame.has("conversation") ? frame.get("conversation").getAsString() : null)) {
+                    lastSeq = Math.max(lastSeq, frame.get("seq").getAsLong());
+                }
+                if (type.equals(frame.get("type").getAsString())) {
+                    return frame;
+                }
+            }
+            throw new IOException("Connection closed while waiting for " + type);
+        }
+
+        private JsonObject content(JsonObject frame) {
+            return parse(frame.get("content").getAsString());
+        }
+
+        void close() throws IOException {
+            if (socket != null) {
+                socket.close();
+            }
+        }
+    }
+}
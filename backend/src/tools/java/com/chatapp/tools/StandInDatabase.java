@@ -0,0 +1,67 @@
+package com.chatapp.tools;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * In-memory H2 database in MySQL compatibility mode, created from schema.sql.
+ * Lets the server and the tools run fully offline. H2 is only on the classpath
+ * when building with the "loadtest" Maven profile.
+ */
+public final class StandInDatabase {
+    public static final String URL = "jdbc:h2:mem:chat_app;MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1";
+
+    private StandInDatabase() {
+    }
+
+    /**
+     * Create the schema and point DatabaseManager at the stand-in database.
+     * Must be called before DatabaseManager is first used.
+     */
+    public static void start() throws SQLException, IOException {
+        start(URL);
+    }
+
+    /**
+     * Same as {@link #start()} on another H2 URL, e.g. a file database shared with child processes
+     */
+    public static void start(String url) throws SQLException, IOException {
+        System.setProperty("db.url", url);
+        System.setProperty("db.username", "sa");
+        System.setProperty("db.password", "");
+        System.setProperty("db.driver", "org.h2.Driver");
+
+        try {
+            Class.forName("org.h2.Driver");
+        } catch (ClassNotFoundException e) {
+            throw new SQLException("H2 is not on the classpath, build with: mvn -Ploadtest package", e);
+        }
+
+        String schema;
+        try (InputStream input = StandInDatabase.class.getClassLoader().getResourceAsStream("schema.sql")) {
+            if (input == null) {
+                throw new IOException("schema.sql not found on the classpath");
+            }
+            schema = new String(input.readAllBytes(), StandardCharsets.UTF_8);
+        }
+
+        try (Connection conn = DriverManager.getConnection(url, "sa", "");
+             Statement stmt = conn.createStatement()) {
+            for (String sql : schema.replaceAll("(?m)^\\s*--.*$", "").split(";")) {
+                String trimmed = sql.trim();
+                String upper = trimmed.toUpperCase();
+                // The in-memory database already is the chat_app database
+                if (trimmed.isEmpty() || upper.startsWith("CREATE DATABASE") || upper.startsWith("USE ")) {
+                    continue;
+                }
+                stmt.execute(trimmed);
+            }
+        }
+        System.out.println("💾 Stand-in database ready: " + url);
+    }
+}
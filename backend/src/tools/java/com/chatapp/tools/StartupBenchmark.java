@@ -0,0 +1,185 @@
+package com.chatapp.tools;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Measures server startup: the time from launching a server process until its first accepted
+ * connection answers a request. Each mode is started several times and the results are reported
+ * as min / median / max.
+ *
+ * Modes:
+ *   jvm     plain JVM from the fat jar
+ *   appcds  the same, with the AppCDS archive built by the "appcds" Maven profile
+ *   native  the GraalVM native executable built by the "native" Maven profile
+ *
+ * Usage (options are --key=value):
+ *   mvn -Ploadtest,appcds package -Dtraining.args=--standin
+ *   java -cp target/chat-server-1.0-SNAPSHOT-jar-with-dependencies.jar com.chatapp.tools.StartupBenchmark \
+ *        --modes=jvm,appcds --runs=10 --standin=true
+ *
+ *   --modes    comma separated modes to measure (default jvm,appcds)
+ *   --runs     starts per mode (default 5)
+ *   --port     port the server is started on (default 18090)
+ *   --jar      fat jar (default target/chat-server-1.0-SNAPSHOT-jar-with-dependencies.jar)
+ *   --archive  AppCDS archive (default target/chat-server.jsa)
+ *   --native   native executable (default target/chat-server)
+ *   --standin  run the servers on a stand-in H2 file database instead of MySQL (default false)
+ */
+public class StartupBenchmark {
+    private static final long START_TIMEOUT_MS = 60_000;
+
+    private final Map<String, String> options;
+    private final List<String> databaseProperties = new ArrayList<>();
+
+    public StartupBenchmark(Map<String, String> options) {
+        this.options = options;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            if (arg.startsWith("--") && arg.contains("=")) {
+                options.put(arg.substring(2, arg.indexOf('=')), arg.substring(arg.indexOf('=') + 1));
+            } else {
+                System.err.println("Ignoring argument: " + arg);
+            }
+        }
+        new StartupBenchmark(options).run();
+    }
+
+    private String option(String key, String defaultValue) {
+        return options.getOrDefault(key, defaultValue);
+    }
+
+    public void run() throws Exception {
+        if (Boolean.parseBoolean(option("standin", "false"))) {
+            prepareStandInDatabase();
+        }
+
+        int runs = Integer.parseInt(option("runs", "5"));
+        System.out.println("⏱️ Startup benchmark: process start → first answered request, " + runs + " runs per mode");
+        for (String mode : option("modes", "jvm,appcds").split(",")) {
+            List<String> command = command(mode.trim());
+            if (command == null) {
+                continue;
+            }
+            long[] millis = new long[runs];
+            for (int i = 0; i < runs; i++) {
+                millis[i] = measure(command);
+            }
+            Arrays.sort(millis);
+            System.out.printf("%-8s min=%d ms  median=%d ms  max=%d ms%n",
+                    mode.trim(), millis[0], millis[runs / 2], millis[runs - 1]);
+        }
+    }
+
+    /**
+     * Create a file database the server processes can open one after another
+     */
+    private void prepareStandInDatabase() throws Exception {
+        File dir = Files.createTempDirectory("chat-startup").toFile();
+        dir.deleteOnExit();
+        new File(dir, "chat_app.mv.db").deleteOnExit();
+        String url = "jdbc:h2:file:" + new File(dir, "chat_app").getAbsolutePath()
+                + ";MODE=MySQL;DATABASE_TO_LOWER=TRUE";
+        StandInDatabase.start(url);
+        databaseProperties.add("-Ddb.url=" + url);
+        databaseProperties.add("-Ddb.username=sa");
+        databaseProperties.add("-Ddb.password=");
+        databaseProperties.add("-Ddb.driver=org.h2.Driver");
+    }
+
+    private List<String> command(String mode) {
+        String jar = option("jar", "target/chat-server-1.0-SNAPSHOT-jar-with-dependencies.jar");
+        String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        List<String> command = new ArrayList<>();
+        switch (mode) {
+            case "jvm":
+                command.add(java);
+                break;
+            case "appcds":
+                String archive = option("archive", "target/chat-server.jsa");
+                if (!new File(archive).isFile()) {
+                    System.err.println("⚠️ Skipping appcds: " + archive + " not found, build with -Pappcds");
+                    return null;
+                }
+                command.add(java);
+                command.add("-XX:SharedArchiveFile=" + archive);
+                break;
+            case "native":
+                String executable = option("native", "target/chat-server");
+                if (!new File(executable).canExecute()) {
+                    System.err.println("⚠️ Skipping native: " + executable + " not found, build with -Pnative");
+                    return null;
+                }
+                command.add(executable);
+                break;
+            default:
+                System.err.println("Unknown mode: " + mode);
+                return null;
+        }
+        command.addAll(databaseProperties);
+        command.add("-Dserver.port=" + option("port", "18090"));
+        if (!mode.equals("native")) {
+            command.add("-cp");
+            command.add(jar);
+            command.add("com.chatapp.server.MainServer");
+        }
+        return command;
+    }
+
+    /**
+     * Start the server and return the milliseconds until it answered a stats request
+     */
+    private long measure(List<String> command) throws Exception {
+        int port = Integer.parseInt(option("port", "18090"));
+        ProcessBuilder builder = new ProcessBuilder(command)
+                .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                .redirectError(ProcessBuilder.Redirect.DISCARD);
+
+        long start = System.nanoTime();
+        Process process = builder.start();
+        try {
+            long deadline = start + START_TIMEOUT_MS * 1_000_000L;
+            while (System.nanoTime() < deadline) {
+                if (!process.isAlive()) {
+                    throw new IOException("Server exited during startup with code " + process.exitValue());
+                }
+                if (answers(port)) {
+                    return (System.nanoTime() - start) / 1_000_000;
+                }
+                Thread.sleep(2);
+            }
+            throw new IOException("Server did not start within " + START_TIMEOUT_MS + " ms");
+        } finally {
+            process.destroy();
+            process.waitFor();
+        }
+    }
+
+    private static boolean answers(int port) {
+        try (Socket socket = new Socket()) {
+            socket.connect(new InetSocketAddress("localhost", port), 100);
+            socket.setSoTimeout(5000);
+            PrintWriter out = new PrintWriter(socket.getOutputStream(), true, StandardCharsets.UTF_8);
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            out.println("{\"type\":\"stats\",\"content\":\"\"}");
+            return in.readLine() != null;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package com.chatapp.tools;
+
+import com.chatapp.server.MainServer;
+import com.google.gson.JsonObject;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+/**
+ * Short scripted session against an in-process server, used as the training run for the
+ * AppCDS archive: every class loaded here (JDBC driver, Gson, BCrypt, server and protocol
+ * classes) ends up in the archive when the JVM is started with -XX:ArchiveClassesAtExit.
+ *
+ * Usage:
+ *   java -XX:ArchiveClassesAtExit=target/chat-server.jsa \
+ *        -cp target/chat-server-1.0-SNAPSHOT-jar-with-dependencies.jar com.chatapp.tools.TrainingRun
+ *
+ *   --standin    use the stand-in H2 database instead of db_config.properties (needs -Ploadtest)
+ *   --port=N     port for the in-process server (default 18081)
+ */
+public class TrainingRun {
+    private static final int READ_TIMEOUT_MS = 5000;
+
+    public static void main(String[] args) throws Exception {
+        boolean standIn = false;
+        int port = 18081;
+        for (String arg : args) {
+            if (arg.equals("--standin")) {
+                standIn = true;
+            } else if (arg.startsWith("--port=")) {
+                port = Integer.parseInt(arg.substring("--port=".length()));
+            } else if (!arg.isBlank()) {
+                System.err.println("Ignoring argument: " + arg);
+            }
+        }
+
+        if (standIn) {
+            StandInDatabase.start();
+        }
+        System.setProperty("server.port", Integer.toString(port));
+        System.setProperty("attachments.port", "0");
+        System.setProperty("attachments.dir", Files.createTempDirectory("chat-attachments").toString());
+        System.setProperty("archive.dir", Files.createTempDirectory("chat-archive").toString());
+
+        PrintStream console = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        long start = System.nanoTime();
+
+        MainServer server = new MainServer();
+        Thread serverThread = new Thread(server::start, "training-server");
+        serverThread.setDaemon(true);
+        serverThread.start();
+        LoadGenerator.waitForPort("localhost", port, 30_000);
+
+        String id = Long.toString(System.currentTimeMillis(), 36);
+        try (Session alice = new Session(port); Session bob = new Session(port)) {
+            alice.login("train-a-" + id + "@training.local", "Training A");
+            bob.login("train-b-" + id + "@training.local", "Training B");
+
+            alice.request(frame("message", "hello from the training run", null), "message");
+            bob.request(frame("private_message", "private hello", alice.email), "private_message");
+            alice.request(frame("typing", "", null), null);
+            alice.request(frame("get_users", "", null), "user_list");
+            alice.request(frame("get_history", "", null), "history");
+
+            JsonObject search = new JsonObject();
+            search.addProperty("query", "hello*");
+            bob.request(frame("search", search.toString(), null), "search_results");
+
+            JsonObject conversations = new JsonObject();
+            conversations.addProperty("public", 0);
+            JsonObject resume = new JsonObject();
+            resume.add("conversations", conversations);
+            bob.request(frame("resume", resume.toString(), null), "resume");
+
+            bob.request(frame("stats", "", null), "stats");
+        }
+
+        server.shutdown();
+        console.println("✅ Training run finished in " + (System.nanoTime() - start) / 1_000_000 + " ms");
+        // The JVM writes the dynamic archive on exit
+        System.exit(0);
+    }
+
+    private static String frame(String type, String content, String receiver) {
+        JsonObject frame = new JsonObject();
+        frame.addProperty("type", type);
+        frame.addProperty("content", content);
+        if (receiver != null) {
+            frame.addProperty("receiver", receiver);
+        }
+        return frame.toString();
+    }
+
+    /**
+     * Minimal blocking client connection
+     */
+    private static class Session implements AutoCloseable {
+        private final Socket socket;
+        private final BufferedReader in;
+        private final PrintWriter out;
+        private String email;
+
+        Session(int port) throws IOException {
+            socket = new Socket("localhost", port);
+            socket.setSoTimeout(READ_TIMEOUT_MS);
+            in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            out = new PrintWriter(socket.getOutputStream(), true, StandardCharsets.UTF_8);
+        }
+
+        void login(String email, String username) throws IOException {
+            this.email = email;
+            JsonObject credentials = new JsonObject();
+            credentials.addProperty("email", email);
+            credentials.addProperty("password", "training-password");
+            credentials.addProperty("username", username);
+            request(frame("register", credentials.toString(), null), "register_response");
+            request(frame("login", credentials.toString(), null), "login_response");
+        }
+
+        /**
+         * Send a frame and read until a frame of the expected type arrives (null: do not wait)
+         */
+        void request(String frame, String expectedType) throws IOException {
+            out.println(frame);
+            if (expectedType == null) {
+                return;
+            }
+            String marker = "\"type\":\"" + expectedType + "\"";
+            try {
+                String line;
+                while ((line = in.readLine()) != null) {
+                    if (line.contains(marker)) {
+                        return;
+                    }
+                }
+            } catch (SocketTimeoutException e) {
+                // Keep going, the run only needs to exercise the code paths
+            }
+            System.err.println("⚠️ Training run: no " + expectedType + " reply");
+        }
+
+        @Override
+        public void close() throws IOException {
+            socket.close();
+        }
+    }
+}
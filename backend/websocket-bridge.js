@@ -7,6 +7,8 @@ const net = require('net');
 const WS_PORT = 8082;
 const JAVA_SERVER_HOST = 'localhost';
 const JAVA_SERVER_PORT = 8081;
+// Set when the bridge itself sits behind a reverse proxy that adds X-Forwarded-For
+const TRUST_FORWARDED_FOR = process.env.TRUST_FORWARDED_FOR === 'true';
 
 const wss = new WebSocket.Server({ port: WS_PORT });
 
@@ -17,7 +19,26 @@ console.log(`📡 WebSocket Server: ws://localhost:${WS_PORT}`);
 console.log(`🔌 Java Server: ${JAVA_SERVER_HOST}:${JAVA_SERVER_PORT}`);
 console.log('⏳ Waiting for connections...\n');
 
-wss.on('connection', (ws) => {
+// PROXY protocol (v1) header telling the Java server the browser's address, so its per-IP
+// connection and rate limits apply to each browser rather than to the bridge
+function proxyHeader(req) {
+  let client = req.socket.remoteAddress || '';
+  const forwardedFor = req.headers['x-forwarded-for'];
+  if (TRUST_FORWARDED_FOR && forwardedFor) {
+    const hops = forwardedFor.split(',');
+    client = hops[hops.length - 1].trim();
+  }
+  if (client.startsWith('::ffff:')) {
+    client = client.substring('::ffff:'.length);
+  }
+  if (!net.isIP(client)) {
+    return 'PROXY UNKNOWN\r\n';
+  }
+  const ipv4 = net.isIPv4(client);
+  return `PROXY ${ipv4 ? 'TCP4' : 'TCP6'} ${client} ${ipv4 ? '127.0.0.1' : '::1'} ${req.socket.remotePort || 0} ${JAVA_SERVER_PORT}\r\n`;
+}
+
+wss.on('connection', (ws, req) => {
   console.log('🔌 New WebSocket client connected');
 
   // Create TCP connection to Java server
@@ -26,6 +47,8 @@ wss.on('connection', (ws) => {
   tcpClient.connect(JAVA_SERVER_PORT, JAVA_SERVER_HOST, () => {
     console.log('✅ Connected to Java server');
   });
+  // Queued until connected, and always the first line the server reads
+  tcpClient.write(proxyHeader(req));
 
   // Forward WebSocket messages to TCP socket
   ws.on('message', (message) => {
@@ -49,6 +49,13 @@ export default function ChatPage() {
               const history = JSON.parse(message.content);
               setMessages(history);
               break;
+
+            case 'resume':
+              // Messages missed while reconnecting to a restarted server
+              const conversations = JSON.parse(message.content);
+              const missed = Object.values<{ messages: Message[] }>(conversations).flatMap((c) => c.messages);
+              setMessages((prev) => [...prev, ...missed]);
+              break;
           }
         });
 
@@ -4,6 +4,10 @@ class SocketClient {
   private maxReconnectAttempts = 5;
   private reconnectDelay = 3000;
   private messageHandlers: Map<string, (data: any) => void> = new Map();
+  // Highest seq seen per conversation, sent with "resume" after a reconnect so only missed messages come back
+  private lastSeen: Record<string, number> = {};
+  // Email and password of the last login on this client, to log in again when the server issues no resume token
+  private credentials: { email: string; password: string } | null = null;
 
   connect(serverUrl: string): Promise<void> {
     return new Promise((resolve, reject) => {
@@ -19,6 +23,21 @@ class SocketClient {
         this.socket.onmessage = (event) => {
           try {
             const message = JSON.parse(event.data);
+
+            // Answer server heartbeats so the connection is not reaped as idle
+            if (message.type === 'ping') {
+              this.send({ type: 'pong', content: '' });
+              return;
+            }
+
+            // The server is restarting: move to the next process when it asks us to
+            if (message.type === 'reconnect') {
+              this.handleReconnect(serverUrl, JSON.parse(message.content));
+              return;
+            }
+
+            this.track(message);
+
             const handler = this.messageHandlers.get(message.type);
             if (handler) {
               handler(message);
@@ -63,7 +82,77 @@ class SocketClient {
     }
   }
 
+  /**
+   * Reconnect after afterMs and pick up where we left off: log in again with the resume token if the
+   * server sent one (no session.resumeSecret configured means none), otherwise with the stored credentials.
+   * The last seen seqs go with the login, so the response brings just the missed messages.
+   */
+  private handleReconnect(serverUrl: string, hint: { afterMs?: number; resumeToken?: string }) {
+    console.log(`🔄 Server restarting, reconnecting in ${hint.afterMs ?? 0} ms`);
+    if (this.socket) {
+      // An expected close: not a reason for the retry loop
+      this.socket.onclose = null;
+      this.socket.close();
+      this.socket = null;
+    }
+
+    setTimeout(async () => {
+      try {
+        await this.connect(serverUrl);
+      } catch {
+        return; // onclose has started the retry loop
+      }
+      const login = hint.resumeToken ? { resumeToken: hint.resumeToken } : this.credentials;
+      if (!login) {
+        console.error('❌ Cannot log in again after the server restart: no resume token and no stored login');
+        return;
+      }
+      const resume = Object.keys(this.lastSeen).length > 0 ? { resume: this.lastSeen } : {};
+      this.send({ type: 'login', content: JSON.stringify({ ...login, ...resume }) });
+    }, hint.afterMs ?? 0);
+  }
+
+  private sendResume(conversations: Record<string, number>) {
+    this.send({ type: 'resume', content: JSON.stringify({ conversations }) });
+  }
+
+  /**
+   * Remember the highest seq seen per conversation; ask again for conversations a resume answer left unfinished
+   */
+  private track(message: any) {
+    const see = (m: any) => {
+      if (m && m.conversation && typeof m.seq === 'number' && m.seq > (this.lastSeen[m.conversation] ?? 0)) {
+        this.lastSeen[m.conversation] = m.seq;
+      }
+    };
+
+    switch (message.type) {
+      case 'message':
+      case 'private_message':
+        see(message);
+        break;
+      case 'history':
+        JSON.parse(message.content).forEach(see);
+        break;
+      case 'resume': {
+        const conversations = JSON.parse(message.content);
+        const more: Record<string, number> = {};
+        for (const [conversation, result] of Object.entries<any>(conversations)) {
+          result.messages.forEach(see);
+          if (result.more) {
+            more[conversation] = this.lastSeen[conversation] ?? 0;
+          }
+        }
+        if (Object.keys(more).length > 0) {
+          this.sendResume(more);
+        }
+        break;
+      }
+    }
+  }
+
   send(message: any): void {
+    this.remember(message);
     if (this.socket && this.socket.readyState === WebSocket.OPEN) {
       this.socket.send(JSON.stringify(message));
     } else {
@@ -71,6 +160,18 @@ class SocketClient {
     }
   }
 
+  private remember(message: any) {
+    if (message.type === 'login') {
+      const content = JSON.parse(message.content);
+      if (content.email && content.password) {
+        this.credentials = { email: content.email, password: content.password };
+      }
+    } else if (message.type === 'logout') {
+      this.credentials = null;
+      this.lastSeen = {};
+    }
+  }
+
   on(messageType: string, handler: (data: any) => void): void {
     this.messageHandlers.set(messageType, handler);
   }
@@ -6,12 +6,14 @@ export interface User {
 }
 
 export interface Message {
-  type: 'message' | 'private_message' | 'login_response' | 'register_response' | 'user_list' | 'user_joined' | 'user_left' | 'typing' | 'history' | 'error';
+  type: 'message' | 'private_message' | 'login_response' | 'register_response' | 'user_list' | 'user_joined' | 'user_left' | 'typing' | 'history' | 'resume' | 'error';
   sender?: string;
   receiver?: string;
   content: string;
   username?: string;
   timestamp?: number;
+  conversation?: string;
+  seq?: number;
 }
 
 export interface AuthResponse {